@@ -0,0 +1,792 @@
+package Controller;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import Model.Config;
+import Model.ContractionHierarchy;
+import Model.DataTree;
+import Model.GPSTrace;
+import Model.Landmarks;
+import Model.MapMatcher;
+import Model.MatchResult;
+import Model.Model;
+import Model.NoPathFoundException;
+import Model.PathFinder;
+import Model.PolygonApprox;
+import Model.Road;
+import Model.Vertex;
+import Model.ViewportCache;
+import View.MapCanvas;
+import View.MapRenderer;
+import View.TileCache;
+import enums.LayerType;
+import enums.RouteProfile;
+
+/**
+ * Command line benchmarks run against a loaded map. Never used by the program.
+ * Usage: Benchmark &lt;name&gt; &lt;.osm, .zip or .obj file&gt; [arguments]
+ */
+public class Benchmark {
+	private static final int FRAMES = 2000, SCREEN_WIDTH = 1280, SCREEN_HEIGHT = 720;
+	private static final int ROUTES = 200, LANDMARKS = 16;
+	// Bytes a steady frame of the canvas may allocate, once per frame and per shape drawn without and with AA, see render.
+	private static final int FRAME_BUDGET = 8192, SHAPE_BUDGET = 72, AA_SHAPE_BUDGET = 16;
+
+	/**
+	 * Loads the given map and runs the named benchmark.
+	 * @param args The name of the benchmark followed by the map file and the arguments of the benchmark.
+	 * @throws IOException If the map or any other input could not be loaded.
+	 * @throws InterruptedException If interrupted while waiting for worker threads.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 2) {
+			System.out.println("Usage: Benchmark <viewport|bands|dynamic|render|seams|match|route> <.osm, .zip or .obj file> [.csv or .gpx traces for match]");
+			return;
+		}
+		Model model = load(new File(args[1]));
+		switch(args[0]) {
+			case "viewport": viewport(model); break;
+			case "bands": bands(model); break;
+			case "dynamic": dynamic(model); break;
+			case "render": render(model); break;
+			case "seams": seams(model); break;
+			case "match": match(model, Arrays.copyOfRange(args, 2, args.length)); break;
+			case "route": route(model); break;
+			default: System.out.println("Unknown benchmark: " + args[0]);
+		}
+	}
+
+	/**
+	 * Loads a Model the same way the program does, and makes it the current Model.
+	 */
+	private static Model load(File file) throws IOException {
+		long t = System.nanoTime();
+		Model model;
+		if(file.getName().endsWith(".obj")) {
+			model = Model.load(file);
+		} else {
+			model = new Model();
+			Main.model(model);
+			model.loadOSM(file);
+		}
+		Main.model(model);
+		System.out.printf("Loaded %s in %.1f s%n", file.getName(), (System.nanoTime() - t) / 1e9);
+		return model;
+	}
+
+	/**
+	 * Simulates a continuous drag across the map at street level, and compares a full tree query
+	 * per frame with the incremental ViewportCache for every layer.
+	 */
+	private static void viewport(Model model) {
+		double pixelSize = 0.00005;
+		double w = SCREEN_WIDTH * pixelSize, h = SCREEN_HEIGHT * pixelSize;
+		double startX = (model.minLon() + model.maxLon()) / 2 - w / 2, startY = (model.maxLat() + model.minLat()) / 2 - h / 2;
+		double stepX = 3 * pixelSize, stepY = 2 * pixelSize;
+		Rectangle2D box = new Rectangle2D.Double();
+
+		System.out.printf("%-12s %12s %12s %8s %12s %12s%n", "layer", "tree us/f", "cache us/f", "speedup", "tree leafs", "cache leafs");
+		long treeTotal = 0, cacheTotal = 0;
+		for(LayerType layer : LayerType.values()) {
+			DataTree tree = model.data(layer);
+			if(tree == null) {continue;}
+			ViewportCache cache = new ViewportCache(tree);
+			for(int warmup = 0; warmup < 2; warmup++) {
+				long arrays = 0, cached = 0, t0 = System.nanoTime();
+				for(int f = 0; f < FRAMES; f++) {
+					box.setRect(startX + f * stepX, startY + f * stepY, w, h);
+					arrays += tree.tree(box, pixelSize).size();
+				}
+				long t1 = System.nanoTime();
+				cache.invalidate();
+				for(int f = 0; f < FRAMES; f++) {
+					box.setRect(startX + f * stepX, startY + f * stepY, w, h);
+					cached += cache.tree(box, pixelSize).size();
+				}
+				long t2 = System.nanoTime();
+				if(warmup == 1) {
+					treeTotal += t1 - t0;
+					cacheTotal += t2 - t1;
+					System.out.printf("%-12s %12.1f %12.1f %7.1fx %12d %12d%n", layer, (t1 - t0) / 1e3 / FRAMES, (t2 - t1) / 1e3 / FRAMES,
+							(t1 - t0) / (double) Math.max(1, t2 - t1), arrays / FRAMES, cached / FRAMES);
+				}
+			}
+		}
+		System.out.printf("%-12s %12.1f %12.1f %7.1fx%n", "total", treeTotal / 1e3 / FRAMES, cacheTotal / 1e3 / FRAMES,
+				treeTotal / (double) Math.max(1, cacheTotal));
+	}
+
+	/**
+	 * Counts the points drawn for every layer when the whole map, a quarter and a sixteenth of it fill the screen,
+	 * with the full geometry and with the simplified zoom band the tree returns for the pixel size.
+	 */
+	private static void bands(Model model) {
+		System.out.printf("%-12s %8s %12s %12s %8s%n", "layer", "view", "full points", "band points", "share");
+		long fullTotal = 0, bandTotal = 0;
+		for(LayerType layer : LayerType.values()) {
+			DataTree tree = model.data(layer);
+			if(tree == null) {continue;}
+			for(int part = 1; part <= 16; part *= 4) {
+				double w = (model.maxLon() - model.minLon()) / part, h = (model.maxLat() - model.minLat()) / part;
+				double pixelSize = Math.max(w / SCREEN_WIDTH, h / SCREEN_HEIGHT);
+				Rectangle2D box = new Rectangle2D.Double((model.minLon() + model.maxLon() - w) / 2, (model.minLat() + model.maxLat() - h) / 2, w, h);
+				long full = points(tree.tree(box)), band = points(tree.tree(box, pixelSize));
+				if(full == 0) {break;}
+				if(part == 1) {fullTotal += full; bandTotal += band;}
+				System.out.printf("%-12s %8s %12d %12d %7.1f%%%n", layer, "1/" + part, full, band, 100.0 * band / Math.max(1, full));
+			}
+		}
+		System.out.printf("%-12s %8s %12d %12d %7.1f%%%n", "total", "1/1", fullTotal, bandTotal, 100.0 * bandTotal / Math.max(1, fullTotal));
+	}
+
+	/**
+	 * Builds every layer as a compressed tree with zoom bands twice: bulk-loaded from all its objects, and from half of them
+	 * with the rest inserted one by one and a quarter removed and inserted again. Compares the time of the changes
+	 * with the time of drawing queries on both trees, at street level and with the whole map on the screen.
+	 */
+	private static void dynamic(Model model) {
+		Rectangle2D all = new Rectangle2D.Double(model.minLon() - 1, model.minLat() - 1, model.maxLon() - model.minLon() + 2, model.maxLat() - model.minLat() + 2);
+		double w = model.maxLon() - model.minLon(), h = model.maxLat() - model.minLat();
+		double[] pixelSizes = {0.00005, Math.max(w / SCREEN_WIDTH, h / SCREEN_HEIGHT)};
+		Random random = new Random(1);
+		System.out.printf("%-12s %8s %10s %12s %12s %12s %12s%n", "layer", "objects", "us/change", "static us/q", "dynamic us/q", "static far", "dynamic far");
+		for(LayerType layer : LayerType.values()) {
+			DataTree tree = model.data(layer);
+			if(tree == null || tree.size() < 2) {continue;}
+			List<PolygonApprox> objects = tree.intersecting(all);
+			Collections.shuffle(objects, random);
+			DataTree bulk = new DataTree(objects, 16, true, true);
+			DataTree dynamic = new DataTree(objects.subList(0, objects.size() / 2), 16, true, true);
+			long t = System.nanoTime();
+			for(PolygonApprox pa : objects.subList(objects.size() / 2, objects.size())) {dynamic.insert(pa);}
+			for(PolygonApprox pa : objects.subList(0, objects.size() / 4)) {dynamic.remove(pa);}
+			for(PolygonApprox pa : objects.subList(0, objects.size() / 4)) {dynamic.insert(pa);}
+			int changes = objects.size() - objects.size() / 2 + 2 * (objects.size() / 4);
+			double change = (System.nanoTime() - t) / 1e3 / changes;
+			if(bulk.size() != dynamic.size()) {throw new IllegalStateException(layer + ": " + bulk.size() + " objects in the bulk-loaded tree, " + dynamic.size() + " after the changes");}
+
+			double[] times = new double[4];
+			for(int z = 0; z < pixelSizes.length; z++) {
+				for(int pass = 0; pass < 2; pass++) { // The first pass builds the merged views.
+					times[2 * z] = queries(model, bulk, pixelSizes[z]);
+					times[2 * z + 1] = queries(model, dynamic, pixelSizes[z]);
+				}
+			}
+			System.out.printf("%-12s %8d %10.1f %12.1f %12.1f %12.1f %12.1f%n", layer, objects.size(), change, times[0], times[1], times[2], times[3]);
+		}
+	}
+
+	/**
+	 * Drags a screen across the middle of the map, and returns the microseconds per query including a pass over the points drawn.
+	 */
+	private static double queries(Model model, DataTree tree, double pixelSize) {
+		double w = SCREEN_WIDTH * pixelSize, h = SCREEN_HEIGHT * pixelSize;
+		double startX = (model.minLon() + model.maxLon()) / 2 - w / 2, startY = (model.maxLat() + model.minLat()) / 2 - h / 2;
+		Rectangle2D box = new Rectangle2D.Double();
+		long points = 0, t = System.nanoTime();
+		for(int f = 0; f < FRAMES; f++) {
+			box.setRect(startX + f * 3 * pixelSize, startY + f * 2 * pixelSize, w, h);
+			points += points(tree.tree(box, pixelSize));
+		}
+		if(points < 0) {throw new IllegalStateException();}
+		return (System.nanoTime() - t) / 1e3 / FRAMES;
+	}
+
+	private static long points(List<PolygonApprox[]> leafs) {
+		long points = 0;
+		for(PolygonApprox[] leaf : leafs) {
+			for(PolygonApprox pa : leaf) {points += pa.points();}
+		}
+		return points;
+	}
+
+	/**
+	 * Paints the MapCanvas into an image at street level, drawing the static layers straight away and from tiles,
+	 * both while the view stands still (like a hover highlight) and while it is dragged.
+	 */
+	private static void render(Model model) {
+		int frames = FRAMES / 10;
+		MapCanvas canvas = canvas(model);
+		BufferedImage screen = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		BufferedImage reference = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+		System.out.printf("%-8s %12s %12s %8s%n", "motion", "direct ms/f", "tiles ms/f", "speedup");
+		for(String motion : new String[] {"still", "pan", "still", "pan"}) {
+			double[] ms = new double[2];
+			for(int tiled = 0; tiled < 2; tiled++) {
+				canvas.toggleTileCache();
+				long t = System.nanoTime();
+				for(int f = 0; f < frames; f++) {
+					int step = motion.equals("pan") ? (f % 2 == 0 ? 1 : -1) * (f + 1) : 0;
+					canvas.pan(3 * step, 2 * step);
+					canvas.viewport(canvas.getViewPort());
+					paint(canvas, screen);
+				}
+				ms[tiled] = (System.nanoTime() - t) / 1e6 / frames;
+			}
+			System.out.printf("%-8s %12.2f %12.2f %7.1fx%n", motion, ms[0], ms[1], ms[0] / ms[1]);
+		}
+
+		canvas.toggleTileCache();
+		paint(canvas, reference);
+		canvas.toggleTileCache();
+		paint(canvas, screen);
+		int differ = 0;
+		for(int y = 0; y < SCREEN_HEIGHT; y++) {
+			for(int x = 0; x < SCREEN_WIDTH; x++) {
+				if(screen.getRGB(x, y) != reference.getRGB(x, y)) {differ++;}
+			}
+		}
+		TileCache tiles = canvas.tileCache();
+		System.out.printf("Pixels differing from a direct paint: %.2f%%%n", 100.0 * differ / (SCREEN_WIDTH * SCREEN_HEIGHT));
+		System.out.printf("Tiles: %d cached (%.1f MB), %d hits, %d drawn, %d evicted%n", tiles.size(), tiles.bytes() / 1e6,
+				tiles.hits(), tiles.misses(), tiles.evictions());
+
+		// Frames where every tile is missing, like the first frame after a zoom, drawn on more and more threads.
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.printf("%n%-8s %8s %12s %8s%n", "detail", "threads", "ms/f", "speedup");
+		for(int detail = 11; detail <= 14; detail++) {
+			double single = 0;
+			for(int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(cores, threads * 2)) {
+				double ms = coldFrames(model, detail, threads, frames / 10);
+				if(threads == 1) {single = ms;}
+				System.out.printf("%-8d %8d %12.2f %7.1fx%n", detail, threads, ms, single / ms);
+			}
+		}
+
+		// Frames drawn straight away, in full and as the coarse passes used while the user interacts.
+		System.out.printf("%n%-8s %8s %12s %8s%n", "detail", "coarse", "ms/f", "speedup");
+		for(int detail = 11; detail <= 14; detail++) {
+			double full = 0;
+			for(int coarse = 1; coarse <= 16; coarse *= 2) {
+				double ms = directFrames(model, detail, coarse, frames / 10);
+				if(coarse == 1) {full = ms;}
+				System.out.printf("%-8d %8d %12.2f %7.1fx%n", detail, coarse, ms, full / ms);
+			}
+		}
+
+		// The coarse pass of the canvas while the user drags, painted without AA from the points its ScreenCache projected.
+		System.out.printf("%n%-8s %12s %12s%n", "motion", "ms/f", "bytes/f");
+		for(String motion : new String[] {"still", "pan"}) {
+			MapCanvas coarse = canvas(model);
+			coarse.toggleTileCache();
+			coarse.disableAA();
+			coarse.interacting(true);
+			double[] frame = canvasFrames(coarse, screen, motion.equals("pan") ? 1 : 0, frames / 10);
+			System.out.printf("%-8s %12.2f %12.0f%n", motion, frame[0], frame[1]);
+		}
+
+		// Leaf nodes drawn shape by shape and merged into batches.
+		System.out.printf("%n%-8s %12s %12s %8s%n", "detail", "shapes ms/f", "batches ms/f", "speedup");
+		for(int detail = 11; detail <= 14; detail++) {
+			double[] ms = new double[2];
+			for(int b = 0; b < 2; b++) {
+				MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+				renderer.detailLevel(detail);
+				renderer.batched(b == 1);
+				directFrames(model, renderer, 1); // Builds the batches.
+				ms[b] = directFrames(model, renderer, frames / 10);
+			}
+			System.out.printf("%-8d %12.2f %12.2f %7.1fx%n", detail, ms[0], ms[1], ms[0] / ms[1]);
+		}
+
+		// Frames panned from the previous one, transforming every point and drawing the points kept by a ScreenCache.
+		System.out.printf("%n%-8s %14s %14s %8s %10s%n", "detail", "transform ms/f", "projected ms/f", "speedup", "differing");
+		for(int detail = 11; detail <= 14; detail++) {
+			BufferedImage[] last = new BufferedImage[2];
+			double[] ms = new double[2];
+			for(int p = 0; p < 2; p++) {
+				MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+				renderer.detailLevel(detail);
+				renderer.cacheViewport(true);
+				renderer.cacheProjection(p == 1);
+				last[p] = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+				ms[p] = panFrames(model, renderer, last[p], frames / 10);
+			}
+			int changed = 0;
+			for(int y = 0; y < SCREEN_HEIGHT; y++) {
+				for(int x = 0; x < SCREEN_WIDTH; x++) {
+					if(last[0].getRGB(x, y) != last[1].getRGB(x, y)) {changed++;}
+				}
+			}
+			System.out.printf("%-8d %14.2f %14.2f %7.1fx %9.2f%%%n", detail, ms[0], ms[1], ms[0] / ms[1], 100.0 * changed / (SCREEN_WIDTH * SCREEN_HEIGHT));
+		}
+
+		// Frames of a rotated map, where the bounding box of the screen holds up to twice the area shown.
+		System.out.printf("%n%-8s %8s %12s %10s%n", "detail", "rotation", "ms/f", "drawn");
+		for(int detail = 11; detail <= 14; detail += 3) {
+			for(int degrees = 0; degrees <= 45; degrees += 15) {
+				MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+				renderer.detailLevel(detail);
+				double ms = rotatedFrames(model, renderer, Math.toRadians(degrees), frames / 10);
+				long drawn = 0;
+				for(int i = 0; i < MapRenderer.layers(); i++) {drawn += renderer.drawn(i);}
+				System.out.printf("%-8d %8d %12.2f %10d%n", detail, degrees, ms, drawn / renderer.paints());
+			}
+		}
+
+		// Where the time of a full frame at street level goes, layer by layer.
+		MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+		renderer.detailLevel(14);
+		directFrames(model, renderer, 1);
+		renderer.resetStats();
+		directFrames(model, renderer, frames / 10);
+		System.out.printf("%n%-12s %10s %12s %10s%n", "layer", "ms/f", "considered", "drawn");
+		for(int i = 0; i < MapRenderer.layers(); i++) {
+			System.out.printf("%-12s %10.3f %12d %10d%n", MapRenderer.layer(i), renderer.nanos(i) / 1e6 / renderer.paints(),
+					renderer.considered(i) / renderer.paints(), renderer.drawn(i) / renderer.paints());
+		}
+
+		// Heap allocated by steady frames of the canvas, painted like the render thread paints them: a new Frame and Graphics
+		// every frame, with the ScreenCache and the overlays. Standing still and panning by a pixel. Once warmed up only the JDK
+		// allocates, mostly compositing the translucent overlay without AA, then a span iterator per wide line without AA and
+		// a copy of the dash pattern per dashed line with AA, so the budget grows with the shapes drawn.
+		System.out.printf("%n%-8s %-8s %14s %14s %14s%n", "detail", "pass", "still bytes/f", "pan bytes/f", "budget");
+		boolean over = false;
+		for(int detail = 11; detail <= 14; detail += 3) {
+			MapRenderer counted = new MapRenderer(model, new Config("Benchmark"));
+			counted.detailLevel(detail);
+			directFrames(model, counted, 1);
+			long drawn = 0;
+			for(int i = 0; i < MapRenderer.layers(); i++) {drawn += counted.drawn(i);}
+			drawn /= counted.paints();
+			for(String pass : new String[] {"direct", "directAA", "tiles", "tilesAA", "coarse"}) {
+				boolean aa = pass.endsWith("AA");
+				long[] bytes = new long[2];
+				for(int step = 0; step < 2; step++) {
+					MapCanvas steady = canvas(model);
+					steady.detailLevel(detail);
+					if(!pass.startsWith("tiles")) {steady.toggleTileCache();}
+					if(aa) {steady.enableAA();} else {steady.disableAA();}
+					steady.interacting(pass.equals("coarse"));
+					bytes[step] = (long) canvasFrames(steady, screen, step, frames / 20)[1];
+				}
+				long budget = FRAME_BUDGET + (aa ? AA_SHAPE_BUDGET : SHAPE_BUDGET) * drawn;
+				System.out.printf("%-8d %-8s %14d %14d %14d%n", detail, pass, bytes[0], bytes[1], budget);
+				over |= bytes[0] > budget || bytes[1] > budget;
+			}
+		}
+		if(over) {
+			System.out.println("Steady frames allocate more than the budget.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Adds a motorway running parallel to the edges between a block of two by two tiles, up to one stroke width away
+	 * on either side, and compares the tiles with the same block painted in one piece. Pixels differing more than
+	 * without the motorway are seams, a stroke reaching into a tile that never drew it.
+	 * One motorway at a time, so it is not merged with the others.
+	 */
+	private static void seams(Model model) {
+		DataTree motorways = model.data(LayerType.ROAD_LVL1);
+		if(motorways == null) {System.out.println("No motorways in the map"); return;}
+		int size = 2 * TileCache.SIZE;
+		float stroke = 0.00004f; // The width of a motorway.
+		System.out.printf("%-10s %8s %8s %8s %12s%n", "pixel", "stroke", "lines", "seams", "differing");
+		for(double pixelSize : new double[] {0.00002, 0.000005, 0.000002}) {
+			AffineTransform linear = AffineTransform.getScaleInstance(1 / pixelSize, 1 / pixelSize);
+			int col0 = (int) Math.floor((model.minLon() + model.maxLon()) / 2 / pixelSize / TileCache.SIZE);
+			int row0 = (int) Math.floor((model.minLat() + model.maxLat()) / 2 / pixelSize / TileCache.SIZE);
+			double x0 = col0 * TileCache.SIZE * pixelSize, y0 = row0 * TileCache.SIZE * pixelSize, length = size * pixelSize;
+			AffineTransform at = AffineTransform.getTranslateInstance(-col0 * TileCache.SIZE, -row0 * TileCache.SIZE);
+			at.concatenate(linear);
+			MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+			renderer.detailLevel(12);
+			BufferedImage whole = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+			BufferedImage[] block = new BufferedImage[4];
+			int baseline = differing(renderer, linear, at, col0, row0, whole, block, null);
+			int lines = 0, seams = 0, differ = 0;
+			for(double offset : new double[] {-1, -0.5, -0.25, 0.25, 0.5, 1}) {
+				for(int vertical = 0; vertical < 2; vertical++) {
+					double edge = (vertical == 1 ? x0 : y0) + TileCache.SIZE * pixelSize + offset * stroke;
+					PolygonApprox line = new PolygonApprox(vertical == 1
+							? Arrays.asList(new Point2D.Double(edge, y0), new Point2D.Double(edge, y0 + length))
+							: Arrays.asList(new Point2D.Double(x0, edge), new Point2D.Double(x0 + length, edge)));
+					int extra = differing(renderer, linear, at, col0, row0, whole, block, line) - baseline;
+					lines++;
+					if(extra > 0) {seams++; differ += extra;}
+				}
+			}
+			System.out.printf("%-10s %7.1fp %8d %8d %12d%n", pixelSize, stroke / pixelSize, lines, seams, differ);
+		}
+	}
+
+	/**
+	 * Paints two by two tiles in one piece and as tiles with the given motorway added, and counts the pixels differing.
+	 */
+	private static int differing(MapRenderer renderer, AffineTransform linear, AffineTransform at, int col0, int row0,
+			BufferedImage whole, BufferedImage[] block, PolygonApprox line) {
+		DataTree motorways = renderer.model().data(LayerType.ROAD_LVL1);
+		if(line != null) {motorways.insert(line);}
+		Graphics2D g = whole.createGraphics();
+		renderer.paint(g, at, whole.getWidth(), whole.getHeight(), TileCache.area(at, whole.getWidth(), whole.getHeight()));
+		g.dispose();
+		TileCache tiles = new TileCache(4L * TileCache.SIZE * TileCache.SIZE * 4, 1);
+		tiles.validate(renderer);
+		tiles.tiles(renderer, linear, col0, row0, 2, 2, block);
+		if(line != null) {motorways.remove(line);}
+		int differ = 0;
+		for(int y = 0; y < whole.getHeight(); y++) {
+			for(int x = 0; x < whole.getWidth(); x++) {
+				int tile = block[(y / TileCache.SIZE) * 2 + x / TileCache.SIZE].getRGB(x % TileCache.SIZE, y % TileCache.SIZE);
+				if(tile != whole.getRGB(x, y)) {differ++;}
+			}
+		}
+		return differ;
+	}
+
+	/**
+	 * Returns the time in milliseconds to draw a screen at street level straight away, as a coarse pass when coarse is above 1.
+	 */
+	private static double directFrames(Model model, int detail, int coarse, int frames) {
+		MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+		renderer.detailLevel(detail);
+		renderer.coarse(coarse);
+		renderer.AA(coarse == 1);
+		return directFrames(model, renderer, frames);
+	}
+
+	/**
+	 * Returns the time in milliseconds to draw a screen at street level straight away with the given renderer.
+	 */
+	private static double directFrames(Model model, MapRenderer renderer, int frames) {
+		BufferedImage screen = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		AffineTransform at = AffineTransform.getTranslateInstance(SCREEN_WIDTH / 2, SCREEN_HEIGHT / 2);
+		at.scale(1 / 0.00002, 1 / 0.00002);
+		at.translate(-(model.minLon() + model.maxLon()) / 2, -(model.maxLat() + model.minLat()) / 2);
+		long t = 0;
+		for(int f = -1; f < frames; f++) {
+			Graphics2D g = screen.createGraphics();
+			long t0 = System.nanoTime();
+			renderer.paint(g, at, SCREEN_WIDTH, SCREEN_HEIGHT, TileCache.area(at, SCREEN_WIDTH, SCREEN_HEIGHT));
+			if(f >= 0) {t += System.nanoTime() - t0;}
+			g.dispose();
+		}
+		return t / 1e6 / frames;
+	}
+
+	/**
+	 * Returns the time in milliseconds to draw a screen at street level straight away, rotated around its centre.
+	 * The statistics of the renderer only cover the timed frames.
+	 */
+	private static double rotatedFrames(Model model, MapRenderer renderer, double theta, int frames) {
+		BufferedImage screen = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		AffineTransform at = AffineTransform.getTranslateInstance(SCREEN_WIDTH / 2, SCREEN_HEIGHT / 2);
+		at.rotate(theta);
+		at.scale(1 / 0.00002, 1 / 0.00002);
+		at.translate(-(model.minLon() + model.maxLon()) / 2, -(model.maxLat() + model.minLat()) / 2);
+		long t = 0;
+		for(int f = -1; f < frames; f++) {
+			if(f == 0) {renderer.resetStats();}
+			Graphics2D g = screen.createGraphics();
+			long t0 = System.nanoTime();
+			renderer.paint(g, at, SCREEN_WIDTH, SCREEN_HEIGHT, TileCache.area(at, SCREEN_WIDTH, SCREEN_HEIGHT));
+			if(f >= 0) {t += System.nanoTime() - t0;}
+			g.dispose();
+		}
+		return t / 1e6 / frames;
+	}
+
+	/**
+	 * Returns the time in milliseconds to draw a screen at street level straight away, panned a few pixels every frame.
+	 * The last frame is left in the given image.
+	 */
+	private static double panFrames(Model model, MapRenderer renderer, BufferedImage screen, int frames) {
+		AffineTransform at = AffineTransform.getTranslateInstance(SCREEN_WIDTH / 2, SCREEN_HEIGHT / 2);
+		at.scale(1 / 0.00002, 1 / 0.00002);
+		at.translate(-(model.minLon() + model.maxLon()) / 2, -(model.maxLat() + model.minLat()) / 2);
+		Graphics2D g = screen.createGraphics();
+		long t = 0;
+		for(int f = -frames; f < frames; f++) { // The first half warms up the caches and the JIT.
+			at.preConcatenate(AffineTransform.getTranslateInstance(2.5, 1.5));
+			long t0 = System.nanoTime();
+			renderer.paint(g, at, SCREEN_WIDTH, SCREEN_HEIGHT, TileCache.area(at, SCREEN_WIDTH, SCREEN_HEIGHT));
+			if(f >= 0) {t += System.nanoTime() - t0;}
+		}
+		g.dispose();
+		return t / 1e6 / frames;
+	}
+
+	/**
+	 * Returns the time in milliseconds to draw a screen of tiles at street level, with a new scale every frame.
+	 */
+	private static double coldFrames(Model model, int detail, int threads, int frames) {
+		TileCache tiles = new TileCache(256L << 20, threads);
+		MapRenderer renderer = new MapRenderer(model, new Config("Benchmark"));
+		renderer.detailLevel(detail);
+		tiles.validate(renderer);
+		int cols = SCREEN_WIDTH / TileCache.SIZE + 1, rows = SCREEN_HEIGHT / TileCache.SIZE + 1;
+		BufferedImage[] out = new BufferedImage[cols * rows];
+		Point2D centre = new Point2D.Double((model.minLon() + model.maxLon()) / 2, (model.maxLat() + model.minLat()) / 2);
+		long t = 0;
+		for(int f = -1; f < frames; f++) {
+			AffineTransform linear = AffineTransform.getScaleInstance(1 / 0.00002 * (1 + f * 1e-3), 1 / 0.00002 * (1 + f * 1e-3));
+			Point2D p = linear.transform(centre, null);
+			long t0 = System.nanoTime();
+			tiles.tiles(renderer, linear, (int) Math.floor((p.getX() - SCREEN_WIDTH / 2) / TileCache.SIZE),
+					(int) Math.floor((p.getY() - SCREEN_HEIGHT / 2) / TileCache.SIZE), cols, rows, out);
+			if(f >= 0) {t += System.nanoTime() - t0;} // The first frame warms up the threads.
+		}
+		return t / 1e6 / frames;
+	}
+
+	/**
+	 * Returns a MapCanvas of the size of the screen, showing the centre of the map at street level.
+	 */
+	private static MapCanvas canvas(Model model) {
+		MapCanvas canvas = new MapCanvas(SCREEN_WIDTH, SCREEN_HEIGHT);
+		canvas.pan(-(model.minLon() + model.maxLon()) / 2, -(model.maxLat() + model.minLat()) / 2);
+		canvas.zoom(1 / 0.00002, 0, 0);
+		canvas.pan(SCREEN_WIDTH / 2, SCREEN_HEIGHT / 2);
+		AffineTransform at = canvas.transform();
+		canvas.pan(Math.rint(at.getTranslateX()) - at.getTranslateX(), Math.rint(at.getTranslateY()) - at.getTranslateY()); // Tiles are placed at whole pixels.
+		canvas.detailLevel(12);
+		return canvas;
+	}
+
+	/**
+	 * Paints the canvas into the image like the render thread, on a new Graphics every frame, while the view is moved the
+	 * given number of pixels per frame.
+	 * @return The milliseconds per frame and the bytes allocated on the heap by the current thread per frame.
+	 */
+	private static double[] canvasFrames(MapCanvas canvas, BufferedImage image, int step, int frames) {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		long t = 0, bytes = 0;
+		for(int f = -frames; f < frames; f++) { // The first half warms up the caches and the JIT.
+			canvas.pan(step, 0);
+			canvas.viewport(canvas.getViewPort());
+			long t0 = System.nanoTime(), b0 = bean.getThreadAllocatedBytes(id);
+			paint(canvas, image);
+			if(f >= 0) {
+				bytes += bean.getThreadAllocatedBytes(id) - b0;
+				t += System.nanoTime() - t0;
+			}
+		}
+		return new double[] {t / 1e6 / frames, (double) bytes / frames};
+	}
+
+	private static void paint(MapCanvas canvas, BufferedImage image) {
+		Graphics2D g = image.createGraphics();
+		canvas.paint(g);
+		g.dispose();
+	}
+
+	/**
+	 * Matches GPS traces onto the road network on one thread and on every core, and reports throughput and per-trace latency.
+	 * Without trace files, traces are simulated along random routes with 5m of noise, and the share of the true roads found is reported.
+	 */
+	private static void match(Model model, String[] files) throws IOException, InterruptedException {
+		List<GPSTrace> traces = new ArrayList<>();
+		List<Set<Road>> truth = new ArrayList<>();
+		for(String f : files) {traces.addAll(GPSTrace.read(new File(f)));}
+		if(traces.isEmpty()) {simulate(model, 2000, traces, truth);}
+
+		long t = System.nanoTime();
+		MapMatcher matcher = new MapMatcher(model, true);
+		System.out.printf("Built matcher in %.0f ms, %d traces%n", (System.nanoTime() - t) / 1e6, traces.size());
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads : cores > 1 ? new int[] {1, cores} : new int[] {1}) {
+			matcher.matchAll(traces.subList(0, Math.min(100, traces.size())), threads); // Warm up.
+			t = System.nanoTime();
+			List<MatchResult> results = matcher.matchAll(traces, threads);
+			double seconds = (System.nanoTime() - t) / 1e9;
+			long[] nanos = new long[results.size()];
+			long points = 0, breaks = 0, found = 0, expected = 0;
+			for(int i = 0; i < results.size(); i++) {
+				MatchResult r = results.get(i);
+				nanos[i] = r.nanos();
+				points += r.matchedPoints();
+				breaks += r.breaks();
+				if(i < truth.size()) {
+					Set<Road> matched = new HashSet<>(Arrays.asList(r.roads()));
+					for(Road road : truth.get(i)) {if(matched.contains(road)) {found++;}}
+					expected += truth.get(i).size();
+				}
+			}
+			Arrays.sort(nanos);
+			System.out.printf("%2d threads: %8.0f traces/min, latency ms p50 %.2f p95 %.2f p99 %.2f max %.2f, %.1f points/trace, %d breaks",
+					threads, results.size() / seconds * 60, percentile(nanos, 0.5) / 1e6, percentile(nanos, 0.95) / 1e6,
+					percentile(nanos, 0.99) / 1e6, nanos[nanos.length - 1] / 1e6, points / (double) results.size(), breaks);
+			System.out.println(expected > 0 ? String.format(", %.1f%% of true roads found", 100.0 * found / expected) : "");
+		}
+	}
+
+	/**
+	 * Finds routes between random vertices for every profile with A* and bidirectional A*, both with and without landmarks,
+	 * and with a contraction hierarchy, and compares the latency, the vertices settled and the cost of the routes found.
+	 * The throughput of A* and of the hierarchy is measured on one thread and on every core.
+	 * Landmarks and hierarchies saved with the map are used, the others are built first.
+	 */
+	private static void route(Model model) throws InterruptedException {
+		PathFinder pf = model.pathFinder();
+		Random random = new Random(16052016);
+		Vertex[] from = new Vertex[ROUTES], to = new Vertex[ROUTES];
+		for(int i = 0; i < ROUTES; i++) {
+			Road a = model.roadIndex().road(random.nextInt(model.roadIndex().roads()));
+			Road b = model.roadIndex().road(random.nextInt(model.roadIndex().roads()));
+			from[i] = a.closestVertex(a.startPoint());
+			to[i] = b.closestVertex(b.startPoint());
+		}
+		for(RouteProfile profile : RouteProfile.values()) {
+			ContractionHierarchy savedHierarchy = pf.hierarchy(profile);
+			Landmarks savedLandmarks = pf.landmarks(profile);
+			pf.hierarchy(profile, null);
+			pf.landmarks(profile, null);
+			System.out.println(profile);
+			double[] aStar = routes(pf, profile, from, to, "A*", null, false);
+			throughput(pf, profile, from, to);
+			routes(pf, profile, from, to, "A* bidir", aStar, true);
+
+			long t = System.nanoTime();
+			Landmarks landmarks = savedLandmarks != null ? savedLandmarks : new Landmarks(pf, profile, LANDMARKS);
+			t = System.nanoTime() - t;
+			pf.landmarks(profile, landmarks);
+			routes(pf, profile, from, to, "ALT", aStar, false);
+			routes(pf, profile, from, to, "ALT bidir", aStar, true);
+			System.out.println(savedLandmarks != null ? "    saved with the map" : String.format("    %d landmarks in %.1f s", LANDMARKS, t / 1e9));
+			pf.landmarks(profile, null);
+
+			t = System.nanoTime();
+			ContractionHierarchy hierarchy = savedHierarchy != null ? savedHierarchy : new ContractionHierarchy(pf, profile);
+			t = System.nanoTime() - t;
+			pf.hierarchy(profile, hierarchy);
+			routes(pf, profile, from, to, "hierarchy", aStar, false);
+			throughput(pf, profile, from, to);
+			System.out.printf("    %s, %d shortcuts, %d edges%n", savedHierarchy != null ? "saved with the map"
+					: String.format("contracted in %.1f s", t / 1e9), hierarchy.shortcuts(), hierarchy.edges());
+
+			pf.hierarchy(profile, savedHierarchy);
+			pf.landmarks(profile, savedLandmarks);
+		}
+	}
+
+	/**
+	 * Finds the routes with the PathFinder, once to warm up and once timed, and prints the latency, the vertices settled
+	 * and the heap operations per route.
+	 * Compared to the costs of a baseline if there is one.
+	 * @return The cost of every route in the profile, POSITIVE_INFINITY where no route was found.
+	 */
+	private static double[] routes(PathFinder pf, RouteProfile profile, Vertex[] from, Vertex[] to, String name, double[] baseline, boolean bidirectional) {
+		double[] cost = new double[from.length];
+		long[] nanos = new long[from.length];
+		long settled = 0, operations = 0;
+		for(int pass = 0; pass < 2; pass++) {
+			settled = 0;
+			operations = 0;
+			for(int i = 0; i < from.length; i++) {
+				long t = System.nanoTime();
+				Road[] path;
+				try {
+					path = pf.path(from[i], to[i], profile.car(), profile.fastest(), bidirectional);
+				} catch (NoPathFoundException e) {
+					path = null;
+				}
+				nanos[i] = System.nanoTime() - t;
+				settled += pf.settled();
+				operations += pf.heapOperations();
+				cost[i] = path == null ? Double.POSITIVE_INFINITY : 0;
+				if(path != null) {for(Road r : path) {cost[i] += ContractionHierarchy.weight(r, profile);}}
+			}
+		}
+		Arrays.sort(nanos);
+		System.out.printf("  %-10s ms p50 %8.3f p95 %8.3f max %8.3f, %8.0f vertices settled, %8.0f heap ops", name, percentile(nanos, 0.5) / 1e6,
+				percentile(nanos, 0.95) / 1e6, nanos[nanos.length - 1] / 1e6, settled / (double) from.length, operations / (double) from.length);
+		if(baseline == null) {
+			int found = 0;
+			for(double c : cost) {if(!Double.isInfinite(c)) {found++;}}
+			System.out.printf(", %d routes found%n", found);
+			return cost;
+		}
+		int same = 0, cheaper = 0, dearer = 0;
+		for(int i = 0; i < cost.length; i++) {
+			if(Double.isInfinite(baseline[i]) && Double.isInfinite(cost[i])) {continue;}
+			double tolerance = 1e-4 * baseline[i] + 1e-3;
+			if(cost[i] < baseline[i] - tolerance) {cheaper++;} else if(cost[i] > baseline[i] + tolerance) {dearer++;} else {same++;}
+		}
+		System.out.printf(", %d as good as A*, %d better, %d worse%n", same, cheaper, dearer);
+		return cost;
+	}
+
+	/**
+	 * Finds the routes with PathFinder.paths on one thread and on every core, and prints the routes found per second.
+	 */
+	private static void throughput(PathFinder pf, RouteProfile profile, Vertex[] from, Vertex[] to) throws InterruptedException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads : cores > 1 ? new int[] {1, cores} : new int[] {1}) {
+			pf.paths(from, to, profile.car(), profile.fastest(), threads); // Warm up.
+			long t = System.nanoTime();
+			pf.paths(from, to, profile.car(), profile.fastest(), threads);
+			System.out.printf("    %2d threads: %8.0f routes/s%n", threads, from.length / ((System.nanoTime() - t) / 1e9));
+		}
+	}
+
+	/**
+	 * Creates traces along shortest routes between random points 1-3km apart, sampled every 30m with 5m of gaussian noise.
+	 */
+	private static void simulate(Model model, int count, List<GPSTrace> traces, List<Set<Road>> truth) {
+		Random random = new Random(16052016);
+		float lonFactor = model.lonFactor();
+		double km = 1000.0 / Model.METER_CONVERSION;
+		int attempts = 0;
+		while(traces.size() < count && attempts++ < count * 10) {
+			Road from = model.roadIndex().road(random.nextInt(model.roadIndex().roads()));
+			Point2D start = from.startPoint();
+			double angle = random.nextDouble() * 2 * Math.PI, length = (1 + 2 * random.nextDouble()) * km;
+			Point2D end = new Point2D.Double(start.getX() + Math.cos(angle) * length, start.getY() + Math.sin(angle) * length);
+			Road[] path;
+			try {
+				path = model.pathFinder().path(start, end, true, true);
+			} catch (NoPathFoundException | RuntimeException e) {
+				continue;
+			}
+			GPSTrace trace = new GPSTrace("simulated#" + traces.size());
+			Set<Road> roads = new HashSet<>();
+			Point2D position = null;
+			double carry = 0;
+			long time = 0;
+			for(int i = path.length - 1; i >= 0; i--) { // The path is in reversed order.
+				Road r = path[i];
+				if(r.name() != null && r.name().equals("[WALKWAY]")) {continue;}
+				roads.add(r);
+				List<Point2D> points = r.toList();
+				if(position != null && position.distance(points.get(0)) > position.distance(points.get(points.size() - 1))) {
+					Collections.reverse(points);
+				}
+				for(int j = 1; j < points.size(); j++) {
+					Point2D a = points.get(j-1), b = points.get(j);
+					double segment = a.distance(b) * Model.METER_CONVERSION;
+					for(; carry < segment; carry += 30) {
+						double f = carry / segment;
+						double x = a.getX() + f * (b.getX() - a.getX()) + random.nextGaussian() * 5 / Model.METER_CONVERSION;
+						double y = a.getY() + f * (b.getY() - a.getY()) + random.nextGaussian() * 5 / Model.METER_CONVERSION;
+						trace.add(-y, x / lonFactor, time += 2000);
+					}
+					carry -= segment;
+				}
+				position = points.get(points.size() - 1);
+			}
+			if(trace.size() < 2) {continue;}
+			traces.add(trace);
+			truth.add(roads);
+		}
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+	}
+}
@@ -67,6 +67,14 @@ public class Main {
 	public static Model model() {
 		return model;
 	}
+
+	/**
+	 * Replaces the current Model without touching the GUI. Used by benchmarks.
+	 * @param newModel The Model to be used.
+	 */
+	static void model(Model newModel) {
+		model = newModel;
+	}
 	
 	/**
 	 * Loads a new Model from an .osm, .zip or .obj file
@@ -9,6 +9,7 @@ import Model.POI;
 import Model.UserPOI;
 import Model.Vertex;
 import Model.Road;
+import Model.RoadSnap;
 import java.awt.Cursor;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyListener;
@@ -19,6 +20,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.JOptionPane;
 import javax.swing.Timer;
 
@@ -34,12 +37,14 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 	private boolean AAon, addPOIMode, closestRoadDrawn, alphaOn, dragStart, dragEnd, dragPoint, popupActive;
 	private int mx, my, rotates, screenWidth;   //Mouse position and number of times rotated, and screenWidth at startup
 	private double mapWidth, mapHeight;
-	private Timer aaTimer;   //Swing timer used as delay for AA during zoom.
+	private Timer aaTimer;   //Swing timer used as delay before refining the map after zooming.
 	private Timer mouseMoveTimer; //Swing timer used as delay for closest road_lvl1 function.
 	private double MAX_ZOOM_X, MAX_ZOOM_Y; //Maximal map width, used for locking zoom to model.
 	private final double MIN_ZOOM; //Minimal map width in meters.
-	private Point2D anchor, currentMousePosition, currentModelMousePosition, clickPoint, draggingPOI;
+	private Point2D anchor, currentMousePosition, currentModelMousePosition, clickPoint;
+	private UserPOI draggingPOI;
 	private Vertex closestVertexBefore;
+	private RoadSnap hoverSnap; //Reused by the closest road lookup on hover.
 
 	/**
 	 * Contructs a MapCanvas
@@ -63,6 +68,7 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 		dragEnd = false;
 		closestVertexBefore = null;
 		popupActive = false;
+		hoverSnap = new RoadSnap();
 
 		//Sets up listeners for the canvas
 		canvas.addMouseListener(this);    
@@ -321,37 +327,39 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 	 * Used by the MapCanvas to determine what to draw
 	 */
 	private void updateDetailLevel() {
-		Double pixelFactor = calcDistMeters(canvas.inverse(0, 0), canvas.inverse(screenWidth * 0.35, 0));;
-		if(pixelFactor < 150) {canvas.detailLevel(14);} //POI are shown
-		else if(pixelFactor < 200) {canvas.detailLevel(13);} //Cycleways and walkways are shown
-		else if(pixelFactor < 400) {canvas.detailLevel(12);} //Parking is shown
-		else if(pixelFactor < 550) {canvas.detailLevel(11);} //Buildings are shown
-		else if(pixelFactor < 700) {canvas.detailLevel(10);} //All roads are now shown
-		else if(pixelFactor < 1200) {canvas.detailLevel(9);} //Airways and residential roads are shown
-		else if(pixelFactor < 1500) {canvas.detailLevel(8);} //Grass is solid
-		else if(pixelFactor < 1800) {
-			if(alphaOn) {
-				canvas.detailLevel(7); //Grass is fading in
-				canvas.grassA((int) (1800 - pixelFactor) * 255 / 300);
-			} else {
-				canvas.detailLevel(8);
-			}
-		}
-		else if(pixelFactor < 3000) {canvas.detailLevel(6);} //Sand is drawn
-		else if(pixelFactor < 3500) {canvas.detailLevel(5);} //Farmland and plains solid
-		else if(pixelFactor < 4500) {
-			if(alphaOn) {
-				canvas.detailLevel(4); //Waterways and More big roads are shown. Farmland and plains is fading in
-				canvas.farmPlainA((int) (4500 - pixelFactor) * 255 / 1000);
-			} else {
-				canvas.detailLevel(5);
-			}
+		Double pixelFactor = calcDistMeters(canvas.inverse(0, 0), canvas.inverse(screenWidth * 0.35, 0));
+		if(alphaOn && pixelFactor >= 1500 && pixelFactor < 1800) {
+			canvas.detailLevel(7); //Grass is fading in
+			canvas.grassA((int) (1800 - pixelFactor) * 255 / 300);
+		} else if(alphaOn && pixelFactor >= 3500 && pixelFactor < 4500) {
+			canvas.detailLevel(4); //Waterways and More big roads are shown. Farmland and plains is fading in
+			canvas.farmPlainA((int) (4500 - pixelFactor) * 255 / 1000);
+		} else {
+			canvas.detailLevel(detailLevel(pixelFactor));
 		}
-		else if(pixelFactor < 8000) {canvas.detailLevel(3);} //Railways are shown
-		else if(pixelFactor < 15000) {canvas.detailLevel(2);} //Forest && residential areas are shown
-		else {canvas.detailLevel(1);} //Only coasts and big roads are shown
 	}
-	
+
+	/**
+	 * Returns the detail level for the given width of 35% of the screen, without fading anything in.
+	 * Also used by the WebTileRenderer, so tiles show what the program would show at the same scale.
+	 * @param pixelFactor The width of 35% of the screen in approx meters.
+	 * @return
+	 */
+	public static int detailLevel(double pixelFactor) {
+		if(pixelFactor < 150) {return 14;} //POI are shown
+		else if(pixelFactor < 200) {return 13;} //Cycleways and walkways are shown
+		else if(pixelFactor < 400) {return 12;} //Parking is shown
+		else if(pixelFactor < 550) {return 11;} //Buildings are shown
+		else if(pixelFactor < 700) {return 10;} //All roads are now shown
+		else if(pixelFactor < 1200) {return 9;} //Airways and residential roads are shown
+		else if(pixelFactor < 1800) {return 8;} //Grass is solid
+		else if(pixelFactor < 3000) {return 6;} //Sand is drawn
+		else if(pixelFactor < 4500) {return 5;} //Farmland and plains solid
+		else if(pixelFactor < 8000) {return 3;} //Railways are shown
+		else if(pixelFactor < 15000) {return 2;} //Forest && residential areas are shown
+		else {return 1;} //Only coasts and big roads are shown
+	}
+
 	/**
 	 * Updates the numbers for the scalebar in the bottom right corner of the MapCanvas.
 	 * Takes a 100px sample from view and supplies the rounded distance in meters.
@@ -422,22 +430,9 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
      */
 	private UserPOI closestPOI(int x, int y) {
 		if(model.userPOI().size() > 0) {
-			Point2D[] screenPoints = new Point2D[model.userPOI().size()];
-			Point2D mousePoint = new Point2D.Float(x,y);
-			Point2D closest = canvas.translatePointToViewCoords(model.userPOI().get(0));
-			double minDist = calcDist(mousePoint, closest);
-			int finalIndex = 0;
-			for(int i = 0; i < screenPoints.length; i++) {
-				screenPoints[i] = canvas.translatePointToViewCoords(model.userPOI().get(i)); //Transforms to screen cords
-				double testDist = calcDist(mousePoint, screenPoints[i]);
-				if(testDist < minDist) {
-					finalIndex = i; 
-					minDist = testDist;
-				}
-			} 
-			if(minDist < 20) { 
-				return (UserPOI) model.userPOI().get(finalIndex);
-			} 
+			Point2D mousePoint = canvas.inverse(x, y);
+			double maxDist = calcDist(mousePoint, canvas.inverse(x + 20, y)); //20px in model coords
+			return (UserPOI) model.userPOIIndex().nearest(mousePoint.getX(), mousePoint.getY(), maxDist, null);
 		}
 		return null;
 	}
@@ -452,9 +447,7 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 		if (!addPOIMode) {
 			mx = e.getX();
 			my = e.getY();
-			if (AAon) {
-				canvas.disableAA();
-			}
+			canvas.interacting(true);
 			//Enable drag-POI
 			UserPOI closest = closestPOI(e.getX(), e.getY());
 			if (closest != null) {
@@ -604,13 +597,11 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 				Road[] path;
 				try {
 					if(dragStart) {
-						model.pathFinder().drag(false, false);
-						path = model.pathFinder().path(closestVertex.getPosition(), endPos, navController.carSelected(), navController.fastSelected());
+						path = model.pathFinder().drag(closestVertex.getPosition(), endPos, navController.carSelected(), navController.fastSelected(), true, false);
 						model.pathFrom(closestVertex);
 						model.path(path);
 					} else if(dragEnd) {
-						model.pathFinder().drag(true, false);
-						path = model.pathFinder().path(startPos, closestVertex.getPosition(), navController.carSelected(), navController.fastSelected());
+						path = model.pathFinder().drag(startPos, closestVertex.getPosition(), navController.carSelected(), navController.fastSelected(), false, false);
 						model.pathTo(closestVertex);
 						model.path(path);
 					}
@@ -624,7 +615,7 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 			canvas.addingPoint(currentMousePosition);
 			model.update();
 		} else if(dragPoint) {
-			if(draggingPOI != null) { draggingPOI.setLocation(currentModelMousePosition); }
+			if(draggingPOI != null) { model.moveUserPOI(draggingPOI, currentModelMousePosition); }
 			model.update();
 		} else {
 			double dx = e.getX() - mx; //Find direction that is about to be panned
@@ -641,7 +632,7 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 		model.highlight(null);
 		//ZOOM
 		if(!addPOIMode) {
-			canvas.disableAA();
+			canvas.interacting(true);
 			double zoomFactor = Math.pow(1.1, -e.getWheelRotation());
 			zoom(zoomFactor, e.getX(), e.getY());
 			aaTimer.restart();
@@ -649,10 +640,10 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 	}
 	@Override
 	public void mouseReleased(MouseEvent e)	{
-		//Toggle AA, reset drag
-		if(AAon) {canvas.enableAA(); model.update();}
+		//Refine the map, reset drag
+		canvas.interacting(false);
+		model.update();
 		navController.updateNavList();
-		model.pathFinder().drag(false, false);
 		dragStart = false;
 		dragEnd = false;
 		dragPoint = false;
@@ -665,22 +656,22 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
      */
 	public void actionPerformed(ActionEvent e) {
 		if(e.getSource() == aaTimer) {
-			//Responds to the delayed AA during zoom
-			if(AAon) {canvas.enableAA();}
+			//Refines the map once zooming has stopped
+			canvas.interacting(false);
 			model.update();
 			aaTimer.stop();
 		} else if(e.getSource() == mouseMoveTimer) {
 			//If the mouse has not been moved for the amount of time specified by mouseMoveTimer the closest road
 			//is shown.
-			Road road = model.closestRoad(currentModelMousePosition);
 			String roadName;
-			if(road != null) {
-				roadName = road.name();
+			if(model.closestRoad(currentModelMousePosition, hoverSnap)) {
+				roadName = hoverSnap.road().name();
 			} else {
 				mouseMoveTimer.stop();
 				return;
 			}
-			float distToRoad = (float) model.closestRoad(currentModelMousePosition).distTo(currentModelMousePosition) * Model.METER_CONVERSION;
+			Road road = hoverSnap.road();
+			float distToRoad = (float) hoverSnap.distance() * Model.METER_CONVERSION;
 			if (roadName != null && !roadName.equals("") && canvas.detailLevel() >= 8 && distToRoad < 250) {
 				canvas.infoBox(currentMousePosition, roadName);
 				closestRoadDrawn = true;
@@ -708,14 +699,14 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 	}
 
 	/**
-	 * Turn off Anti-Aliasing to enable better frame-rate when the user pans frequently.
+	 * Draw a coarse map to enable better frame-rate when the user pans frequently.
 	 */
-	public void keyPressed(KeyEvent e) {if(AAon) {canvas.disableAA();} }
+	public void keyPressed(KeyEvent e) {canvas.interacting(true);}
 	
 	/**
-	 * Turn on Anti-Aliasing (if enabled) to draw the map more precise.
+	 * Refine the map to full detail.
 	 */
-	public void keyReleased(KeyEvent e) {if(AAon) {canvas.enableAA(); model.update();} }
+	public void keyReleased(KeyEvent e) {canvas.interacting(false); model.update();}
 
 	/**
 	 * Handles shortcuts for the program
@@ -779,8 +770,23 @@ public class MapController extends MouseAdapter implements KeyListener, ActionLi
 					updateClip();
 					break;
 				case 'y':
-					//Toggle the FPS counter for the map
-					canvas.toggleFPSCounter();
+					//Toggle the frame profiler for the map
+					canvas.toggleProfiler();
+					break;
+				case 'j':
+					//Save the frame profile recorded so far
+					File profile = new File("profile-" + System.currentTimeMillis() + ".txt");
+					try {
+						canvas.saveProfile(profile);
+						JOptionPane.showMessageDialog(null, "Frame profile saved to " + profile.getAbsolutePath(), "Profile saved", JOptionPane.INFORMATION_MESSAGE);
+					} catch (IOException ex) {
+						JOptionPane.showMessageDialog(null, "Could not save the frame profile: " + ex.getMessage(), "Profile not saved", JOptionPane.ERROR_MESSAGE);
+					}
+					break;
+				case 'k':
+					//Toggle the tile cache for the static layers of the map
+					canvas.toggleTileCache();
+					model.update();
 					break;
 				case 'u':
 					//Toggle alpha
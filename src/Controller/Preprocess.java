@@ -0,0 +1,80 @@
+package Controller;
+
+import java.io.File;
+import java.io.IOException;
+import Model.ContractionHierarchy;
+import Model.Landmarks;
+import Model.Model;
+import Model.PathFinder;
+import enums.RouteProfile;
+
+/**
+ * Command line job preparing the navigation of a map for every kind of route, and saving the map as an .obj file.
+ * Builds the contraction hierarchies, found routes then never use A*, and optionally picks landmarks for A*.
+ * Never used by the program.
+ * Usage: Preprocess &lt;.osm, .zip or .obj file&gt; &lt;output .obj file&gt; [--no-hierarchies] [--landmarks count]
+ */
+public class Preprocess {
+	private static final String USAGE = "Usage: Preprocess <.osm, .zip or .obj file> <output .obj file> [--no-hierarchies] [--landmarks count]";
+
+	/**
+	 * Loads the given map, prepares it and saves it.
+	 * @param args The map file, the output file and the options.
+	 * @throws IOException If the map could not be loaded or saved.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println(USAGE);
+			return;
+		}
+		boolean hierarchies = true;
+		int landmarks = 0;
+		for(int i = 2; i < args.length; i++) {
+			if(args[i].equals("--no-hierarchies")) {
+				hierarchies = false;
+			} else if(args[i].equals("--landmarks") && i + 1 < args.length) {
+				landmarks = Integer.parseInt(args[++i]);
+			} else {
+				System.out.println(USAGE);
+				return;
+			}
+		}
+		Model model = load(new File(args[0]));
+		PathFinder pf = model.pathFinder();
+		for(RouteProfile profile : RouteProfile.values()) {
+			if(landmarks > 0) {
+				long t = System.nanoTime();
+				pf.landmarks(profile, new Landmarks(pf, profile, landmarks));
+				System.out.printf("%-12s %d landmarks in %.1f s%n", profile, landmarks, (System.nanoTime() - t) / 1e9);
+			}
+			if(hierarchies) {
+				long t = System.nanoTime();
+				ContractionHierarchy hierarchy = new ContractionHierarchy(pf, profile);
+				pf.hierarchy(profile, hierarchy);
+				System.out.printf("%-12s contracted in %.1f s, %d shortcuts, %d edges%n", profile,
+						(System.nanoTime() - t) / 1e9, hierarchy.shortcuts(), hierarchy.edges());
+			}
+		}
+		long t = System.nanoTime();
+		model.save(new File(args[1]));
+		System.out.printf("Saved %s in %.1f s%n", args[1], (System.nanoTime() - t) / 1e9);
+	}
+
+	/**
+	 * Loads a Model the same way the program does, and makes it the current Model.
+	 */
+	private static Model load(File file) throws IOException {
+		long t = System.nanoTime();
+		Model model;
+		if(file.getName().endsWith(".obj")) {
+			model = Model.load(file);
+		} else {
+			model = new Model();
+			Main.model(model);
+			model.loadOSM(file);
+		}
+		Main.model(model);
+		System.out.printf("Loaded %s in %.1f s%n", file.getName(), (System.nanoTime() - t) / 1e9);
+		return model;
+	}
+}
@@ -0,0 +1,142 @@
+package Controller;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import Model.Config;
+import Model.Model;
+import View.WebTileRenderer;
+
+/**
+ * Command line job writing a pyramid of web map tiles for a loaded map, as output/z/x/y.png. Never used by the program.
+ * Runs headless, the tiles are drawn and encoded on a pool of threads.
+ * Usage: TileExport &lt;.osm, .zip or .obj file&gt; &lt;output directory&gt; &lt;min zoom&gt; &lt;max zoom&gt; [threads] [minLat minLon maxLat maxLon]
+ */
+public class TileExport {
+	private static final long REPORT_INTERVAL = 5000000000L; // Nanoseconds between progress lines.
+
+	/**
+	 * Loads the given map and writes the tiles. The bounding box defaults to the bounds of the map.
+	 * @param args The map file, the output directory, the zoom levels and optionally the threads and the bounding box.
+	 * @throws IOException If the map could not be loaded or a tile could not be written.
+	 * @throws InterruptedException If interrupted while waiting for the tiles.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		if(args.length != 4 && args.length != 5 && args.length != 9) {
+			System.out.println("Usage: TileExport <.osm, .zip or .obj file> <output directory> <min zoom> <max zoom> [threads] [minLat minLon maxLat maxLon]");
+			return;
+		}
+		Model model = load(new File(args[0]));
+		int minZoom = Integer.parseInt(args[2]), maxZoom = Integer.parseInt(args[3]);
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		double minLat = -model.minLat(), maxLat = -model.maxLat();
+		double minLon = model.minLon() / model.lonFactor(), maxLon = model.maxLon() / model.lonFactor();
+		if(args.length == 9) {
+			minLat = Double.parseDouble(args[5]);
+			minLon = Double.parseDouble(args[6]);
+			maxLat = Double.parseDouble(args[7]);
+			maxLon = Double.parseDouble(args[8]);
+		}
+		Config config = model.config().isEmpty() ? new Config("Default") : model.config().get(0);
+		export(new WebTileRenderer(model, config), new File(args[1]), minZoom, maxZoom, minLat, minLon, maxLat, maxLon, threads);
+	}
+
+	/**
+	 * Loads a Model the same way the program does, and makes it the current Model.
+	 */
+	private static Model load(File file) throws IOException {
+		long t = System.nanoTime();
+		Model model;
+		if(file.getName().endsWith(".obj")) {
+			model = Model.load(file);
+		} else {
+			model = new Model();
+			Main.model(model);
+			model.loadOSM(file);
+		}
+		Main.model(model);
+		System.out.printf("Loaded %s in %.1f s%n", file.getName(), (System.nanoTime() - t) / 1e9);
+		return model;
+	}
+
+	/**
+	 * Writes every tile touching the bounding box at the given zoom levels, and reports the throughput.
+	 * @param renderer Draws the tiles.
+	 * @param dir The output directory, tiles are written to dir/z/x/y.png.
+	 * @param minZoom The first zoom level.
+	 * @param maxZoom The last zoom level.
+	 * @param minLat The southern edge of the box in degrees.
+	 * @param minLon The western edge of the box in degrees.
+	 * @param maxLat The northern edge of the box in degrees.
+	 * @param maxLon The eastern edge of the box in degrees.
+	 * @param threads The number of threads drawing tiles.
+	 * @return The number of tiles written.
+	 * @throws IOException If a tile could not be written.
+	 * @throws InterruptedException If interrupted while waiting for the tiles.
+	 */
+	public static long export(final WebTileRenderer renderer, final File dir, int minZoom, int maxZoom,
+			double minLat, double minLon, double maxLat, double maxLon, int threads) throws IOException, InterruptedException {
+		long total = 0;
+		for(int z = minZoom; z <= maxZoom; z++) {
+			total += (long) (WebTileRenderer.column(z, maxLon) - WebTileRenderer.column(z, minLon) + 1)
+					* (WebTileRenderer.row(z, minLat) - WebTileRenderer.row(z, maxLat) + 1);
+		}
+		System.out.printf("Writing %d tiles, zoom %d to %d, on %d threads%n", total, minZoom, maxZoom, threads);
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		final AtomicLong done = new AtomicLong();
+		final long start = System.nanoTime();
+		final AtomicLong nextReport = new AtomicLong(start + REPORT_INTERVAL);
+		final long all = total;
+		try {
+			for(int z = minZoom; z <= maxZoom; z++) {
+				long t = System.nanoTime(), before = done.get();
+				List<Future<Void>> futures = new ArrayList<>();
+				for(int x = WebTileRenderer.column(z, minLon); x <= WebTileRenderer.column(z, maxLon); x++) {
+					final int zoom = z, column = x;
+					new File(dir, z + File.separator + x).mkdirs();
+					for(int y = WebTileRenderer.row(z, maxLat); y <= WebTileRenderer.row(z, minLat); y++) {
+						final int row = y;
+						futures.add(pool.submit(new Callable<Void>() {
+							public Void call() throws IOException {
+								BufferedImage image = renderer.render(zoom, column, row);
+								File file = new File(dir, zoom + File.separator + column + File.separator + row + ".png");
+								if(!ImageIO.write(image, "png", file)) {throw new IOException("No PNG writer for " + file);}
+								long n = done.incrementAndGet(), now = System.nanoTime(), report = nextReport.get();
+								if(now >= report && nextReport.compareAndSet(report, now + REPORT_INTERVAL)) {
+									System.out.printf("  %d of %d tiles, %.1f tiles/s%n", n, all, n / ((now - start) / 1e9));
+								}
+								return null;
+							}
+						}));
+					}
+				}
+				for(Future<Void> f : futures) {
+					try {
+						f.get();
+					} catch (ExecutionException e) {
+						if(e.getCause() instanceof IOException) {throw (IOException) e.getCause();}
+						throw new RuntimeException("Failed to draw tile", e.getCause());
+					}
+				}
+				t = System.nanoTime() - t;
+				System.out.printf("Zoom %2d: %6d tiles in %6.1f s, %7.1f tiles/s%n", z, done.get() - before, t / 1e9, (done.get() - before) / (t / 1e9));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Wrote %d tiles in %.1f s, %.1f tiles/s%n", done.get(), seconds, done.get() / seconds);
+		return done.get();
+	}
+}
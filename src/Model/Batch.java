@@ -0,0 +1,88 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shapes of one layer merged into a single path, so they are drawn with one fill or draw call instead of one per shape.
+ * Shapes are batched by size, and a batch reports the size of its largest shape,
+ * so batches sort and cull like the shapes they hold.
+ */
+public class Batch extends MultiPolygonApprox {
+	private static final long serialVersionUID = 16052016L;
+	private static final float SIZE_STEP = 16; // The smallest shape in a batch is at least 1/16 the size of the largest (1/4 the diagonal).
+	private final float largest;
+	private final int shapes;
+
+	private Batch(float[] coords, byte[] pointtypes, float largest, int shapes) {
+		super(coords, pointtypes);
+		this.largest = largest;
+		this.shapes = shapes;
+	}
+
+	/**
+	 * Returns the size of the largest shape in the batch.
+	 * @return
+	 */
+	public float getSize() {return largest;}
+
+	/**
+	 * Keeps the size and the number of shapes when simplified.
+	 */
+	protected MultiPolygonApprox copy(float[] coords, byte[] pointtypes) {
+		return new Batch(coords, pointtypes, largest, shapes);
+	}
+
+	/**
+	 * Returns the number of shapes merged into the batch.
+	 * @return
+	 */
+	public int shapes() {return shapes;}
+
+	/**
+	 * Merges the given shapes into batches, largest first. A shape alone in its size class is kept as it is.
+	 * @param list The shapes to merge, left untouched.
+	 * @return
+	 */
+	public static PolygonApprox[] of(PolygonApprox[] list) {
+		PolygonApprox[] sorted = Arrays.copyOf(list, list.length);
+		Arrays.sort(sorted, PolygonApprox.LARGEST_FIRST);
+		List<PolygonApprox> batches = new ArrayList<>();
+		for(int start = 0, end; start < sorted.length; start = end) {
+			float limit = sorted[start].getSize() / SIZE_STEP;
+			end = start + 1;
+			while(end < sorted.length && sorted[end].getSize() >= limit) {end++;}
+			batches.add(end - start == 1 ? sorted[start] : merge(sorted, start, end));
+		}
+		return batches.toArray(new PolygonApprox[batches.size()]);
+	}
+
+	/**
+	 * Counts the shapes in the result of of().
+	 * @param batches Batches and shapes kept as they are.
+	 * @return
+	 */
+	public static int shapes(PolygonApprox[] batches) {
+		int n = 0;
+		for(PolygonApprox pa : batches) {n += pa instanceof Batch ? ((Batch) pa).shapes : 1;}
+		return n;
+	}
+
+	/**
+	 * Merges a run of shapes, each shape starts a new ring.
+	 */
+	private static Batch merge(PolygonApprox[] list, int start, int end) {
+		int points = 0;
+		for(int i = start; i < end; i++) {points += list[i].coords.length >> 1;}
+		float[] coords = new float[points << 1];
+		byte[] types = new byte[points];
+		int p = 0;
+		for(int i = start; i < end; i++) {
+			PolygonApprox pa = list[i];
+			System.arraycopy(pa.coords, 0, coords, p << 1, pa.coords.length);
+			for(int j = 0; j < pa.coords.length; j += 2) {types[p++] = (byte) pa.segment(j);}
+		}
+		return new Batch(coords, types, list[start].getSize(), end - start);
+	}
+}
@@ -23,6 +23,7 @@ public class Config implements Serializable {
 	walkway, cycle, building, forest, plain, grass, industrial, parking;
 	Color waterColor, backgroundColor, farmColor, motorwayColor, bigroadColor, smallroadColor, residentialColor, airwayColor, railwayColor, sandColor,
 	walkwayColor, cycleColor, buildingColor, forestColor, plainColor, grassColor, industrialColor, parkingColor, routeColor;
+	transient int revision;
 
 	/**
 	 * Creates a config with standard values.
@@ -105,6 +106,7 @@ public class Config implements Serializable {
 	 * @param i
 	 */
 	public void setDefault(int i) {
+		revision++;
 		showAll();
 		switch(i) {
 			case 1:
@@ -321,6 +323,7 @@ public class Config implements Serializable {
 	 * @param c The desired color.
      */
 	public void color(ConfigType ct, Color c){
+		revision++;
 		switch(ct){
 			case AIRWAY:
 				airwayColor = c;
@@ -435,6 +438,7 @@ public class Config implements Serializable {
 	 * @param ct The desired ConfigType toggle visibility on.
      */
 	public void changeState(ConfigType ct){
+		revision++;
 		switch(ct){
 			case AIRWAY:
 				airway = !airway;
@@ -492,6 +496,12 @@ public class Config implements Serializable {
 		}
 	}
 
+	/**
+	 * Returns a number that changes every time a color or visibility is changed.
+	 * @return
+	 */
+	public int revision() {return revision;}
+
 	/**
 	 * Returns whether or not the Config object is a standard file and therefore unchangeable.
 	 * @return True if the Config is in the standard package.
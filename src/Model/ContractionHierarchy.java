@@ -0,0 +1,465 @@
+package Model;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import enums.RouteProfile;
+
+/**
+ * A contraction hierarchy of the navigation graph for one RouteProfile. Built once by contracting the vertices one at a time,
+ * least important first, adding a shortcut wherever the only shortest route between two neighbours ran through the contracted vertex.
+ * A route is then found by two small searches, one from each end, that only ever go up the hierarchy and meet at the top of the route.
+ * Shortcuts remember the two edges they stand for, so a route is unpacked into the same roads A* would return.
+ * Stored with the model, the search state lives in a per-thread object.
+ */
+public class ContractionHierarchy implements Serializable {
+	private static final long serialVersionUID = 16052016L;
+	private static final int WITNESS_SETTLED = 500; // Vertices settled looking for a witness, before adding the shortcut anyway.
+	private static final int PRIORITY_SETTLED = 50; // The same when only counting shortcuts for a priority, a guess is good enough.
+	private final RouteProfile profile;
+	private final int[] upFirst, upTo, upEdge; // Edges to higher vertices, searched from the start.
+	private final float[] upWeight;
+	private final int[] downFirst, downTo, downEdge; // Edges from higher vertices, searched backwards from the end.
+	private final float[] downWeight;
+	private final Road[] edgeRoad; // The road of an edge, null for shortcuts.
+	private final int[] edgeFirst, edgeSecond; // The two edges a shortcut stands for, in driving order.
+	private final int shortcuts;
+	private transient ThreadLocal<Query> queries;
+
+	/**
+	 * Contracts the navigation graph of a PathFinder. Takes a while, meant to be done once before the model is saved.
+	 * @param pf The PathFinder holding the vertices.
+	 * @param profile The kind of route to find.
+	 */
+	public ContractionHierarchy(PathFinder pf, RouteProfile profile) {
+		this.profile = profile;
+		Contraction c = new Contraction(pf, profile);
+		c.contract();
+		int n = c.n, m = c.edges;
+		shortcuts = c.shortcuts;
+		edgeRoad = Arrays.copyOf(c.road, m);
+		edgeFirst = Arrays.copyOf(c.first, m);
+		edgeSecond = Arrays.copyOf(c.second, m);
+
+		// Adjacency arrays, two passes: count the edges of each vertex, then fill them in.
+		upFirst = new int[n + 1];
+		downFirst = new int[n + 1];
+		for(int e = 0; e < m; e++) {
+			if(c.rank[c.from[e]] < c.rank[c.to[e]]) {upFirst[c.from[e] + 1]++;} else {downFirst[c.to[e] + 1]++;}
+		}
+		for(int i = 1; i <= n; i++) {
+			upFirst[i] += upFirst[i-1];
+			downFirst[i] += downFirst[i-1];
+		}
+		upTo = new int[upFirst[n]];
+		upEdge = new int[upTo.length];
+		upWeight = new float[upTo.length];
+		downTo = new int[downFirst[n]];
+		downEdge = new int[downTo.length];
+		downWeight = new float[downTo.length];
+		int[] upFill = new int[n], downFill = new int[n];
+		for(int e = 0; e < m; e++) {
+			int from = c.from[e], to = c.to[e];
+			if(c.rank[from] < c.rank[to]) {
+				int i = upFirst[from] + upFill[from]++;
+				upTo[i] = to;
+				upEdge[i] = e;
+				upWeight[i] = c.weight[e];
+			} else {
+				int i = downFirst[to] + downFill[to]++;
+				downTo[i] = from;
+				downEdge[i] = e;
+				downWeight[i] = c.weight[e];
+			}
+		}
+		queries = queries();
+	}
+
+	/**
+	 * Finds the best route between two vertices. May be called from several threads at once.
+	 * @param from The index of the start vertex.
+	 * @param to The index of the end vertex.
+	 * @return The roads of the route in driving order, empty if from is to, or null if there is no route.
+	 */
+	public List<Road> route(int from, int to) {return queries.get().route(from, to);}
+
+	/**
+	 * Returns the number of vertices settled by the last route found on this thread.
+	 * @return
+	 */
+	public int settled() {return queries.get().settled;}
+
+	/**
+	 * Returns the number of heap operations of the last route found on this thread.
+	 * @return
+	 */
+	public int heapOperations() {return queries.get().heapOperations;}
+
+	/**
+	 * Returns the kind of route found.
+	 * @return
+	 */
+	public RouteProfile profile() {return profile;}
+
+	/**
+	 * Returns the number of shortcuts added by the contraction.
+	 * @return
+	 */
+	public int shortcuts() {return shortcuts;}
+
+	/**
+	 * Returns the number of edges searched, shortcuts included.
+	 * @return
+	 */
+	public int edges() {return upTo.length + downTo.length;}
+
+	/**
+	 * Returns the weight of a road in this profile, minutes for the fastest route and meters for the shortest.
+	 * @param road The road.
+	 * @param profile The kind of route.
+	 * @return
+	 */
+	public static float weight(Road road, RouteProfile profile) {return profile.fastest() ? road.travelTime() : road.length();}
+
+	private ThreadLocal<Query> queries() {
+		return new ThreadLocal<Query>() {
+			protected Query initialValue() {return new Query(upFirst.length - 1);}
+		};
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		queries = queries();
+	}
+
+	/**
+	 * Search state of a single thread. Arrays are stamped with an epoch, so nothing has to be cleared between searches.
+	 */
+	private class Query {
+		final float[] forward, backward;
+		final int[] forwardStamp, backwardStamp, forwardEdge, backwardEdge, forwardPrevious, backwardNext;
+		final VertexHeap forwardHeap, backwardHeap;
+		int epoch, settled, heapOperations;
+		int[] stack = new int[64];
+
+		Query(int vertices) {
+			forward = new float[vertices];
+			backward = new float[vertices];
+			forwardStamp = new int[vertices];
+			backwardStamp = new int[vertices];
+			forwardEdge = new int[vertices];
+			backwardEdge = new int[vertices];
+			forwardPrevious = new int[vertices];
+			backwardNext = new int[vertices];
+			forwardHeap = new VertexHeap(vertices);
+			backwardHeap = new VertexHeap(vertices);
+		}
+
+		/**
+		 * Searches up the hierarchy from both ends, always continuing the search with the smaller key,
+		 * until neither search can find a shorter route than the best one met so far.
+		 */
+		List<Road> route(int from, int to) {
+			epoch++;
+			settled = 0;
+			forwardHeap.clear();
+			backwardHeap.clear();
+			reachForward(from, 0, -1, -1);
+			reachBackward(to, 0, -1, -1);
+			float best = Float.POSITIVE_INFINITY;
+			int meet = -1;
+			while(true) {
+				boolean f = forwardHeap.size() > 0 && forwardHeap.peek() < best;
+				boolean b = backwardHeap.size() > 0 && backwardHeap.peek() < best;
+				if(!f && !b) {break;}
+				if(f && (!b || forwardHeap.peek() <= backwardHeap.peek())) {
+					int v = forwardHeap.poll();
+					float key = forward[v];
+					settled++;
+					if(backwardStamp[v] == epoch && key + backward[v] < best) {best = key + backward[v]; meet = v;}
+					if(stalled(v, key, downFirst, downTo, downWeight, forward, forwardStamp)) {continue;}
+					for(int i = upFirst[v]; i < upFirst[v + 1]; i++) {reachForward(upTo[i], key + upWeight[i], upEdge[i], v);}
+				} else {
+					int v = backwardHeap.poll();
+					float key = backward[v];
+					settled++;
+					if(forwardStamp[v] == epoch && key + forward[v] < best) {best = key + forward[v]; meet = v;}
+					if(stalled(v, key, upFirst, upTo, upWeight, backward, backwardStamp)) {continue;}
+					for(int i = downFirst[v]; i < downFirst[v + 1]; i++) {reachBackward(downTo[i], key + downWeight[i], downEdge[i], v);}
+				}
+			}
+			heapOperations = forwardHeap.operations() + backwardHeap.operations();
+			if(meet < 0) {return null;}
+
+			List<Road> roads = new ArrayList<>();
+			int n = 0;
+			for(int v = meet; forwardEdge[v] >= 0; v = forwardPrevious[v]) {n = push(n, forwardEdge[v]);}
+			int[] edges = Arrays.copyOf(stack, n); // The edges from the start to the top, backwards.
+			for(int i = n - 1; i >= 0; i--) {unpack(edges[i], roads);}
+			for(int v = meet; backwardEdge[v] >= 0; v = backwardNext[v]) {unpack(backwardEdge[v], roads);}
+			return roads;
+		}
+
+		/**
+		 * Checks whether v is reached faster coming down from a higher vertex the search has already reached.
+		 * Then v is not on a shortest route up the hierarchy, and its edges need not be searched.
+		 */
+		private boolean stalled(int v, float key, int[] first, int[] other, float[] weight, float[] dist, int[] stamp) {
+			for(int i = first[v]; i < first[v + 1]; i++) {
+				int u = other[i];
+				if(stamp[u] == epoch && dist[u] + weight[i] < key) {return true;}
+			}
+			return false;
+		}
+
+		/**
+		 * Adds the roads a shortcut stands for, in driving order.
+		 */
+		private void unpack(int edge, List<Road> roads) {
+			int n = push(0, edge);
+			while(n > 0) {
+				int e = stack[--n];
+				if(edgeRoad[e] != null) {
+					roads.add(edgeRoad[e]);
+				} else {
+					n = push(n, edgeSecond[e]);
+					n = push(n, edgeFirst[e]);
+				}
+			}
+		}
+
+		private int push(int n, int edge) {
+			if(n == stack.length) {stack = Arrays.copyOf(stack, n << 1);}
+			stack[n] = edge;
+			return n + 1;
+		}
+
+		private void reachForward(int v, float d, int edge, int previous) {
+			if(forwardStamp[v] == epoch && forward[v] <= d) {return;}
+			forwardStamp[v] = epoch;
+			forward[v] = d;
+			forwardEdge[v] = edge;
+			forwardPrevious[v] = previous;
+			forwardHeap.offer(v, d);
+		}
+
+		private void reachBackward(int v, float d, int edge, int next) {
+			if(backwardStamp[v] == epoch && backward[v] <= d) {return;}
+			backwardStamp[v] = epoch;
+			backward[v] = d;
+			backwardEdge[v] = edge;
+			backwardNext[v] = next;
+			backwardHeap.offer(v, d);
+		}
+	}
+
+	/**
+	 * The graph while it is being contracted. Edges are only ever added or made shorter, never removed,
+	 * but the lists of a vertex only hold the edges to vertices not contracted yet.
+	 */
+	private static class Contraction {
+		final int n;
+		int edges, shortcuts;
+		int[] from = new int[1024], to = new int[1024], first = new int[1024], second = new int[1024];
+		float[] weight = new float[1024];
+		Road[] road = new Road[1024];
+		final int[][] out, in;
+		final int[] outSize, inSize, rank, deleted;
+		final boolean[] contracted;
+		final float[] dist;
+		final int[] stamp, target;
+		final VertexHeap heap;
+		int epoch;
+
+		Contraction(PathFinder pf, RouteProfile profile) {
+			n = pf.vertices();
+			out = new int[n][];
+			in = new int[n][];
+			outSize = new int[n];
+			inSize = new int[n];
+			rank = new int[n];
+			deleted = new int[n];
+			contracted = new boolean[n];
+			dist = new float[n];
+			stamp = new int[n];
+			target = new int[n];
+			heap = new VertexHeap(n);
+			for(int v = 0; v < n; v++) {
+				out[v] = new int[4];
+				in[v] = new int[4];
+			}
+			for(int v = 0; v < n; v++) {
+				Vertex vertex = pf.getVertex(v);
+				if(vertex == null) {continue;}
+				for(Road r : vertex.edges(profile.car())) {
+					int w = r.startIndex() == v ? r.endIndex() : r.startIndex();
+					float d = weight(r, profile);
+					if(w == v || w < 0 || w >= n || Float.isInfinite(d) || Float.isNaN(d)) {continue;}
+					addEdge(v, w, d, r, -1, -1);
+				}
+			}
+		}
+
+		/**
+		 * Contracts every vertex, the one with the smallest priority first. Priorities are updated lazily:
+		 * a vertex is only contracted if its priority, calculated again, is still no larger than the next one in line.
+		 */
+		void contract() {
+			VertexHeap order = new VertexHeap(n);
+			float[] priority = new float[n];
+			for(int v = 0; v < n; v++) {
+				priority[v] = priority(v);
+				order.offer(v, priority[v]);
+			}
+			int next = 0;
+			int[] neighbours = new int[16];
+			while(order.size() > 0) {
+				int v = order.poll();
+				if(contracted[v]) {continue;}
+				float p = priority(v);
+				if(order.size() > 0 && p > order.peek()) {
+					priority[v] = p;
+					order.offer(v, p);
+					continue;
+				}
+				shortcuts += shortcuts(v, true);
+				contracted[v] = true;
+				rank[v] = next++;
+
+				// Drop the edges to v from the lists of its neighbours, and update their priorities.
+				int count = 0;
+				if(neighbours.length < outSize[v] + inSize[v]) {neighbours = new int[outSize[v] + inSize[v]];}
+				for(int i = 0; i < outSize[v]; i++) {
+					int e = out[v][i];
+					remove(in, inSize, to[e], e);
+					neighbours[count++] = to[e];
+				}
+				for(int i = 0; i < inSize[v]; i++) {
+					int e = in[v][i];
+					remove(out, outSize, from[e], e);
+					neighbours[count++] = from[e];
+				}
+				for(int i = 0; i < count; i++) {
+					int w = neighbours[i];
+					deleted[w]++;
+					priority[w] = priority(w);
+					order.offer(w, priority[w]);
+				}
+			}
+		}
+
+		/**
+		 * Returns twice how much contracting v grows the graph, plus the neighbours already contracted, which spreads the contraction evenly.
+		 */
+		private float priority(int v) {return 2 * (shortcuts(v, false) - outSize[v] - inSize[v]) + deleted[v];}
+
+		/**
+		 * Counts, and adds if asked to, the shortcuts needed to contract v: one for every pair of neighbours u and w
+		 * where going through v is shorter than any witness route found from u to w around v.
+		 */
+		private int shortcuts(int v, boolean add) {
+			int count = 0;
+			for(int i = 0; i < inSize[v]; i++) {
+				int e1 = in[v][i], u = from[e1];
+				float max = -1;
+				int targets = 0;
+				epoch++;
+				for(int j = 0; j < outSize[v]; j++) {
+					int e2 = out[v][j];
+					if(to[e2] == u || target[to[e2]] == epoch) {continue;}
+					max = Math.max(max, weight[e2]);
+					target[to[e2]] = epoch;
+					targets++;
+				}
+				if(max < 0) {continue;}
+				witness(u, v, weight[e1] + max, targets, add ? WITNESS_SETTLED : PRIORITY_SETTLED);
+				for(int j = 0; j < outSize[v]; j++) {
+					int e2 = out[v][j], w = to[e2];
+					if(w == u) {continue;}
+					float d = weight[e1] + weight[e2];
+					if(stamp[w] == epoch && dist[w] <= d) {continue;}
+					count++;
+					if(add) {addEdge(u, w, d, null, e1, e2);}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Dijkstra from source around skip, until every target is settled, the limit is passed or enough vertices are settled.
+		 */
+		private void witness(int source, int skip, float limit, int targets, int maxSettled) {
+			heap.clear();
+			reach(source, 0);
+			int settled = 0;
+			while(heap.size() > 0) {
+				int v = heap.poll();
+				float key = dist[v];
+				if(key > limit || ++settled > maxSettled) {break;}
+				if(target[v] == epoch && --targets == 0) {break;}
+				for(int i = 0; i < outSize[v]; i++) {
+					int e = out[v][i];
+					if(to[e] != skip) {reach(to[e], key + weight[e]);}
+				}
+			}
+		}
+
+		private void reach(int v, float d) {
+			if(stamp[v] == epoch && dist[v] <= d) {return;}
+			stamp[v] = epoch;
+			dist[v] = d;
+			heap.offer(v, d);
+		}
+
+		/**
+		 * Adds an edge, or makes the existing edge between the same vertices shorter.
+		 */
+		private void addEdge(int u, int w, float d, Road r, int e1, int e2) {
+			for(int i = 0; i < outSize[u]; i++) {
+				int e = out[u][i];
+				if(to[e] != w) {continue;}
+				if(d < weight[e]) {
+					weight[e] = d;
+					road[e] = r;
+					first[e] = e1;
+					second[e] = e2;
+				}
+				return;
+			}
+			if(edges == from.length) {
+				int size = edges << 1;
+				from = Arrays.copyOf(from, size);
+				to = Arrays.copyOf(to, size);
+				first = Arrays.copyOf(first, size);
+				second = Arrays.copyOf(second, size);
+				weight = Arrays.copyOf(weight, size);
+				road = Arrays.copyOf(road, size);
+			}
+			int e = edges++;
+			from[e] = u;
+			to[e] = w;
+			weight[e] = d;
+			road[e] = r;
+			first[e] = e1;
+			second[e] = e2;
+			add(out, outSize, u, e);
+			add(in, inSize, w, e);
+		}
+
+		private static void add(int[][] lists, int[] sizes, int v, int e) {
+			if(sizes[v] == lists[v].length) {lists[v] = Arrays.copyOf(lists[v], sizes[v] << 1);}
+			lists[v][sizes[v]++] = e;
+		}
+
+		private static void remove(int[][] lists, int[] sizes, int v, int e) {
+			for(int i = 0; i < sizes[v]; i++) {
+				if(lists[v][i] == e) {
+					lists[v][i] = lists[v][--sizes[v]];
+					return;
+				}
+			}
+		}
+	}
+}
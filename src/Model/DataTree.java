@@ -3,12 +3,17 @@ import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The DataTree makes it easier to navigate through large quantities of data distributed across a 2D plane.
@@ -16,10 +21,12 @@ import java.util.List;
  */
 public class DataTree implements Serializable {
 	private static final long serialVersionUID = 16052016L;
-	private static final float TOLERANCE = 0.00225f; // Tolerance factor for closestToPoint (225/111323) Tolerance ~225m
+	static final float TOLERANCE = 0.00225f; // Tolerance factor for closestToPoint (225/111323) Tolerance ~225m
 	private static final int STANDARD_LEAF_SIZE = 64;
+	private static final float[] ZOOM_BANDS = {0.0001f, 0.0005f, 0.0025f}; // Simplification tolerances ~11m, ~55m and ~280m
 	private Node root;
-	private int leafSz;
+	private int leafSz, revision, modifications;
+	private boolean compress, pyramid;
 	private List<LeafNode> allLeafs;
 	
 	/**
@@ -33,6 +40,7 @@ public class DataTree implements Serializable {
 		private double value;
 		public Node(PolygonApprox mp, boolean b) {value = mp.coord(b);}
 		public double value() {return value;}
+		public void value(double v) {value = v;}
 		public void right(Node r) {right = r;}
 		public Node right() {return right;}
 		public void left(Node l) {left = l;}
@@ -51,43 +59,220 @@ public class DataTree implements Serializable {
 				return Float.compare(a.getSize(), b.getSize());
 			}
 		}
-		public LeafNode(PolygonApprox[] o, int min, int max, boolean compress) {
+		public LeafNode(PolygonApprox[] o, int min, int max, boolean pyramid, Map<PolygonApprox, PolygonApprox[]> copies) {
 			list = Arrays.copyOfRange(o, min, max+1);
-			if(compress) {compress();} else {Arrays.sort(list, new sizeOrder().reversed());}
+			Arrays.sort(list, new sizeOrder().reversed());
+			if(pyramid) {pyramid(copies);}
+			bounds();
 			required = new HashSet<Integer>();
 			index = allLeafs.size();
 			allLeafs.add(this);
 		}
 
+		/**
+		 * Returns the original objects of the leaf, largest first.
+		 * @return
+		 */
 		public PolygonApprox[] list() {return list;}
+		/**
+		 * Returns the objects to draw from the given zoom band, merged if the tree is compressed.
+		 * @param band The zoom band, -1 for full geometry.
+		 * @return
+		 */
+		public PolygonApprox[] list(int band) {return compress ? merged(band) : shapes(band);}
+		private PolygonApprox[] shapes(int band) {if(band < 0 || bands == null) {return list;} return bands[band];}
+		public synchronized PolygonApprox[] batches(int band) {
+			if(batches == null) {batches = new PolygonApprox[ZOOM_BANDS.length + 1][];}
+			return derived(batches, band, false);
+		}
+		private synchronized PolygonApprox[] merged(int band) {
+			if(merged == null) {merged = new PolygonApprox[ZOOM_BANDS.length + 1][];}
+			return derived(merged, band, true);
+		}
+		/**
+		 * Returns the objects of a zoom band merged into batches, built the first time they are asked for.
+		 * @param cache One array per zoom band, the full geometry first.
+		 * @param compress True to keep multipolygons out of the batches, the way a compressed tree draws them.
+		 */
+		private PolygonApprox[] derived(PolygonApprox[][] cache, int band, boolean compress) {
+			int b = band < 0 || bands == null ? 0 : band + 1;
+			if(cache[b] == null) {
+				PolygonApprox[] source = shapes(band);
+				for(int i = 0; i < cache.length; i++) {
+					if(cache[i] != null && shapes(i - 1) == source) {cache[b] = cache[i];} // Bands may share their array.
+				}
+				if(cache[b] == null) {cache[b] = compress ? compress(source) : Batch.of(source);}
+			}
+			return cache[b];
+		}
+		/**
+		 * Replaces the content of the leaf, sorting it and simplifying the objects without a simplified copy.
+		 * @param copies The simplified copies to reuse, by original object. May be null.
+		 */
+		public synchronized void list(PolygonApprox[] o, boolean pyramid, Map<PolygonApprox, PolygonApprox[]> copies) {
+			list = o;
+			Arrays.sort(list, new sizeOrder().reversed());
+			if(pyramid) {pyramid(copies);} else {bands = null;}
+			changed();
+		}
+		/**
+		 * Adds the simplified copies of every object in the leaf to the given map, by original object.
+		 */
+		public void copies(Map<PolygonApprox, PolygonApprox[]> copies) {
+			if(bands == null) {return;}
+			for(int j = 0; j < list.length; j++) {
+				PolygonApprox[] simplified = new PolygonApprox[bands.length];
+				for(int i = 0; i < bands.length; i++) {simplified[i] = bands[i][j];}
+				copies.put(list[j], simplified);
+			}
+		}
+		/**
+		 * Adds a single object at its place by size, only simplifying the new object for each zoom band.
+		 */
+		public synchronized void add(PolygonApprox pa) {
+			int i = Arrays.binarySearch(list, pa, PolygonApprox.LARGEST_FIRST);
+			if(i < 0) {i = -i - 1;}
+			PolygonApprox[] before = list;
+			list = insert(list, i, pa);
+			PolygonApprox[] after = list;
+			for(int b = 0; bands != null && b < bands.length; b++) {
+				PolygonApprox[] band = bands[b];
+				bands[b] = band == before ? after : insert(band, i, pa.simplify(ZOOM_BANDS[b]));
+				before = band;
+				after = bands[b];
+			}
+			changed();
+		}
+		/**
+		 * Removes a single object and its simplified copies.
+		 * @return False if the object is not in the leaf.
+		 */
+		public synchronized boolean remove(PolygonApprox pa) {
+			int i = indexOf(list, pa);
+			if(i < 0) {return false;}
+			PolygonApprox[] before = list;
+			list = delete(list, i);
+			PolygonApprox[] after = list;
+			for(int b = 0; bands != null && b < bands.length; b++) {
+				PolygonApprox[] band = bands[b];
+				bands[b] = band == before ? after : delete(band, i);
+				before = band;
+				after = bands[b];
+			}
+			changed();
+			return true;
+		}
+		/**
+		 * Drops the merged views and recalculates the bounding box after the content changed.
+		 */
+		private void changed() {
+			batches = null;
+			merged = null;
+			bounds();
+		}
+		public boolean intersects(Rectangle2D box) {return Viewport.overlaps(box, minX, minY, maxX, maxY);}
+		public void required(BitSet bs) {for(Integer i : required) {bs.set(i);} bs.set(index);}
 		public int index() {return index;}
 		public void required(HashSet<Integer> hm) {hm.addAll(required); hm.add(index);}
+		/**
+		 * Adds this and the required leaf nodes, for a rotated Viewport only those reaching into the rectangle shown.
+		 */
+		public void required(BitSet bs, Rectangle2D box) {
+			if(!Viewport.rotated(box)) {required(bs); return;}
+			for(Integer i : required) {if(allLeafs.get(i).intersects(box)) {bs.set(i);}}
+			if(intersects(box)) {bs.set(index);}
+		}
+		public void required(HashSet<Integer> hm, Rectangle2D box) {
+			if(!Viewport.rotated(box)) {required(hm); return;}
+			for(Integer i : required) {if(allLeafs.get(i).intersects(box)) {hm.add(i);}}
+			if(intersects(box)) {hm.add(index);}
+		}
 		public void required(LeafNode lf) {if(lf==this) {return;} required.add(lf.index());}
 		private PolygonApprox[] list;
+		private PolygonApprox[][] bands;
 		private HashSet<Integer> required;
+		private transient PolygonApprox[][] batches, merged; // Built on first use, for the full geometry and each zoom band.
 		private int index;
-		private void compress() {
+		private transient float minX, minY, maxX, maxY;
+
+		/**
+		 * Calculates the bounding box of everything in the leaf. Not serialized, recalculated on load.
+		 */
+		private void bounds() {
+			minX = Float.POSITIVE_INFINITY; minY = Float.POSITIVE_INFINITY;
+			maxX = Float.NEGATIVE_INFINITY; maxY = Float.NEGATIVE_INFINITY;
+			for(PolygonApprox pa : list) {
+				minX = Math.min(minX, pa.getMinX()); maxX = Math.max(maxX, pa.getMaxX());
+				minY = Math.min(minY, pa.getMinY()); maxY = Math.max(maxY, pa.getMaxY());
+			}
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			// Compressed leafs saved by older versions are not sorted, drawing relies on the largest shapes coming first.
+			// The bands follow the order of the list, so add and remove find the simplified copies by index.
+			for(int i = 1; i < list.length; i++) {
+				if(list[i - 1].getSize() < list[i].getSize()) {
+					Arrays.sort(list, new sizeOrder().reversed());
+					if(bands != null) {pyramid(null);}
+					break;
+				}
+			}
+			bounds();
+		}
+
+		/**
+		 * Stores a simplified copy of the list for each zoom band. A band only gets its own array
+		 * if it removes at least a quarter of the points, otherwise the finer band is reused.
+		 * @param copies The simplified copies to reuse, by original object. May be null.
+		 */
+		private void pyramid(Map<PolygonApprox, PolygonApprox[]> copies) {
+			bands = new PolygonApprox[ZOOM_BANDS.length][];
+			PolygonApprox[] previous = list;
+			int previousPoints = points(list);
+			for(int i = 0; i < ZOOM_BANDS.length; i++) {
+				PolygonApprox[] band = new PolygonApprox[list.length];
+				for(int j = 0; j < list.length; j++) {
+					PolygonApprox[] simplified = copies == null ? null : copies.get(list[j]);
+					band[j] = simplified == null ? list[j].simplify(ZOOM_BANDS[i]) : simplified[i];
+				}
+				int points = points(band);
+				if(points * 4 > previousPoints * 3) {
+					band = previous;
+				} else {
+					previous = band;
+					previousPoints = points;
+				}
+				bands[i] = band;
+			}
+		}
+
+		private int points(PolygonApprox[] pa) {
+			int sum = 0;
+			for(PolygonApprox p : pa) {sum += p.points();}
+			return sum;
+		}
+		/**
+		 * Merges the shapes into batches of similar size, so a leaf costs a few draw calls and small shapes can still be culled.
+		 * Multipolygons are kept as they are.
+		 * @param shapes The original objects or their simplified copies, left untouched.
+		 * @return The batches and multipolygons, largest first.
+		 */
+		private PolygonApprox[] compress(PolygonApprox[] shapes) {
 			List<PolygonApprox> comp = new ArrayList<>();
 			List<PolygonApprox> leave = new ArrayList<>();
-			for(PolygonApprox pa: list){
+			for(PolygonApprox pa: shapes){
 				if(pa.isMultiPA()){
 					leave.add(pa);
 				} else {
 					comp.add(pa);
 				}
 			}
-			if(comp.size() > 1) {
-				List<List<Point2D>> compressedList = new ArrayList<>();
-				for (PolygonApprox pa : comp) {
-					compressedList.add(pa.toList());
-				}
-				MultiPolygonApprox compressed = new MultiPolygonApprox(compressedList);
-				list = new PolygonApprox[leave.size() + 1];
-				list[leave.size()] = compressed;
-				for(int i = 0; i<leave.size(); i++){
-					list[i] = leave.get(i);
-				}
-			}
+			if(comp.size() < 2) {return shapes;}
+			leave.addAll(Arrays.asList(Batch.of(comp.toArray(new PolygonApprox[comp.size()]))));
+			PolygonApprox[] result = leave.toArray(new PolygonApprox[leave.size()]);
+			Arrays.sort(result, new sizeOrder().reversed());
+			return result;
 		}
 	}	
 	
@@ -99,33 +284,185 @@ public class DataTree implements Serializable {
 	/**
 	 * Creates a new DataTree from the given list.
 	 * @param list The list of PolygonApprox subclasses to store in the DataTree.
-	 * @param compress If true, the objects will be compressed into MultiPolygonApprox objects. They will be drawn the same, but all additional information will be lost.
+	 * @param compress If true, the objects are drawn merged into batches of similar size. The original objects are kept for look-ups and changes.
 	 */
 	public DataTree(List<? extends PolygonApprox> list, boolean compress) {
-		this(list, STANDARD_LEAF_SIZE, compress);
+		this(list, STANDARD_LEAF_SIZE, compress, false);
 	}
-	
+
+	/**
+	 * Creates a new DataTree from the given list.
+	 * @param list The list of PolygonApprox subclasses to store in the DataTree.
+	 * @param compress If true, the objects are drawn merged into batches of similar size. The original objects are kept for look-ups and changes.
+	 * @param pyramid If true, simplified copies are stored for drawing at low detail levels. See tree(Rectangle2D, double).
+	 */
+	public DataTree(List<? extends PolygonApprox> list, boolean compress, boolean pyramid) {
+		this(list, STANDARD_LEAF_SIZE, compress, pyramid);
+	}
+
 	/**
 	 * Creates a new DataTree from the given list.
 	 * @param list The list of PolygonApprox subclasses to store in the DataTree.
 	 * @param leafSz Specifies the desired size of each leaf node in the tree.
-	 * @param compress If true, the objects will be compressed into MultiPolygonApprox objects. They will be drawn the same, but all additional information will be lost.
+	 * @param compress If true, the objects are drawn merged into batches of similar size. The original objects are kept for look-ups and changes.
 	 */
 	public DataTree(List<? extends PolygonApprox> list, int leafSz, boolean compress) {
-			if(list.size() < 1) {return;}
+		this(list, leafSz, compress, false);
+	}
+	
+	/**
+	 * Creates a new DataTree from the given list.
+	 * @param list The list of PolygonApprox subclasses to store in the DataTree.
+	 * @param leafSz Specifies the desired size of each leaf node in the tree.
+	 * @param compress If true, the objects are drawn merged into batches of similar size. The original objects are kept for look-ups and changes.
+	 * @param pyramid If true, simplified copies are stored for drawing at low detail levels. See tree(Rectangle2D, double).
+	 */
+	public DataTree(List<? extends PolygonApprox> list, int leafSz, boolean compress, boolean pyramid) {
 			if(leafSz<1) {leafSz = STANDARD_LEAF_SIZE;}
+			this.leafSz = leafSz;
+			this.compress = compress;
+			this.pyramid = pyramid;
+			if(list.size() < 1) {return;}
 			
 			allLeafs = new ArrayList<LeafNode>();
-			this.leafSz = leafSz;
 			PolygonApprox[] tmp = new PolygonApprox[list.size()];
 			list.toArray(tmp);
-			root = createNode(tmp, 0, tmp.length-1, true, compress);
+			root = createNode(tmp, 0, tmp.length-1, true, pyramid, null);
 			
 			for(LeafNode nf : allLeafs) {
 				setRequired(nf);
 			}
 	}
 
+	/**
+	 * Adds a single object to the tree. Leaf nodes that grow beyond twice the leaf size are split in two,
+	 * and the whole tree is rebuilt once it becomes too deep or has seen as many changes as it holds objects.
+	 * Only the new object is simplified, the merged view of a compressed leaf is built again when next drawn.
+	 * @param pa The object to add.
+	 */
+	public void insert(PolygonApprox pa) {
+		revision++;
+		if(root == null) {
+			allLeafs = new ArrayList<LeafNode>();
+			root = new Node(pa, true);
+			root.leaf(new LeafNode(new PolygonApprox[] {pa}, 0, 0, pyramid, null));
+			return;
+		}
+
+		Node current = root;
+		boolean b = true;
+		int depth = 0;
+		while(current.leaf() == null) {
+			if((pa.coord(b) <= current.value() && current.left() != null) || current.right() == null) {
+				current = current.left();
+			} else {
+				current = current.right();
+			}
+			b = !b;
+			depth++;
+		}
+
+		LeafNode leaf = current.leaf();
+		leaf.add(pa);
+		require(pa, leaf);
+
+		if(leaf.list().length > 2 * leafSz) {
+			split(current, b);
+			depth++;
+		}
+		if(++modifications > allLeafs.size() * leafSz || depth > maxDepth()) {rebuild();}
+	}
+
+	/**
+	 * Removes a single object from the tree. Empty leaf nodes are kept until the next rebuild.
+	 * @param pa The object to remove.
+	 * @return True if the object was found and removed.
+	 */
+	public boolean remove(PolygonApprox pa) {
+		if(root == null) {return false;}
+		LeafNode leaf = find(root, pa, true);
+		if(leaf == null) {
+			// The object might have changed since it was added, fall back to checking every leaf.
+			for(LeafNode lf : allLeafs) {
+				if(indexOf(lf.list(), pa) >= 0) {leaf = lf; break;}
+			}
+			if(leaf == null) {return false;}
+		}
+
+		leaf.remove(pa);
+		revision++;
+		if(++modifications > allLeafs.size() * leafSz) {rebuild();}
+		return true;
+	}
+
+	/**
+	 * Replaces an object in the tree with an updated version of it.
+	 * @param old The object currently in the tree.
+	 * @param updated The object to store instead.
+	 * @return True if the old object was found. The updated object is added either way.
+	 */
+	public boolean update(PolygonApprox old, PolygonApprox updated) {
+		boolean found = remove(old);
+		insert(updated);
+		return found;
+	}
+
+	/**
+	 * Returns the number of objects stored in the tree.
+	 * @return
+	 */
+	public int size() {
+		if(root == null) {return 0;}
+		int size = 0;
+		for(LeafNode lf : allLeafs) {size += lf.list().length;}
+		return size;
+	}
+
+	/**
+	 * Returns a number that changes every time the content of the tree changes.
+	 * @return
+	 */
+	public int revision() {return revision;}
+
+	/**
+	 * Sets the bit of every leaf node needed to draw the given rectangle. Used by ViewportCache.
+	 * @param box Defining the desired area.
+	 * @param set Receives the indices of the leaf nodes.
+	 */
+	void leafs(Rectangle2D box, BitSet set) {
+		if(root != null) {addLeaf(set, root, box, true);}
+	}
+
+	/**
+	 * Returns the number of leaf nodes in the tree.
+	 * @return
+	 */
+	int leafs() {return root == null ? 0 : allLeafs.size();}
+
+	/**
+	 * Returns the content of a single leaf node.
+	 * @param i The index of the leaf node.
+	 * @param band The zoom band, -1 for full geometry.
+	 * @return
+	 */
+	PolygonApprox[] leaf(int i, int band) {return allLeafs.get(i).list(band);}
+
+	/**
+	 * Returns the content of a leaf node merged into batches, built the first time they are asked for.
+	 * @param i The index of the leaf node.
+	 * @param band The zoom band, -1 for full geometry.
+	 * @return
+	 */
+	PolygonApprox[] batches(int i, int band) {return allLeafs.get(i).batches(band);}
+
+	/**
+	 * Checks whether the content of a leaf node reaches into the given rectangle.
+	 * @param i The index of the leaf node.
+	 * @param box Defining the desired area.
+	 * @return
+	 */
+	boolean intersects(int i, Rectangle2D box) {return allLeafs.get(i).intersects(box);}
+
 	/**
 	 * Returns everything in the tree as a list of arrays of PolygonApprox objects.
 	 * @return Might return an empty list, but never null.
@@ -150,20 +487,68 @@ public class DataTree implements Serializable {
 		addLeaf(set, root, box, true);
 		return convertHashSet(set);
 	}
+
+	/**
+	 * Returns, at least, everything from the data tree within the given rectangle, simplified to match the scale.
+	 * Trees created without a pyramid always return the full geometry.
+	 * @param box The desired map section expressed as a rectangle
+	 * @param pixelSize The width of a single pixel in world space.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox[]> tree(Rectangle2D box, double pixelSize){
+		if(root == null) {return new ArrayList<PolygonApprox[]>();}
+		HashSet<Integer> set = new HashSet<>();
+		addLeaf(set, root, box, true);
+		return convertHashSet(set, band(pixelSize));
+	}
+
+	/**
+	 * Returns, at least, everything from the data tree within the given rectangle, simplified to match the scale
+	 * and merged into batches of shapes that can be drawn with a single call. See Batch.
+	 * @param box The desired map section expressed as a rectangle
+	 * @param pixelSize The width of a single pixel in world space.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox[]> batches(Rectangle2D box, double pixelSize){
+		if(root == null) {return new ArrayList<PolygonApprox[]>();}
+		HashSet<Integer> set = new HashSet<>();
+		addLeaf(set, root, box, true);
+		int band = band(pixelSize);
+		ArrayList<PolygonApprox[]> list = new ArrayList<>();
+		for(Integer i : set) {list.add(batches(i, band));}
+		if(list.size() == 0) {list.add(new PolygonApprox[0]);}
+		return list;
+	}
+
+	/**
+	 * Finds the coarsest zoom band that is still finer than a single pixel.
+	 * @param pixelSize The width of a single pixel in world space.
+	 * @return The index of the band, or -1 for full geometry.
+	 */
+	int band(double pixelSize) {
+		int band = -1;
+		for(int i = 0; i < ZOOM_BANDS.length; i++) {
+			if(ZOOM_BANDS[i] <= pixelSize) {band = i;}
+		}
+		return band;
+	}
 	
 	/**
 	 * Returns the object closest to the given point within 225m (world space).
+	 * Compressed trees return one of the original objects, never a merged batch.
 	 * @param p The point to compare against.
 	 * @return The closest object. Returns null if nothing is found within 225m.
 	 */
 	public PolygonApprox closestToPoint(Point2D p) {
-		ArrayList<PolygonApprox[]> list = (ArrayList<PolygonApprox[]>) tree(new Rectangle2D.Float((float) (p.getX()-(TOLERANCE /2)), (float) (p.getY()-(TOLERANCE /2)), TOLERANCE, TOLERANCE));
+		if(root == null) {return null;}
+		BitSet set = new BitSet();
+		addLeaf(set, root, new Rectangle2D.Float((float) (p.getX()-(TOLERANCE /2)), (float) (p.getY()-(TOLERANCE /2)), TOLERANCE, TOLERANCE), true);
 		
 		double minDist = Double.MAX_VALUE;
 		PolygonApprox closest = null;
 		
-		for(PolygonApprox[] mp : list) {
-			for(PolygonApprox path : mp) {
+		for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1)) {
+			for(PolygonApprox path : allLeafs.get(i).list()) {
 				double tmp = distanceCalc(path, p);
 				if(Double.compare(tmp, minDist) < 0) {
 					minDist = tmp;
@@ -175,6 +560,50 @@ public class DataTree implements Serializable {
 		return closest;
 	}
 	
+	/**
+	 * Returns every object whose area contains the given point, using the even-odd rule on each object by itself.
+	 * Compressed trees test and return the original objects, so overlapping objects are all found.
+	 * @param p The point to test.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox> containing(Point2D p) {
+		List<PolygonApprox> result = new ArrayList<>();
+		if(root == null) {return result;}
+		double x = p.getX(), y = p.getY();
+		Rectangle2D box = new Rectangle2D.Double(x, y, 0, 0);
+		BitSet set = new BitSet();
+		addLeaf(set, root, box, true);
+		for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1)) {
+			LeafNode leaf = allLeafs.get(i);
+			if(!leaf.intersects(box)) {continue;}
+			for(PolygonApprox pa : leaf.list()) {
+				if(pa.contains(x, y)) {result.add(pa);}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns every object whose area overlaps the given rectangle.
+	 * Compressed trees test and return the original objects.
+	 * @param box The desired area.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox> intersecting(Rectangle2D box) {
+		List<PolygonApprox> result = new ArrayList<>();
+		if(root == null) {return result;}
+		BitSet set = new BitSet();
+		addLeaf(set, root, box, true);
+		for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1)) {
+			LeafNode leaf = allLeafs.get(i);
+			if(!leaf.intersects(box)) {continue;}
+			for(PolygonApprox pa : leaf.list()) {
+				if(pa.intersects(box.getX(), box.getY(), box.getWidth(), box.getHeight())) {result.add(pa);}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Calculates the shortest distance between the given PolygonApprox and the given point.
 	 * @param path The path to calculate the distance to.
@@ -197,6 +626,125 @@ public class DataTree implements Serializable {
 		return minDist;
 	}
 	
+	/**
+	 * Finds the leaf node holding the given object by following its coordinates down the tree.
+	 * @param current Used for recursion, start with root.
+	 * @param pa The object to look for.
+	 * @param b Always call this with true, used for recursion.
+	 * @return The leaf node, or null if the object is not where its coordinates say it should be.
+	 */
+	private LeafNode find(Node current, PolygonApprox pa, boolean b) {
+		if(current.leaf() != null) {
+			if(indexOf(current.leaf().list(), pa) >= 0) {return current.leaf();}
+			return null;
+		}
+		LeafNode found = null;
+		if(pa.coord(b) <= current.value() && current.left() != null) {found = find(current.left(), pa, !b);}
+		if(found == null && pa.coord(b) >= current.value() && current.right() != null) {found = find(current.right(), pa, !b);}
+		return found;
+	}
+
+	private int indexOf(PolygonApprox[] list, PolygonApprox pa) {
+		for(int i = 0; i < list.length; i++) {
+			if(list[i] == pa) {return i;}
+		}
+		return -1;
+	}
+
+	private static PolygonApprox[] insert(PolygonApprox[] list, int i, PolygonApprox pa) {
+		PolygonApprox[] result = new PolygonApprox[list.length + 1];
+		System.arraycopy(list, 0, result, 0, i);
+		result[i] = pa;
+		System.arraycopy(list, i, result, i + 1, list.length - i);
+		return result;
+	}
+
+	private static PolygonApprox[] delete(PolygonApprox[] list, int i) {
+		PolygonApprox[] result = new PolygonApprox[list.length - 1];
+		System.arraycopy(list, 0, result, 0, i);
+		System.arraycopy(list, i + 1, result, i, list.length - i - 1);
+		return result;
+	}
+
+	/**
+	 * Splits an overflowing leaf node into two leaf nodes below the given node.
+	 * The old leaf keeps the lower half and its index, the upper half gets a new leaf node. Both keep the simplified copies.
+	 * @param node The node currently holding the leaf.
+	 * @param b The axis to split on, true for x.
+	 */
+	private void split(Node node, boolean b) {
+		LeafNode leaf = node.leaf();
+		Map<PolygonApprox, PolygonApprox[]> copies = new IdentityHashMap<>();
+		leaf.copies(copies);
+		PolygonApprox[] o = leaf.list().clone();
+		int max = o.length - 1;
+		PolygonApprox median = lazySort(o, 0, max, max / 2, b);
+
+		Node left = new Node(median, !b);
+		Node right = new Node(median, !b);
+		LeafNode upper = new LeafNode(o, max / 2 + 1, max, pyramid, copies);
+		leaf.list(Arrays.copyOfRange(o, 0, max / 2 + 1), pyramid, copies);
+		left.leaf(leaf);
+		right.leaf(upper);
+
+		// Everything that needed the old leaf might need either half.
+		for(LeafNode lf : allLeafs) {
+			if(lf.required.contains(leaf.index())) {lf.required(upper);}
+		}
+		upper.required.addAll(leaf.required);
+		node.leaf(null);
+		node.value(median.coord(b));
+		node.left(left);
+		node.right(right);
+		setRequired(leaf);
+		setRequired(upper);
+	}
+
+	/**
+	 * Rebuilds the entire tree from its current content, restoring balance after many changes.
+	 * Nothing is simplified again.
+	 */
+	private void rebuild() {
+		List<PolygonApprox> content = new ArrayList<>();
+		Map<PolygonApprox, PolygonApprox[]> copies = new IdentityHashMap<>();
+		for(LeafNode lf : allLeafs) {
+			content.addAll(Arrays.asList(lf.list()));
+			lf.copies(copies);
+		}
+		modifications = 0;
+		allLeafs = new ArrayList<LeafNode>();
+		if(content.size() < 1) {root = null; return;}
+		PolygonApprox[] tmp = content.toArray(new PolygonApprox[content.size()]);
+		root = createNode(tmp, 0, tmp.length-1, true, pyramid, copies);
+		for(LeafNode nf : allLeafs) {
+			setRequired(nf);
+		}
+	}
+
+	/**
+	 * The deepest a leaf node may be before the tree is rebuilt, twice the depth of a balanced tree.
+	 * @return
+	 */
+	private int maxDepth() {
+		return 2 * (32 - Integer.numberOfLeadingZeros(allLeafs.size())) + 2;
+	}
+
+	/**
+	 * Marks the given object as required by every map section one of its points is in.
+	 * @param pa The object.
+	 * @param leaf The leaf node holding the object.
+	 */
+	private void require(PolygonApprox pa, LeafNode leaf) {
+		PathIterator iterator = pa.getPathIterator(null);
+		float[] coords = new float[2];
+		while(!iterator.isDone()) {
+			iterator.currentSegment(coords);
+			LeafNode nf = singleLeaf(root, coords[0], coords[1], true);
+			if(nf!= null) {nf.required(leaf);}
+			iterator.next();
+		}
+	}
+
 	/**
 	 * Calculates if any objects from the given map section is required in any other map sections,
 	 * and sets them as required.
@@ -205,14 +753,7 @@ public class DataTree implements Serializable {
 	private void setRequired(LeafNode leaf) {
 		PolygonApprox[] map = leaf.list();
 		for(PolygonApprox path : map) {
-			PathIterator iterator = path.getPathIterator(null);
-			float[] coords = new float[2];
-			while(!iterator.isDone()) {
-				iterator.currentSegment(coords);
-				LeafNode nf = singleLeaf(root, coords[0], coords[1], true);
-				if(nf!= null) {nf.required(leaf);}
-				iterator.next();
-			}
+			require(path, leaf);
 		}
 	}
 	
@@ -240,6 +781,16 @@ public class DataTree implements Serializable {
 	 * @return A list of PolygonApprox arrays.
 	 */
 	private ArrayList<PolygonApprox[]> convertHashSet(HashSet<Integer> set){
+		return convertHashSet(set, -1);
+	}
+
+	/**
+	 * Converts leaf-nodes to a list of PolygonApprox arrays from the given zoom band.
+	 * @param set Indices of the desired leaf nodes. (Integers due to serialization).
+	 * @param band The zoom band, -1 for full geometry.
+	 * @return A list of PolygonApprox arrays.
+	 */
+	private ArrayList<PolygonApprox[]> convertHashSet(HashSet<Integer> set, int band){
 		ArrayList<PolygonApprox[]> list = new ArrayList<>();
 		if(set.size() == 0) {
 			list.add(new PolygonApprox[0]);
@@ -247,7 +798,7 @@ public class DataTree implements Serializable {
 		}
 
 		for(Integer i : set) {
-			list.add(allLeafs.get(i).list());
+			list.add(allLeafs.get(i).list(band));
 		}
 		return list;
 	}
@@ -258,20 +809,21 @@ public class DataTree implements Serializable {
 	 * @param min Used for recursion, always call it with 0.
 	 * @param max Used for recursion, always call it with length-1
 	 * @param b Used for recursion, always call it with true.
-	 * @param compress True if the nodes should be compressed once they land in their final node.
+	 * @param pyramid True if the leaf nodes should store simplified copies for each zoom band.
+	 * @param copies The simplified copies to reuse, by original object. May be null.
 	 * @return A node containing all the nodes below it.
 	 */
-	private Node createNode(PolygonApprox[] o, int min, int max, boolean b, boolean compress) {
+	private Node createNode(PolygonApprox[] o, int min, int max, boolean b, boolean pyramid, Map<PolygonApprox, PolygonApprox[]> copies) {
 		int delta = max-min;
 		if(delta<leafSz) {
 			Node r = new Node(o[0], b);
-			r.leaf(new LeafNode(o, min, max, compress));
+			r.leaf(new LeafNode(o, min, max, pyramid, copies));
 			return r;
 		}
 		
 		Node r = new Node(lazySort(o, min, max, min+((max-min)/2),b), b);
-		r.left(createNode(o,min, min+(delta/2), !b, compress));
-		r.right(createNode(o,min+(delta/2)+1, max, !b, compress));
+		r.left(createNode(o,min, min+(delta/2), !b, pyramid, copies));
+		r.right(createNode(o,min+(delta/2)+1, max, !b, pyramid, copies));
 		return r;
 	}
 	
@@ -323,6 +875,22 @@ public class DataTree implements Serializable {
 		o[b] = tmp;
 	}
 	
+	/**
+	 * Adds all needed leaf nodes to draw the given rectangle correct.
+	 * @param set Used to keep track of all leafs.
+	 * @param current Used for recursion, always call with root.
+	 * @param box Defining the desired area.
+	 * @param b Always call with true, used for recursion.
+	 */
+	private void addLeaf(BitSet set, Node current, Rectangle2D box, boolean b) {
+		if(current.leaf() != null) {current.leaf.required(set, box); return;}
+		
+		double min = 0, max = 0;
+		if(b) {min = box.getMinX(); max = box.getMaxX();} else {min = box.getMinY(); max = box.getMaxY();}
+		if(current.value() <= max && current.right() != null) {addLeaf(set, current.right(), box, !b);}
+		if(current.value() >= min && current.left() != null) {addLeaf(set, current.left(), box, !b);}
+	}
+
 	/**
 	 * Adds all needed leaf nodes to draw the given rectangle correct.
 	 * @param set Used to keep track of all leafs.
@@ -331,7 +899,7 @@ public class DataTree implements Serializable {
 	 * @param b Always call with true, used for recursion.
 	 */
 	private void addLeaf(HashSet<Integer> set, Node current, Rectangle2D box, Boolean b) {
-		if(current.leaf() != null) {current.leaf.required(set); return;}
+		if(current.leaf() != null) {current.leaf.required(set, box); return;}
 		
 		double min = 0, max = 0;
 		if(b) {min = box.getMinX(); max = box.getMaxX();} else {min = box.getMinY(); max = box.getMaxY();}
@@ -197,13 +197,13 @@ public class Factory {
      * Converts the roads_lvl1 to a DataTree.
      * @return The DataTree created from the list.
      */
-    public DataTree roads_lvl1() {return new DataTree(roads_lvl1, 16, true);}
+    public DataTree roads_lvl1() {return new DataTree(roads_lvl1, 16, true, true);}
 
     /**
      * Converts the road_lvl2 to a DataTree.
      * @return The DataTree created from the list.
      */
-    public DataTree roads_lvl2() {return new DataTree(roads_lvl2, 16, true);}
+    public DataTree roads_lvl2() {return new DataTree(roads_lvl2, 16, true, true);}
 
     /**
      * Converts the road_lvl3 to a DataTree.
@@ -233,7 +233,7 @@ public class Factory {
      * Converts the forests to a DataTree.
      * @return The DataTree created from the list.
      */
-    public DataTree forest() {return new DataTree(forest, false);}
+    public DataTree forest() {return new DataTree(forest, false, true);}
 
     /**
      * Converts the plains to a DataTree.
@@ -263,7 +263,7 @@ public class Factory {
      * Converts the water areas to a DataTree.
      * @return The DataTree created from the list.
      */
-    public DataTree water() {return new DataTree(water, false);}
+    public DataTree water() {return new DataTree(water, false, true);}
 
     /**
      * Converts the waterways to a DataTree.
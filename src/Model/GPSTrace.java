@@ -0,0 +1,194 @@
+package Model;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A recorded GPS trace, a sequence of latitude, longitude and time.
+ */
+public class GPSTrace {
+	private final String name;
+	private double[] lat, lon;
+	private long[] time;
+	private int size;
+
+	/**
+	 * Creates an empty trace.
+	 * @param name Used to identify the trace in results.
+	 */
+	public GPSTrace(String name) {
+		this.name = name;
+		lat = new double[16];
+		lon = new double[16];
+		time = new long[16];
+	}
+
+	/**
+	 * Adds a point to the end of the trace.
+	 * @param latitude Latitude in degrees.
+	 * @param longitude Longitude in degrees.
+	 * @param millis Time in milliseconds since the epoch, 0 if unknown.
+	 */
+	public void add(double latitude, double longitude, long millis) {
+		if(size == lat.length) {
+			lat = Arrays.copyOf(lat, size << 1);
+			lon = Arrays.copyOf(lon, size << 1);
+			time = Arrays.copyOf(time, size << 1);
+		}
+		lat[size] = latitude;
+		lon[size] = longitude;
+		time[size++] = millis;
+	}
+
+	/**
+	 * Returns the name of the trace.
+	 * @return
+	 */
+	public String name() {return name;}
+
+	/**
+	 * Returns the number of points in the trace.
+	 * @return
+	 */
+	public int size() {return size;}
+
+	/**
+	 * Returns the latitude of point i.
+	 * @return
+	 */
+	public double lat(int i) {return lat[i];}
+
+	/**
+	 * Returns the longitude of point i.
+	 * @return
+	 */
+	public double lon(int i) {return lon[i];}
+
+	/**
+	 * Returns the time of point i in milliseconds since the epoch, 0 if unknown.
+	 * @return
+	 */
+	public long time(int i) {return time[i];}
+
+	@Override
+	public String toString() {return name + " (" + size + " points)";}
+
+	/**
+	 * Reads every trace in a .csv or .gpx file.
+	 * @param file The file to read.
+	 * @return The traces found in the file.
+	 * @throws IOException If the file could not be read or has an unsupported type.
+	 */
+	public static List<GPSTrace> read(File file) throws IOException {
+		String fileName = file.getName().toLowerCase();
+		if(fileName.endsWith(".csv")) {return readCSV(file);}
+		if(fileName.endsWith(".gpx")) {return readGPX(file);}
+		throw new IOException("Unsupported file-type");
+	}
+
+	/**
+	 * Reads a CSV file with the columns lat,lon,time or id,lat,lon,time. Lines that cannot be parsed, like a header, are skipped.
+	 * Time is either seconds since the epoch or ISO-8601. With an id column, every id becomes its own trace.
+	 * @param file The file to read.
+	 * @return The traces found in the file.
+	 * @throws IOException If the file could not be read.
+	 */
+	public static List<GPSTrace> readCSV(File file) throws IOException {
+		Map<String, GPSTrace> traces = new LinkedHashMap<>();
+		try(BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] cols = line.split("[,;]");
+				if(cols.length < 2) {continue;}
+				int first = cols.length >= 4 ? 1 : 0;
+				String id = first == 1 ? file.getName() + "#" + cols[0].trim() : file.getName();
+				try {
+					double latitude = Double.parseDouble(cols[first].trim());
+					double longitude = Double.parseDouble(cols[first + 1].trim());
+					long millis = cols.length > first + 2 ? parseTime(cols[first + 2].trim()) : 0;
+					GPSTrace trace = traces.get(id);
+					if(trace == null) {
+						trace = new GPSTrace(id);
+						traces.put(id, trace);
+					}
+					trace.add(latitude, longitude, millis);
+				} catch (NumberFormatException | DateTimeParseException e) {
+					continue;
+				}
+			}
+		}
+		return new ArrayList<>(traces.values());
+	}
+
+	/**
+	 * Reads every track in a GPX file, each track becomes one trace.
+	 * @param file The file to read.
+	 * @return The traces found in the file.
+	 * @throws IOException If the file could not be read.
+	 */
+	public static List<GPSTrace> readGPX(final File file) throws IOException {
+		final List<GPSTrace> traces = new ArrayList<>();
+		try {
+			XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			reader.setContentHandler(new DefaultHandler() {
+				private GPSTrace trace;
+				private StringBuilder text = new StringBuilder();
+				private double latitude, longitude;
+				private long millis;
+				private boolean inPoint;
+
+				public void startElement(String uri, String localName, String qName, Attributes atts) {
+					text.setLength(0);
+					if(qName.equals("trk")) {
+						trace = new GPSTrace(file.getName() + "#" + (traces.size() + 1));
+						traces.add(trace);
+					} else if(qName.equals("trkpt") && trace != null) {
+						latitude = Double.parseDouble(atts.getValue("lat"));
+						longitude = Double.parseDouble(atts.getValue("lon"));
+						millis = 0;
+						inPoint = true;
+					}
+				}
+
+				public void characters(char[] ch, int start, int length) {text.append(ch, start, length);}
+
+				public void endElement(String uri, String localName, String qName) throws SAXException {
+					if(qName.equals("time") && inPoint) {
+						try {millis = parseTime(text.toString().trim());} catch (DateTimeParseException | NumberFormatException e) {millis = 0;}
+					} else if(qName.equals("trkpt") && inPoint) {
+						trace.add(latitude, longitude, millis);
+						inPoint = false;
+					}
+				}
+			});
+			reader.parse(new InputSource(file.toURI().toString()));
+		} catch (SAXException | ParserConfigurationException | NumberFormatException e) {
+			throw new IOException(e);
+		}
+		return traces;
+	}
+
+	/**
+	 * Parses a time given either as seconds since the epoch or as ISO-8601.
+	 */
+	private static long parseTime(String s) {
+		if(s.isEmpty()) {return 0;}
+		if(Character.isDigit(s.charAt(s.length() - 1)) && s.indexOf('T') < 0) {return (long) (Double.parseDouble(s) * 1000);}
+		return Instant.parse(s).toEpochMilli();
+	}
+}
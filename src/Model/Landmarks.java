@@ -0,0 +1,115 @@
+package Model;
+import java.io.Serializable;
+import java.util.Arrays;
+import enums.RouteProfile;
+
+/**
+ * Landmarks for A* with the ALT heuristic, for one RouteProfile. The cost of the best route from every landmark to every vertex,
+ * and from every vertex to every landmark, is calculated once. By the triangle inequality the cost from a vertex v to a target t
+ * is at least d(L, t) - d(L, v) and d(v, L) - d(t, L) for every landmark L. Behind a landmark those bounds are close to
+ * the real cost, where the straight line ignores water, fjords and slow roads. Landmarks are picked far from each other,
+ * each one the vertex furthest from those already picked. Stored with the model.
+ */
+public class Landmarks implements Serializable {
+	private static final long serialVersionUID = 16052016L;
+	private final RouteProfile profile;
+	private final int count;
+	private final int[] landmarks;
+	private final float[] from, to; // Cost from and to the landmarks, the count of landmarks after each other for every vertex.
+
+	/**
+	 * Picks the landmarks and calculates the costs, two searches over the whole navigation graph per landmark.
+	 * @param pf The PathFinder holding the vertices.
+	 * @param profile The kind of route to find.
+	 * @param count The number of landmarks. Every landmark takes 8 bytes per vertex.
+	 */
+	public Landmarks(PathFinder pf, RouteProfile profile, int count) {
+		this.profile = profile;
+		RoadGraph g = pf.graph();
+		int n = g.vertices();
+		byte mask = RoadGraph.mask(profile.car());
+		int cost = RoadGraph.cost(profile.fastest());
+
+		// The first landmark is the vertex furthest from the vertex with the most roads, the next ones furthest from those picked.
+		int start = 0, most = 0;
+		for(int v = 0; v < n; v++) {
+			int roads = 0;
+			for(int e = g.outFirst[v]; e < g.outFirst[v + 1]; e++) {if((g.outAccess[e] & mask) != 0) {roads++;}}
+			if(roads > most) {start = v; most = roads;}
+		}
+		float[] dist = new float[n], nearest = new float[n];
+		dijkstra(start, g.outFirst, g.outTarget, g.outCost, g.outAccess, mask, cost, nearest);
+		this.count = count;
+		landmarks = new int[count];
+		from = new float[n * count];
+		to = new float[n * count];
+		for(int picked = 0; picked < count; picked++) {
+			int next = -1;
+			for(int v = 0; v < n; v++) {
+				if(nearest[v] != Float.POSITIVE_INFINITY && (next < 0 || nearest[v] > nearest[next])) {next = v;}
+			}
+			if(next < 0 || (picked > 0 && nearest[next] == 0)) {break;} // Fewer vertices than landmarks, the rest bound nothing.
+			landmarks[picked] = next;
+			dijkstra(next, g.outFirst, g.outTarget, g.outCost, g.outAccess, mask, cost, dist);
+			for(int v = 0; v < n; v++) {
+				from[v * count + picked] = dist[v];
+				nearest[v] = picked == 0 ? dist[v] : Math.min(nearest[v], dist[v]);
+			}
+			dijkstra(next, g.inFirst, g.inTarget, g.inCost, g.inAccess, mask, cost, dist);
+			for(int v = 0; v < n; v++) {to[v * count + picked] = dist[v];}
+		}
+	}
+
+	/**
+	 * Returns a lower bound on the cost of the best route from v to t, minutes for the fastest route and meters for the shortest.
+	 * POSITIVE_INFINITY if a landmark proves there is no route.
+	 * @param v The index of the vertex.
+	 * @param t The index of the target.
+	 * @return
+	 */
+	public float bound(int v, int t) {
+		float best = 0;
+		int a = v * count, b = t * count;
+		for(int i = 0; i < count; i++) {
+			// If the landmark is unreachable from both, the difference is NaN and ignored.
+			float d = from[b + i] - from[a + i];
+			if(d > best) {best = d;}
+			d = to[a + i] - to[b + i];
+			if(d > best) {best = d;}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the kind of route the costs are for.
+	 * @return
+	 */
+	public RouteProfile profile() {return profile;}
+
+	/**
+	 * Returns the indices of the landmark vertices.
+	 * @return
+	 */
+	public int[] landmarks() {return landmarks.clone();}
+
+	/**
+	 * Dijkstra from source over the whole graph, the edges out of each vertex or the edges into it.
+	 */
+	private static void dijkstra(int source, int[] first, int[] other, float[] costs, byte[] access, byte mask, int cost, float[] dist) {
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		VertexHeap heap = new VertexHeap(dist.length);
+		dist[source] = 0;
+		heap.offer(source, 0);
+		while(heap.size() > 0) {
+			int v = heap.poll();
+			for(int i = first[v]; i < first[v + 1]; i++) {
+				if((access[i] & mask) == 0) {continue;}
+				float d = dist[v] + costs[2 * i + cost];
+				if(d < dist[other[i]]) {
+					dist[other[i]] = d;
+					heap.offer(other[i], d);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package Model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Matches GPS traces onto the road network with a hidden Markov model, solved by the Viterbi algorithm.
+ * Candidate states are the closest points on the roads near each GPS point. Emission probabilities fall off with the
+ * distance to the road, transition probabilities with the difference between the route distance and the straight line distance.
+ * All search state lives in a per-thread object, so a single MapMatcher can match many traces in parallel.
+ */
+public class MapMatcher {
+	private static final double SIGMA = 10; // GPS noise in meters.
+	private static final double BETA = 10; // Meters of detour that make a transition e times less likely.
+	private static final double RADIUS = 50; // Roads further away from a GPS point (meters) are not considered.
+	private static final double MARGIN = 100; // Candidates are fetched this much further out (meters) and reused by the following points.
+	private static final int CANDIDATES = 8, CACHED = 32;
+	private final RoadIndex index;
+	private final float lonFactor;
+	private final RoadGraph graph;
+	private final byte mask;
+	private final ThreadLocal<Search> searches;
+
+	/**
+	 * Prepares matching onto the navigation graph of the model, shared with its PathFinder.
+	 * @param model The Model to match onto.
+	 * @param car True to follow roads where cars are allowed, false for bikes.
+	 */
+	public MapMatcher(Model model, boolean car) {
+		index = model.roadIndex();
+		lonFactor = model.lonFactor();
+		graph = model.pathFinder().graph();
+		mask = RoadGraph.mask(car);
+		searches = new ThreadLocal<Search>() {
+			protected Search initialValue() {return new Search(graph.vertices());}
+		};
+	}
+
+	/**
+	 * Matches a single trace. May be called from several threads at once.
+	 * @param trace The GPS trace.
+	 * @return The roads driven, and how long it took.
+	 */
+	public MatchResult match(GPSTrace trace) {
+		long start = System.nanoTime();
+		Search s = searches.get();
+		s.cached = 0;
+		List<Road> roads = new ArrayList<>();
+		List<RoadSnap[]> layers = new ArrayList<>();
+		List<double[]> scores = new ArrayList<>();
+		List<int[]> backs = new ArrayList<>();
+		double lastX = 0, lastY = 0;
+		int matched = 0, breaks = 0;
+
+		for(int i = 0; i < trace.size(); i++) {
+			double x = trace.lon(i) * lonFactor, y = -trace.lat(i);
+			double moved = Math.hypot(x - lastX, y - lastY) * Model.METER_CONVERSION;
+			if(!layers.isEmpty() && moved < 2 * SIGMA) {continue;}
+			RoadSnap[] candidates = s.candidates(x, y);
+			if(candidates.length == 0) {continue;}
+
+			double[] score = new double[candidates.length];
+			int[] back = new int[candidates.length];
+			boolean connected = false;
+			if(!layers.isEmpty()) {
+				RoadSnap[] previous = layers.get(layers.size() - 1);
+				double[] previousScore = scores.get(scores.size() - 1);
+				double[] route = new double[candidates.length];
+				Arrays.fill(score, Double.NEGATIVE_INFINITY);
+				for(int a = 0; a < previous.length; a++) {
+					if(previousScore[a] == Double.NEGATIVE_INFINITY) {continue;}
+					s.routes(previous[a], candidates, 2 * moved + 500, route);
+					for(int b = 0; b < candidates.length; b++) {
+						if(route[b] == Double.POSITIVE_INFINITY) {continue;}
+						double value = previousScore[a] - Math.abs(route[b] - moved) / BETA + emission(candidates[b]);
+						if(value > score[b]) {score[b] = value; back[b] = a; connected = true;}
+					}
+				}
+			}
+			if(!connected) {
+				if(!layers.isEmpty()) {
+					breaks++;
+					backtrack(s, layers, scores, backs, roads);
+					layers.clear(); scores.clear(); backs.clear();
+				}
+				for(int b = 0; b < candidates.length; b++) {score[b] = emission(candidates[b]); back[b] = -1;}
+			}
+			layers.add(candidates);
+			scores.add(score);
+			backs.add(back);
+			lastX = x; lastY = y;
+			matched++;
+		}
+		if(!layers.isEmpty()) {backtrack(s, layers, scores, backs, roads);}
+		return new MatchResult(trace, roads.toArray(new Road[roads.size()]), matched, breaks, System.nanoTime() - start);
+	}
+
+	/**
+	 * Matches every trace on a pool of worker threads.
+	 * @param traces The GPS traces.
+	 * @param threads The number of worker threads.
+	 * @return The results, in the same order as the traces.
+	 * @throws InterruptedException If interrupted while waiting for the workers.
+	 */
+	public List<MatchResult> matchAll(List<GPSTrace> traces, int threads) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<MatchResult>> futures = new ArrayList<>();
+			for(final GPSTrace trace : traces) {
+				futures.add(pool.submit(new Callable<MatchResult>() {
+					public MatchResult call() {return match(trace);}
+				}));
+			}
+			List<MatchResult> results = new ArrayList<>();
+			for(Future<MatchResult> f : futures) {
+				try {
+					results.add(f.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Matching failed", e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Follows the best scores back through the layers and appends the roads driven, including the routes between candidates.
+	 */
+	private void backtrack(Search s, List<RoadSnap[]> layers, List<double[]> scores, List<int[]> backs, List<Road> roads) {
+		int n = layers.size();
+		double[] last = scores.get(n - 1);
+		int best = 0;
+		for(int b = 1; b < last.length; b++) {
+			if(last[b] > last[best]) {best = b;}
+		}
+		RoadSnap[] chosen = new RoadSnap[n];
+		for(int i = n - 1; i >= 0; i--) {
+			chosen[i] = layers.get(i)[best];
+			best = backs.get(i)[best];
+		}
+		add(roads, chosen[0].road);
+		for(int i = 1; i < n; i++) {
+			if(chosen[i].roadId == chosen[i-1].roadId && sameRoad(chosen[i-1], chosen[i]) < Double.POSITIVE_INFINITY) {continue;}
+			for(Road r : s.route(chosen[i-1], chosen[i])) {add(roads, r);}
+			add(roads, chosen[i].road);
+		}
+	}
+
+	private static void add(List<Road> roads, Road r) {
+		if(roads.isEmpty() || roads.get(roads.size() - 1) != r) {roads.add(r);}
+	}
+
+	private static double emission(RoadSnap c) {
+		double d = c.distance * Model.METER_CONVERSION / SIGMA;
+		return -0.5 * d * d;
+	}
+
+	/**
+	 * Returns the distance in meters from a to b along their common road, if the road may be driven that way.
+	 */
+	private double sameRoad(RoadSnap a, RoadSnap b) {
+		float length = a.road.length();
+		if(b.fraction >= a.fraction && forward(a.road)) {return (b.fraction - a.fraction) * length;}
+		if(b.fraction <= a.fraction && backward(a.road)) {return (a.fraction - b.fraction) * length;}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns true if the road may be driven from its start to its end.
+	 */
+	private boolean forward(Road road) {return drivable(road, road.startIndex());}
+
+	/**
+	 * Returns true if the road may be driven from its end to its start.
+	 */
+	private boolean backward(Road road) {return drivable(road, road.endIndex());}
+
+	/**
+	 * Returns true if the road is an edge out of vertex v that may be driven, looking through the few edges of v.
+	 */
+	private boolean drivable(Road road, int v) {
+		if(v <= 0 || v >= graph.vertices()) {return false;}
+		for(int e = graph.outFirst[v]; e < graph.outFirst[v + 1]; e++) {
+			if(graph.outRoad[e] == road && (graph.outAccess[e] & mask) != 0) {return true;}
+		}
+		return false;
+	}
+
+	/**
+	 * Search state of a single thread. Arrays are stamped with an epoch, so nothing has to be cleared between searches.
+	 */
+	private class Search {
+		final float[] dist;
+		final int[] stamp, pred;
+		final VertexHeap heap;
+		int epoch;
+		final RoadSnap[] cache = new RoadSnap[CACHED];
+		final RoadSnap probe = new RoadSnap();
+		int cached;
+		double anchorX, anchorY, reuse;
+		int[] targets = new int[4 * CANDIDATES];
+
+		Search(int vertices) {
+			dist = new float[vertices];
+			stamp = new int[vertices];
+			pred = new int[vertices];
+			heap = new VertexHeap(vertices);
+			for(int i = 0; i < CACHED; i++) {cache[i] = new RoadSnap();}
+		}
+
+		/**
+		 * Returns the closest point on each of the nearest roads, reusing the roads found for an earlier point if it is close enough.
+		 */
+		RoadSnap[] candidates(double x, double y) {
+			double radius = RADIUS / Model.METER_CONVERSION, margin = MARGIN / Model.METER_CONVERSION;
+			if(cached == 0 || Math.hypot(x - anchorX, y - anchorY) > reuse) {
+				cached = index.near(x, y, radius + margin, cache);
+				anchorX = x; anchorY = y;
+				// A full cache may miss roads just outside its furthest road.
+				reuse = cached == CACHED ? Math.min(margin, cache[cached - 1].distance - radius) : margin;
+				if(cached == 0) {return new RoadSnap[0];}
+			}
+			List<RoadSnap> found = new ArrayList<>();
+			for(int i = 0; i < cached; i++) {
+				index.project(cache[i].roadId, x, y, probe);
+				if(probe.distance <= radius) {found.add(probe.copy());}
+			}
+			Collections.sort(found, new Comparator<RoadSnap>() {
+				public int compare(RoadSnap a, RoadSnap b) {return Double.compare(a.distance, b.distance);}
+			});
+			if(found.size() > CANDIDATES) {found = found.subList(0, CANDIDATES);}
+			return found.toArray(new RoadSnap[found.size()]);
+		}
+
+		/**
+		 * Calculates the route distance in meters from a to every candidate, POSITIVE_INFINITY where no route is within bound.
+		 */
+		void routes(RoadSnap a, RoadSnap[] candidates, double bound, double[] out) {
+			int nTargets = 0;
+			for(int b = 0; b < candidates.length; b++) {
+				RoadSnap c = candidates[b];
+				if(forward(c.road)) {nTargets = target(nTargets, c.road.startIndex());}
+				if(backward(c.road)) {nTargets = target(nTargets, c.road.endIndex());}
+			}
+			search(a, bound, nTargets);
+			for(int b = 0; b < candidates.length; b++) {
+				RoadSnap c = candidates[b];
+				double best = c.roadId == a.roadId ? sameRoad(a, c) : Double.POSITIVE_INFINITY;
+				float length = c.road.length();
+				if(forward(c.road)) {best = Math.min(best, reached(c.road.startIndex()) + c.fraction * length);}
+				if(backward(c.road)) {best = Math.min(best, reached(c.road.endIndex()) + (1 - c.fraction) * length);}
+				out[b] = best <= bound ? best : Double.POSITIVE_INFINITY;
+			}
+		}
+
+		/**
+		 * Returns the roads between a and b on the shortest route, in driving order, without the roads of a and b.
+		 */
+		List<Road> route(RoadSnap a, RoadSnap b) {
+			int nTargets = 0;
+			boolean forward = forward(b.road), backward = backward(b.road);
+			if(forward) {nTargets = target(nTargets, b.road.startIndex());}
+			if(backward) {nTargets = target(nTargets, b.road.endIndex());}
+			search(a, Double.POSITIVE_INFINITY, nTargets);
+			float length = b.road.length();
+			double viaStart = forward ? reached(b.road.startIndex()) + b.fraction * length : Double.POSITIVE_INFINITY;
+			double viaEnd = backward ? reached(b.road.endIndex()) + (1 - b.fraction) * length : Double.POSITIVE_INFINITY;
+			List<Road> path = new ArrayList<>();
+			if(viaStart == Double.POSITIVE_INFINITY && viaEnd == Double.POSITIVE_INFINITY) {return path;}
+			int v = viaStart <= viaEnd ? b.road.startIndex() : b.road.endIndex();
+			while(pred[v] >= 0) {
+				Road r = graph.outRoad[pred[v]];
+				path.add(r);
+				v = r.startIndex() == v ? r.endIndex() : r.startIndex();
+			}
+			Collections.reverse(path);
+			return path;
+		}
+
+		private int target(int n, int v) {
+			if(n == targets.length) {targets = Arrays.copyOf(targets, n << 1);}
+			targets[n] = v;
+			return n + 1;
+		}
+
+		/**
+		 * Dijkstra from the ends of the road of a, until every target is settled or the bound is passed.
+		 */
+		private void search(RoadSnap a, double bound, int nTargets) {
+			epoch++;
+			heap.clear();
+			float length = a.road.length();
+			if(forward(a.road)) {offer(a.road.endIndex(), (1 - a.fraction) * length, -1);}
+			if(backward(a.road)) {offer(a.road.startIndex(), a.fraction * length, -1);}
+			int remaining = nTargets;
+			while(heap.size() > 0 && remaining > 0) {
+				int v = heap.poll();
+				float key = dist[v];
+				if(key > bound) {break;}
+				for(int t = 0; t < nTargets; t++) {
+					if(targets[t] == v) {targets[t] = -1; remaining--;}
+				}
+				for(int e = graph.outFirst[v]; e < graph.outFirst[v + 1]; e++) {
+					if((graph.outAccess[e] & mask) == 0) {continue;}
+					offer(graph.outTarget[e], key + graph.outCost[2 * e + RoadGraph.cost(false)], e);
+				}
+			}
+		}
+
+		private double reached(int v) {return stamp[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;}
+
+		private void offer(int v, float d, int edge) {
+			if(stamp[v] == epoch && dist[v] <= d) {return;}
+			stamp[v] = epoch;
+			dist[v] = d;
+			pred[v] = edge;
+			heap.offer(v, d);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package Model;
+
+/**
+ * The result of matching a single GPSTrace onto the road network with a MapMatcher.
+ */
+public class MatchResult {
+	final GPSTrace trace;
+	final Road[] roads;
+	final int matchedPoints, breaks;
+	final long nanos;
+
+	MatchResult(GPSTrace trace, Road[] roads, int matchedPoints, int breaks, long nanos) {
+		this.trace = trace;
+		this.roads = roads;
+		this.matchedPoints = matchedPoints;
+		this.breaks = breaks;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * Returns the trace that was matched.
+	 * @return
+	 */
+	public GPSTrace trace() {return trace;}
+
+	/**
+	 * Returns the roads driven, in the order they were driven. Roads are not repeated back to back.
+	 * @return Might return an empty array, but never null.
+	 */
+	public Road[] roads() {return roads;}
+
+	/**
+	 * Returns how many points of the trace were used in the matching. Points without a road nearby,
+	 * or too close to the previous point to tell anything new, are left out.
+	 * @return
+	 */
+	public int matchedPoints() {return matchedPoints;}
+
+	/**
+	 * Returns how many times the matching had to start over, because no route could connect two points.
+	 * @return
+	 */
+	public int breaks() {return breaks;}
+
+	/**
+	 * Returns how long it took to match the trace, in nanoseconds.
+	 * @return
+	 */
+	public long nanos() {return nanos;}
+}
@@ -20,6 +20,7 @@ import java.util.zip.ZipInputStream;
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
+import enums.LayerType;
 
 /**
  * The model is used to store and manage all information related to the map.
@@ -27,6 +28,7 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class Model extends Observable implements Serializable {
 	private static final long serialVersionUID = 16052016L;
 	public static final int METER_CONVERSION = 111323;
+	private static final float POI_CELL_SIZE = 0.005f; // ~550m
 	
 	//Primary information
 	private Address[] addresses;
@@ -46,6 +48,8 @@ public class Model extends Observable implements Serializable {
 	
 	//Path-related variables
 	private PathFinder pathFinder;
+	private transient RoadIndex roadIndex;
+	private transient POIIndex poiIndex, userPOIIndex;
 	private Road[] path;
 	private Point2D pathFrom, pathTo, highlight;
 
@@ -96,6 +100,7 @@ public class Model extends Observable implements Serializable {
 			e.printStackTrace();
 			throw new IOException(e);
 		}
+		roadIndex();
 		System.gc();
 	}
 
@@ -131,6 +136,7 @@ public class Model extends Observable implements Serializable {
 		if(file == null) {throw new IOException("File object is null");}
 		try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
 			Model newModel = (Model) in.readObject();
+			newModel.roadIndex();
 			return newModel;
 		} catch (IOException | ClassCastException | ClassNotFoundException | IllegalStateException ex) {
 			ex.printStackTrace();
@@ -147,6 +153,7 @@ public class Model extends Observable implements Serializable {
 	public static Model load(InputStream input) throws IOException {
 		try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(input))) {
 			Model newModel = (Model) in.readObject();
+			newModel.roadIndex();
 			return newModel;
 		} catch (IOException | ClassCastException | ClassNotFoundException | IllegalStateException ex) {
 			ex.printStackTrace();
@@ -193,7 +200,52 @@ public class Model extends Observable implements Serializable {
 	 * @throws NullPointerException
 	 */
 	public Road closestRoad(Point2D point) {
-		return (Road) dataNavigation.closestToPoint(point);
+		RoadSnap snap = new RoadSnap();
+		if(closestRoad(point, snap)) {return snap.road();}
+		return null;
+	}
+
+	/**
+	 * Snaps the point onto the closest road within 225meters, if any.
+	 * @param point The point to compare the distance against.
+	 * @param snap Receives the road, the projected point and how far along the road it is.
+	 * @return True if a road was found.
+	 */
+	public boolean closestRoad(Point2D point, RoadSnap snap) {
+		return roadIndex().nearest(point.getX(), point.getY(), DataTree.TOLERANCE, snap);
+	}
+
+	/**
+	 * Returns the segment index of the navigation roads. It is not saved with the model, but built on first use.
+	 * @return
+	 */
+	public RoadIndex roadIndex() {
+		if(roadIndex == null) {
+			List<PolygonApprox> roads = new ArrayList<>();
+			for(PolygonApprox[] leaf : dataNavigation.tree()) {
+				for(PolygonApprox pa : leaf) {roads.add(pa);}
+			}
+			roadIndex = new RoadIndex(roads);
+		}
+		return roadIndex;
+	}
+
+	/**
+	 * Returns the point index of the points of interest. It is not saved with the model, but built on first use.
+	 * @return
+	 */
+	public POIIndex POIIndex() {
+		if(poiIndex == null) {poiIndex = new POIIndex(poi, POI_CELL_SIZE);}
+		return poiIndex;
+	}
+
+	/**
+	 * Returns the point index of the user points of interest. It is not saved with the model, but built on first use.
+	 * @return
+	 */
+	public POIIndex userPOIIndex() {
+		if(userPOIIndex == null) {userPOIIndex = new POIIndex(userPOI, POI_CELL_SIZE);}
+		return userPOIIndex;
 	}
 
 	/**
@@ -224,6 +276,20 @@ public class Model extends Observable implements Serializable {
      */
 	public Shape bounds() {return new Rectangle2D.Float(minLon, maxLat, maxLon-minLon, minLat-maxLat);}
 
+	/**
+	 * Returns the factor longitudes are multiplied by to flatten the map, cos of the middle latitude.
+	 * @return
+	 */
+	public float lonFactor() {return (float) Math.cos(Math.PI / 180 * (minLat + maxLat) / 2);}
+
+	/**
+	 * Converts a latitude and longitude into model coordinates.
+	 * @param lat Latitude in degrees.
+	 * @param lon Longitude in degrees.
+	 * @return
+	 */
+	public Point2D.Float modelPoint(double lat, double lon) {return new Point2D.Float((float) (lon * lonFactor()), (float) -lat);}
+
 	/**
 	 * Returns the minimum latitude of the model.
 	 * @return
@@ -290,6 +356,14 @@ public class Model extends Observable implements Serializable {
      */
 	public List<PolygonApprox[]> dataCoast(Rectangle2D bb) { return dataCoast.tree(bb);}
 
+	/**
+	 * Returns a list of arrays of coastlines inside the given rectangle, simplified to match the given pixel size.
+	 * @param bb
+	 * @param pixelSize The width of a pixel in world space.
+	 * @return
+     */
+	public List<PolygonApprox[]> dataCoast(Rectangle2D bb, double pixelSize) {return dataCoast.tree(bb, pixelSize);}
+
 	/**
 	 * Returns a list of arrays of cycleways inside the given rectangle.
 	 * @param bb
@@ -311,6 +385,14 @@ public class Model extends Observable implements Serializable {
      */
 	public List<PolygonApprox[]> dataForest(Rectangle2D bb) {return dataForest.tree(bb);}
 
+	/**
+	 * Returns a list of arrays of forests inside the given rectangle, simplified to match the given pixel size.
+	 * @param bb
+	 * @param pixelSize The width of a pixel in world space.
+	 * @return
+     */
+	public List<PolygonApprox[]> dataForest(Rectangle2D bb, double pixelSize) {return dataForest.tree(bb, pixelSize);}
+
 	/**
 	 * Returns a list of arrays of grass inside the given rectangle.
 	 * @param bb
@@ -360,6 +442,14 @@ public class Model extends Observable implements Serializable {
      */
 	public List<PolygonApprox[]> dataRoad_lvl1(Rectangle2D bb) {return dataRoad_lvl1.tree(bb);}
 
+	/**
+	 * Returns a list of arrays of roads from first level inside the given rectangle, simplified to match the given pixel size.
+	 * @param bb
+	 * @param pixelSize The width of a pixel in world space.
+	 * @return
+     */
+	public List<PolygonApprox[]> dataRoad_lvl1(Rectangle2D bb, double pixelSize) {return dataRoad_lvl1.tree(bb, pixelSize);}
+
 	/**
 	 * Returns a list of arrays of roads from second level inside the given rectangle.
 	 * @param bb
@@ -367,6 +457,14 @@ public class Model extends Observable implements Serializable {
      */
 	public List<PolygonApprox[]> dataRoad_lvl2(Rectangle2D bb) {return dataRoad_lvl2.tree(bb);}
 
+	/**
+	 * Returns a list of arrays of roads from second level inside the given rectangle, simplified to match the given pixel size.
+	 * @param bb
+	 * @param pixelSize The width of a pixel in world space.
+	 * @return
+     */
+	public List<PolygonApprox[]> dataRoad_lvl2(Rectangle2D bb, double pixelSize) {return dataRoad_lvl2.tree(bb, pixelSize);}
+
 	/**
 	 * Returns a list of arrays of roads from third level inside the given rectangle.
 	 * @param bb
@@ -409,6 +507,14 @@ public class Model extends Observable implements Serializable {
      */
 	public List<PolygonApprox[]> dataWater(Rectangle2D bb) {return dataWater.tree(bb);}
 
+	/**
+	 * Returns a list of arrays of water areas inside the given rectangle, simplified to match the given pixel size.
+	 * @param bb
+	 * @param pixelSize The width of a pixel in world space.
+	 * @return
+     */
+	public List<PolygonApprox[]> dataWater(Rectangle2D bb, double pixelSize) {return dataWater.tree(bb, pixelSize);}
+
 	/**
 	 * Returns a list of arrays of water ways inside the given rectangle.
 	 * @param bb
@@ -416,6 +522,62 @@ public class Model extends Observable implements Serializable {
      */
 	public List<PolygonApprox[]> dataWaterway(Rectangle2D bb) {return dataWaterWay.tree(bb);}
 
+	/**
+	 * Returns the DataTree holding the given layer.
+	 * @param layer The desired layer.
+	 * @return The DataTree, or null if the layer has not been loaded.
+	 */
+	public DataTree data(LayerType layer) {
+		switch(layer) {
+			case BUILDING: return dataBuilding;
+			case COAST: return dataCoast;
+			case CYCLE: return dataCycle;
+			case FARMLAND: return dataFarm;
+			case FOREST: return dataForest;
+			case GRASS: return dataGrass;
+			case INDUSTRIAL: return dataIndustrial;
+			case NAVIGATION: return dataNavigation;
+			case PARKING: return dataParking;
+			case PLAIN: return dataPlain;
+			case RAILWAY: return dataRailway;
+			case RESIDENTIAL: return dataResidential;
+			case ROAD_LVL1: return dataRoad_lvl1;
+			case ROAD_LVL2: return dataRoad_lvl2;
+			case ROAD_LVL3: return dataRoad_lvl3;
+			case ROAD_LVL4: return dataRoad_lvl4;
+			case ROAD_LVL5: return dataRoad_lvl5;
+			case SAND: return dataSand;
+			case WALKWAY: return dataWalk;
+			case WATER: return dataWater;
+			case WATERWAY: return dataWaterWay;
+			default: return null;
+		}
+	}
+
+	/**
+	 * Returns every object in the given layer whose area contains the point, e.g. the land use under a click.
+	 * @param layer The desired layer.
+	 * @param point The point to test.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox> containing(LayerType layer, Point2D point) {
+		DataTree tree = data(layer);
+		if(tree == null) {return new ArrayList<>();}
+		return tree.containing(point);
+	}
+
+	/**
+	 * Returns every object in the given layer whose area overlaps the rectangle.
+	 * @param layer The desired layer.
+	 * @param bb The desired area.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox> intersecting(LayerType layer, Rectangle2D bb) {
+		DataTree tree = data(layer);
+		if(tree == null) {return new ArrayList<>();}
+		return tree.intersecting(bb);
+	}
+
 	/**
 	 * Returns a list of configs.
 	 * @return
@@ -467,19 +629,34 @@ public class Model extends Observable implements Serializable {
 	 * Adds a point of interest (POI).
 	 * @param point Point of interest.
      */
-	public void POI(POI point) {poi.add(point);}
+	public void POI(POI point) {
+		poi.add(point);
+		if(poiIndex != null) {poiIndex.insert(point);}
+	}
 
 	/**
 	 * Adds a user point of interest (UserPOI).
 	 * @param point Point of interest.
      */
-	public void userPOI(POI point) {userPOI.add(point);}
+	public void userPOI(POI point) {
+		userPOI.add(point);
+		if(userPOIIndex != null) {userPOIIndex.insert(point);}
+	}
 
 	/**
 	 * Removes a user point of interest (UserPOI).
 	 * @param point Point of interest.
      */
-	public void deleteUserPOI(POI point) {userPOI.remove(point);}
+	public void deleteUserPOI(POI point) {
+		if(userPOI.remove(point) && userPOIIndex != null) {userPOIIndex.remove(point);}
+	}
+
+	/**
+	 * Moves a user point of interest (UserPOI).
+	 * @param point Point of interest.
+	 * @param location The new location.
+	 */
+	public void moveUserPOI(POI point, Point2D location) {userPOIIndex().move(point, location.getX(), location.getY());}
 
 	/**
 	 * Sets the DataTree representing residential areas.
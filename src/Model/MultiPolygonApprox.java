@@ -1,12 +1,10 @@
 package Model;
 
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.util.Arrays;
 import java.util.List;
-import java.util.NoSuchElementException;
 
 /**
  * Based on the class MultiPolygonApprox by Troels Bjerre Lund.
@@ -36,6 +34,20 @@ public class MultiPolygonApprox extends PolygonApprox {
         }
     }
 
+    /**
+     * Creates a MultiPolygonApprox directly from coordinates and point types.
+     * @param coords The coordinates, two floats per point.
+     * @param pointtypes SEG_MOVETO for the first point of each ring, SEG_LINETO for the rest.
+     */
+    protected MultiPolygonApprox(float[] coords, byte[] pointtypes) {
+        this.coords = coords;
+        this.pointtypes = pointtypes;
+        nPoints = pointtypes.length;
+        if(nPoints > 0) {
+            init();
+        }
+    }
+
     /**
      * Checks if this is a MultiPolygonApprox instead of using instanceOf
      * @return Always true. This is used as a faster alternative to instanceOf
@@ -44,6 +56,56 @@ public class MultiPolygonApprox extends PolygonApprox {
         return true;
     }
 
+    /**
+     * Returns a simplified copy. The rings are simplified together, so they do not cross each other.
+     * @param tolerance The maximum distance (world space) a removed point may lie from the simplified line.
+     * @return A new MultiPolygonApprox with fewer points, or this object if nothing could be removed.
+     */
+    public PolygonApprox simplify(float tolerance) {
+        int n = pointtypes.length, count = 0;
+        int[] starts = new int[n], sizes = new int[n];
+        for(int start = 0; start < n; start = ringEnd(start)) {
+            starts[count] = start;
+            sizes[count++] = ringEnd(start) - start;
+        }
+        float[][] rings = simplify(coords, Arrays.copyOf(starts, count), Arrays.copyOf(sizes, count), tolerance);
+        int total = 0;
+        for(float[] ring : rings) {total += ring.length;}
+        if(total == coords.length) {return this;}
+
+        float[] simple = new float[total];
+        byte[] types = new byte[total >> 1];
+        Arrays.fill(types, (byte) PathIterator.SEG_LINETO);
+        int c = 0;
+        for(int i = 0; i < count; i++) {
+            types[c >> 1] = (byte) PathIterator.SEG_MOVETO;
+            System.arraycopy(rings[i], 0, simple, c, rings[i].length);
+            c += rings[i].length;
+        }
+        return copy(simple, types);
+    }
+
+    /**
+     * Creates a shape of the same kind with other points, used by simplify.
+     * @param coords The coordinates, two floats per point.
+     * @param pointtypes SEG_MOVETO for the first point of each ring, SEG_LINETO for the rest.
+     * @return
+     */
+    protected MultiPolygonApprox copy(float[] coords, byte[] pointtypes) {
+        return new MultiPolygonApprox(coords, pointtypes);
+    }
+
+
+    /**
+     * Returns the index of the point after the last point in the ring starting at start.
+     * @param start Index of the first point in the ring.
+     * @return
+     */
+    protected int ringEnd(int start) {
+        int end = start + 1;
+        while(end < pointtypes.length && pointtypes[end] != PathIterator.SEG_MOVETO) {end++;}
+        return end;
+    }
 
     public double distTo(Point2D p) {
         double dist = Double.MAX_VALUE;
@@ -56,41 +118,16 @@ public class MultiPolygonApprox extends PolygonApprox {
         return dist;
     }
 
-    public PathIterator getPathIterator(AffineTransform at, float pixelsq) {
-        return new MultiPolygonApproxIterator(at, pixelsq);
-    }
-
-    public PathIterator getPathIterator(AffineTransform at, double flatness) {
-        return new MultiPolygonApproxIterator(at, (float) (flatness * flatness));
+    protected int next(float[] c, int index, float approx) {
+        float fx = c[index];
+        float fy = c[index+1];
+        index += 2;
+        while (index < c.length - 2 && pointtypes[(index >> 1) + 1] == PathIterator.SEG_LINETO &&
+                distSq(fx, fy, c[index], c[index+1]) < approx) index += 2;
+        return index;
     }
 
-    private class MultiPolygonApproxIterator extends PolygonApproxIterator {
-        public MultiPolygonApproxIterator(AffineTransform _at, float _pixelsq) {
-            super(_at, _pixelsq);
-        }
-
-        public void next() {
-            float fx = coords[index];
-            float fy = coords[index+1];
-            index += 2;
-            while (index < coords.length - 2 && pointtypes[(index >> 1) + 1] == PathIterator.SEG_LINETO &&
-                    distSq(fx, fy, coords[index], coords[index+1]) < approx) index += 2;
-        }
-
-        public int currentSegment(float[] c) {
-            if (isDone()) {
-                throw new NoSuchElementException("poly approx iterator out of bounds");
-            }
-            c[0] = coords[index];
-            c[1] = coords[index+1];
-            if (at != null) {
-                at.transform(c, 0, c, 0, 1);
-            }
-            return pointtypes[index >> 1];
-        }
-
-        public int currentSegment(double[] coords) {
-            throw new UnsupportedOperationException("Unexpected call to PolygonApprox.contains(Rectangle2D)");
-        }
+    protected int segment(int index) {
+        return pointtypes[index >> 1];
     }
 }
\ No newline at end of file
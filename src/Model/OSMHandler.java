@@ -4,6 +4,7 @@ import enums.RoadAccess;
 import enums.RoadType;
 import enums.WayType;
 import View.LoadingScreen;
+import java.awt.GraphicsEnvironment;
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.DefaultHandler;
 import java.awt.geom.Point2D;
@@ -93,7 +94,7 @@ public class OSMHandler extends DefaultHandler {
 		postcode = 0;
 		isAddressNode = false;
 		
-		load = new LoadingScreen("Loading Nodes...");
+		if(!GraphicsEnvironment.isHeadless()) {load = new LoadingScreen("Loading Nodes...");}
 		isWayDetected = false;
 		isRelationDetected = false;
 	}
@@ -162,7 +163,7 @@ public class OSMHandler extends DefaultHandler {
      */
 	private void startWay(Attributes atts){
 		if (!isWayDetected) {
-			load.loadingText("Loading Ways...");
+			if(load != null) {load.loadingText("Loading Ways...");}
 			isWayDetected = true;
 		}
 		wayID = Long.parseLong(atts.getValue("id"));
@@ -185,7 +186,7 @@ public class OSMHandler extends DefaultHandler {
      */
 	private void startRelation() {
 		if (!isRelationDetected) {
-			load.loadingText("Loading Relations...");
+			if(load != null) {load.loadingText("Loading Relations...");}
 			isRelationDetected = true;
 		}
 		relation = new ArrayList<>();
@@ -905,11 +906,11 @@ public class OSMHandler extends DefaultHandler {
 	}
 	@Override
 	public void endDocument() {
-		load.loadingText("Creating Navigation Graph...");
+		if(load != null) {load.loadingText("Creating Navigation Graph...");}
 		createRoadNetwork();
-		load.loadingText("Creating DataTrees...");
+		if(load != null) {load.loadingText("Creating DataTrees...");}
 		createDataTrees();
-		load.dispose();
+		if(load != null) {load.dispose();}
 	}
 
 	/**
@@ -1013,7 +1014,7 @@ public class OSMHandler extends DefaultHandler {
 		builder.sortCoast();
 		model.address(fac.address());
 		model.cities(fac.cities());
-		model.dataCoast(new DataTree(builder.coast(), false));
+		model.dataCoast(new DataTree(builder.coast(), false, true));
 		model.dataBuilding(fac.buildings());
 		model.dataCycle(fac.cycleway());
 		model.dataFarm(fac.farmland());
@@ -0,0 +1,252 @@
+package Model;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import enums.POIType;
+
+/**
+ * A sparse uniform grid of points of interest, supporting viewport, radius and nearest queries.
+ * Points may be inserted, removed and moved at any time, but must only be moved through move(POI, double, double).
+ * The cells are kept in a hash table keyed by a primitive long, so looking up a cell allocates nothing.
+ */
+public class POIIndex {
+	private final float cellSize;
+	private Cell[] cells;
+	private int size, cellCount, minCX, minCY, maxCX, maxCY;
+
+	/**
+	 * The points of a single cell, chained to the next cell in the same slot of the table.
+	 */
+	private static class Cell extends ArrayList<POI> {
+		private static final long serialVersionUID = 16052016L;
+		final long key;
+		Cell next;
+		Cell(long key, Cell next) {super(4); this.key = key; this.next = next;}
+	}
+
+	/**
+	 * Creates an empty index.
+	 * @param cellSize The width and height of each cell (world space).
+	 */
+	public POIIndex(float cellSize) {
+		this.cellSize = cellSize;
+		cells = new Cell[16];
+		minCX = Integer.MAX_VALUE; minCY = Integer.MAX_VALUE;
+		maxCX = Integer.MIN_VALUE; maxCY = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Creates an index holding the given points.
+	 * @param list The points of interest.
+	 * @param cellSize The width and height of each cell (world space).
+	 */
+	public POIIndex(List<? extends POI> list, float cellSize) {
+		this(cellSize);
+		for(POI p : list) {insert(p);}
+	}
+
+	/**
+	 * Adds a point to the index.
+	 * @param p The point of interest.
+	 */
+	public void insert(POI p) {
+		int cx = cell(p.getX()), cy = cell(p.getY());
+		long key = key(cx, cy);
+		Cell cell = get(key);
+		if(cell == null) {
+			if(++cellCount > cells.length * 3 / 4) {grow();}
+			int slot = slot(key);
+			cell = new Cell(key, cells[slot]);
+			cells[slot] = cell;
+		}
+		cell.add(p);
+		size++;
+		minCX = Math.min(minCX, cx); maxCX = Math.max(maxCX, cx);
+		minCY = Math.min(minCY, cy); maxCY = Math.max(maxCY, cy);
+	}
+
+	/**
+	 * Removes a point from the index.
+	 * @param p The point of interest.
+	 * @return True if the point was found.
+	 */
+	public boolean remove(POI p) {
+		Cell cell = get(key(cell(p.getX()), cell(p.getY())));
+		if(cell == null || !removeFrom(cell, p)) {
+			// Moved without going through the index, look everywhere.
+			cell = null;
+			for(int i = 0; i < cells.length && cell == null; i++) {
+				for(Cell c = cells[i]; c != null; c = c.next) {
+					if(removeFrom(c, p)) {cell = c; break;}
+				}
+			}
+			if(cell == null) {return false;}
+		}
+		if(cell.isEmpty()) {unlink(cell);}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Moves a point to a new location, keeping the index up to date.
+	 * @param p The point of interest.
+	 * @param x The new x-coordinate (world space).
+	 * @param y The new y-coordinate (world space).
+	 */
+	public void move(POI p, double x, double y) {
+		if(cell(p.getX()) == cell(x) && cell(p.getY()) == cell(y)) {p.setLocation(x, y); return;}
+		boolean indexed = remove(p);
+		p.setLocation(x, y);
+		if(indexed) {insert(p);}
+	}
+
+	/**
+	 * Returns the number of points in the index.
+	 * @return
+	 */
+	public int size() {return size;}
+
+	/**
+	 * Finds every point within the given rectangle.
+	 * @param box The desired area (world space).
+	 * @param types The wanted types, null for all.
+	 * @param out Receives the points, it is not cleared first.
+	 * @return out, for convenience.
+	 */
+	public List<POI> viewport(Rectangle2D box, EnumSet<POIType> types, List<POI> out) {
+		if(size == 0) {return out;}
+		int x0 = Math.max(minCX, cell(box.getMinX())), x1 = Math.min(maxCX, cell(box.getMaxX()));
+		int y0 = Math.max(minCY, cell(box.getMinY())), y1 = Math.min(maxCY, cell(box.getMaxY()));
+		if(x0 > x1 || y0 > y1) {return out;}
+		if((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cellCount) {
+			for(Cell first : cells) {
+				for(Cell cell = first; cell != null; cell = cell.next) {collect(cell, box, types, out);}
+			}
+		} else {
+			for(int cy = y0; cy <= y1; cy++) {
+				for(int cx = x0; cx <= x1; cx++) {
+					Cell cell = get(key(cx, cy));
+					if(cell != null) {collect(cell, box, types, out);}
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Finds every point within the given distance.
+	 * @param x The x-coordinate of the centre (world space).
+	 * @param y The y-coordinate of the centre (world space).
+	 * @param radius The maximum distance (world space).
+	 * @param types The wanted types, null for all.
+	 * @param out Receives the points, it is not cleared first.
+	 * @return out, for convenience.
+	 */
+	public List<POI> radius(double x, double y, double radius, EnumSet<POIType> types, List<POI> out) {
+		int from = out.size();
+		viewport(new Rectangle2D.Double(x - radius, y - radius, 2*radius, 2*radius), types, out);
+		double r2 = radius * radius;
+		int keep = from;
+		for(int i = from; i < out.size(); i++) {
+			POI p = out.get(i);
+			if(p.distanceSq(x, y) <= r2) {out.set(keep++, p);}
+		}
+		out.subList(keep, out.size()).clear();
+		return out;
+	}
+
+	/**
+	 * Finds the point closest to the given coordinates.
+	 * @param x The x-coordinate (world space).
+	 * @param y The y-coordinate (world space).
+	 * @param maxDist Points further away than this (world space) are ignored.
+	 * @param types The wanted types, null for all.
+	 * @return The closest point, or null if none is within maxDist.
+	 */
+	public POI nearest(double x, double y, double maxDist, EnumSet<POIType> types) {
+		if(size == 0) {return null;}
+		int cx = cell(x), cy = cell(y);
+		int maxRing = Math.max(Math.max(Math.abs(cx - minCX), Math.abs(cx - maxCX)), Math.max(Math.abs(cy - minCY), Math.abs(cy - maxCY)));
+		double best = maxDist * maxDist;
+		POI closest = null;
+		for(int ring = 0; ring <= maxRing; ring++) {
+			double bound = (ring - 1) * (double) cellSize;
+			if(ring > 1 && bound * bound > best) {break;}
+			for(int gy = cy - ring; gy <= cy + ring; gy++) {
+				boolean edgeRow = gy == cy - ring || gy == cy + ring;
+				for(int gx = cx - ring; gx <= cx + ring; gx += edgeRow ? 1 : 2 * ring) {
+					Cell cell = get(key(gx, gy));
+					if(cell != null) {
+						for(int i = 0; i < cell.size(); i++) {
+							POI p = cell.get(i);
+							if(types != null && !types.contains(p.type())) {continue;}
+							double d2 = p.distanceSq(x, y);
+							if(d2 < best) {best = d2; closest = p;}
+						}
+					}
+					if(ring == 0) {break;}
+				}
+			}
+		}
+		return closest;
+	}
+
+	private void collect(List<POI> cell, Rectangle2D box, EnumSet<POIType> types, List<POI> out) {
+		for(int i = 0; i < cell.size(); i++) {
+			POI p = cell.get(i);
+			if((types == null || types.contains(p.type())) && box.contains(p)) {out.add(p);}
+		}
+	}
+
+	private static boolean removeFrom(List<POI> cell, POI p) {
+		for(int i = 0; i < cell.size(); i++) {
+			if(cell.get(i) == p) {cell.remove(i); return true;}
+		}
+		return false;
+	}
+
+	private int cell(double v) {return (int) Math.floor(v / cellSize);}
+
+	private static long key(int cx, int cy) {return ((long) cx << 32) | (cy & 0xffffffffL);}
+
+	/**
+	 * Spreads neighbouring cells over the table, cx ^ cy alone would put every diagonal in one slot.
+	 */
+	private int slot(long key) {return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & (cells.length - 1);}
+
+	private Cell get(long key) {
+		for(Cell c = cells[slot(key)]; c != null; c = c.next) {
+			if(c.key == key) {return c;}
+		}
+		return null;
+	}
+
+	private void unlink(Cell cell) {
+		int slot = slot(cell.key);
+		if(cells[slot] == cell) {
+			cells[slot] = cell.next;
+		} else {
+			Cell c = cells[slot];
+			while(c.next != cell) {c = c.next;}
+			c.next = cell.next;
+		}
+		cellCount--;
+	}
+
+	/**
+	 * Doubles the table, keeping the cells.
+	 */
+	private void grow() {
+		Cell[] old = cells;
+		cells = new Cell[old.length << 1];
+		for(Cell first : old) {
+			for(Cell c = first, next; c != null; c = next) {
+				next = c.next;
+				int slot = slot(c.key);
+				c.next = cells[slot];
+				cells[slot] = c;
+			}
+		}
+	}
+}
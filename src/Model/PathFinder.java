@@ -1,26 +1,32 @@
 package Model;
 
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import Controller.Main;
+import enums.RouteProfile;
 
 /**
  * This object is responsible for all navigation in this program.
+ * A search never changes the graph, its state lives in arrays of the thread searching, so routes may be found from many threads at once.
  */
 public class PathFinder implements Serializable {
 	private static final long serialVersionUID = 16052016L;
 	private Vertex[] vertices;
-	private HashSet<Vertex> marked;
-	private HashSet<Vertex> visited;
-	private Point2D start, end;
-	private boolean dragging, flipPath;
-	private PriorityQueue<Vertex> queue;
-	
+	private ContractionHierarchy[] hierarchies; // Per RouteProfile, null until contracted.
+	private Landmarks[] landmarks; // Per RouteProfile, null until picked.
+	private transient volatile RoadGraph graph; // Built when first needed.
+	private transient ThreadLocal<Search> searches;
+
 	/**
 	 * The pathfinder takes a list of all Vertex objects in the whole program.
 	 * @param vertices A Vertex object for each road intersection is expected.
@@ -28,25 +34,24 @@ public class PathFinder implements Serializable {
 	public PathFinder(List<Vertex> vertices) {
 		this.vertices = new Vertex[vertices.size()];
 		vertices.toArray(this.vertices);
-		marked = new HashSet<Vertex>();
-		visited = new HashSet<Vertex>();
+		searches = searches();
 	}
-	
+
 	@Deprecated
 	public Road[] shortestPath(Address from, Address to, boolean car, boolean fastest) throws NoPathFoundException {
-		return shortestPath(from, to); 
+		return shortestPath(from, to);
 	}
-	
+
 	@Deprecated
 	public Road[] shortestPath(Road from, Road to) throws NoPathFoundException {
 		return path(from.closestVertex(), to.closestVertex(), false, true);
 	}
-	
+
 	@Deprecated
 	public Road[] shortestPath(Address from, Address to) throws NoPathFoundException {
 		return path(from.road().closestVertex(), to.road().closestVertex(), false, true);
 	}
-	
+
 	/**
 	 * Returns a route between two Point2D including the "walkway" to the address/POI.
 	 * Walkways are temporary roads used to depict the complete route.
@@ -58,46 +63,57 @@ public class PathFinder implements Serializable {
 	 * @throws NoPathFoundException Throws an exception if no road was found!
 	 */
 	public Road[] path(Point2D from, Point2D to, boolean car, boolean fastest) throws NoPathFoundException {
-		start = from; end = to;
-		Vertex f, t;
-		
-		if(start instanceof Address) {
-			f = ((Address) start).road().closestVertex(start);
-		} else {
-			Road tmp = Main.model().closestRoad(start);
-			if(tmp != null) {
-				f = tmp.closestVertex(start);
-			} else { throw new NoPathFoundException(); }
-		}
-		
-		if(end instanceof Address) {
-			t = ((Address) end).road().closestVertex(end);
-		} else {
-			Road tmp = Main.model().closestRoad(end);
-			if(tmp != null) {
-				t = tmp.closestVertex(end);
-			} else { throw new NoPathFoundException(); }
-		}
-		
-		return path(f,t,car,fastest);
+		return path(from, to, car, fastest, false);
 	}
-	
+
 	/**
-	 * Enable or disable dragging. Turns graph-cleaning off and on. Use with caution!
-	 * @param dragging If true, turns of graph-cleaning.
-	 * @param flipPath Flips the path if true.
+	 * Returns a route between two Point2D including the "walkway" to the address/POI.
+	 * @param to The Point2D you want to navigate to.
+	 * @param from The Point2D you want to navigate from
+	 * @param car If true, returns a car-friendly route. If false, returns a bike-friendly.
+	 * @param fastest If true, return fastest path. If false, returns shortest.
+	 * @param bidirectional If true, A* searches from both ends at once. Not used with a contraction hierarchy.
+	 * @return The path.
+	 * @throws NoPathFoundException Throws an exception if no road was found!
 	 */
-	public void drag(boolean dragging, boolean flipPath) {
-		if(dragging) {
-			this.dragging = true;
-			this.flipPath = flipPath;
-		} else {
-			this.dragging = false;
-			this.flipPath = false;
-			cleanGraph();
-		}
+	public Road[] path(Point2D from, Point2D to, boolean car, boolean fastest, boolean bidirectional) throws NoPathFoundException {
+		return path(closestVertex(from), closestVertex(to), car, fastest, bidirectional, from, to, false);
 	}
-	
+
+	/**
+	 * Returns a route between two Point2D including the walkways, while one end of it is dragged.
+	 * The search tree grown from the fixed end is kept by the calling thread, so as long as that end and the kind of route
+	 * stay the same, each move of the other end only searches past the vertices the tree has already settled.
+	 * @param from The Point2D you want to navigate from.
+	 * @param to The Point2D you want to navigate to.
+	 * @param car If true, returns a car-friendly route. If false, returns a bike-friendly.
+	 * @param fastest If true, return fastest path. If false, returns shortest.
+	 * @param fixedEnd True if to stays put while from is dragged, false if from stays put while to is dragged.
+	 * @param flip If true, the roads are returned first to last instead of reversed.
+	 * @return The path.
+	 * @throws NoPathFoundException Throws an exception if no road was found!
+	 */
+	public Road[] drag(Point2D from, Point2D to, boolean car, boolean fastest, boolean fixedEnd, boolean flip) throws NoPathFoundException {
+		Vertex fromVertex = closestVertex(from), toVertex = closestVertex(to);
+		if(!car) {fastest=false;}
+		List<Road> route = searches.get().grow(fromVertex.index(), toVertex.index(), RouteProfile.of(car, fastest), fixedEnd);
+		if(route == null) {throw new NoPathFoundException("Car: "+car+" ... Fastest: "+fastest);}
+		Road[] path = finalPath(toVertex, fromVertex, route, from, to, flip);
+		if(path.length < 1) {throw new NoPathFoundException();}
+		return path;
+	}
+
+	/**
+	 * Returns the vertex a route to or from a point starts at, on the road of an address or else the closest road.
+	 * @throws NoPathFoundException If there is no road.
+	 */
+	private static Vertex closestVertex(Point2D p) throws NoPathFoundException {
+		if(p instanceof Address) {return ((Address) p).road().closestVertex(p);}
+		Road road = Main.model().closestRoad(p);
+		if(road == null) {throw new NoPathFoundException();}
+		return road.closestVertex(p);
+	}
+
 	/**
 	 * Returns a route between two roads.
 	 * @param to The road you want to navigate to.
@@ -111,7 +127,7 @@ public class PathFinder implements Serializable {
 	public Road[] path(Road from, Road to, boolean car, boolean fastest, Point2D.Float point) throws NoPathFoundException {
 		return path(from.closestVertex(point), to.closestVertex(point), car, fastest);
 	}
-	
+
 	/**
 	 * Returns a route between two vertex-objects.
 	 * @param toVertex The vertex you want to navigate to.
@@ -122,107 +138,130 @@ public class PathFinder implements Serializable {
 	 * @throws NoPathFoundException Throws an exception if no road was found!
 	 */
 	public Road[] path(Vertex fromVertex, Vertex toVertex, boolean car, boolean fastest) throws NoPathFoundException {
-		if(fromVertex == null || toVertex == null) {throw new NoPathFoundException();}
-		if(!car) {fastest=false;}
-		
-		if (!dragging || (dragging && marked.size() == 0)) {
-			queue = new PriorityQueue<>();
-			fromVertex.minDist(0f);
-			queue.add(fromVertex);
-			calculatePath(toVertex, car, fastest);
-		} else if (!marked.contains(toVertex)) {
-			calculatePath(toVertex, car, fastest);
-		}
-		Road[] path = finalPath(toVertex);
-		if(!dragging) {cleanGraph();}
-		if(path.length < 1) {throw new NoPathFoundException();}
-		return path;
+		return path(fromVertex, toVertex, car, fastest, false);
+	}
+
+	/**
+	 * Returns a route between two vertex-objects.
+	 * @param toVertex The vertex you want to navigate to.
+	 * @param fromVertex The vertex you want to navigate from.
+	 * @param car If true, returns a car-friendly route. If false, returns a bike-friendly.
+	 * @param fastest If true, return fastest path. If false, returns shortest.
+	 * @param bidirectional If true, A* searches from both ends at once. Not used with a contraction hierarchy.
+	 * @return The path.
+	 * @throws NoPathFoundException Throws an exception if no road was found!
+	 */
+	public Road[] path(Vertex fromVertex, Vertex toVertex, boolean car, boolean fastest, boolean bidirectional) throws NoPathFoundException {
+		return path(fromVertex, toVertex, car, fastest, bidirectional, null, null, false);
 	}
-	
+
 	/**
-	 * Implementation of Dijkstra's Algorithm with A* heuristics.
-	 * @param target The algorithms stops once this vertex is reached.
-	 * @param car True to only search roads where cars are allowed, false to only search where bikes are allowed.
-	 * @param fastest True to find the fastest possible route. False to find the shortest.
-	 * @throws NoPathFoundException Thrown if queue is ever empty.
+	 * Finds the routes between many pairs of vertices, spread over a pool of threads.
+	 * @param from The vertices to navigate from.
+	 * @param to The vertices to navigate to, one for each vertex in from.
+	 * @param car If true, returns car-friendly routes. If false, returns bike-friendly.
+	 * @param fastest If true, return fastest paths. If false, returns shortest.
+	 * @param threads The number of threads searching.
+	 * @return The path of each pair (reversed order, like path), or null where no route was found.
+	 * @throws InterruptedException If interrupted while waiting for the routes.
 	 */
-	private void calculatePath(Vertex target, boolean car, boolean fastest) throws NoPathFoundException {
-		Vertex current;
-		while(!queue.isEmpty()) {
-			current = queue.poll();
-			
-			if(marked.contains(current)) {continue;} else {marked.add(current);}
-			
-			//Check where all edges go, and relax
-			for(Road edge : current.edges(car)) {
-				Vertex relax = edge.otherVertex(current);
-				if(relax(relax, edge, current, target, fastest)) {
-					relax.edgeTo(edge);
-					queue.add(relax);
+	public Road[][] paths(final Vertex[] from, final Vertex[] to, final boolean car, final boolean fastest, int threads) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Road[]>> futures = new ArrayList<>();
+			for(int i = 0; i < from.length; i++) {
+				final int pair = i;
+				futures.add(pool.submit(new Callable<Road[]>() {
+					public Road[] call() {
+						try {
+							return path(from[pair], to[pair], car, fastest);
+						} catch (NoPathFoundException e) {
+							return null;
+						}
+					}
+				}));
+			}
+			Road[][] paths = new Road[from.length][];
+			for(int i = 0; i < paths.length; i++) {
+				try {
+					paths[i] = futures.get(i).get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Route search failed", e.getCause());
 				}
 			}
-			if(current == target) {return;}
+			return paths;
+		} finally {
+			pool.shutdown();
 		}
-		//Empty queue means that no path could be found, clean and throw exception...
-		if(!dragging) {cleanGraph();}
-		throw new NoPathFoundException("Car: "+car+" ... Fastest: "+fastest);
 	}
-	
+
 	/**
-	 * Used by calculatePath - Dijkstra.
-	 * @param vertex The vertex being relaxed.
-	 * @param edge The edge (road), used for minDist.
-	 * @param current The vertex being inspected right now.
-	 * @param target The target vertex, used for heuristics.
-	 * @param fastest True for fast-heuristics, false for short-heuristics
-	 * @return Returns whether relaxation was successful.
+	 * Finds the route with the contraction hierarchy of the profile if there is one, otherwise with A*.
+	 * @param start The point the route starts at, or null for no walkways.
+	 * @param end The point the route ends at, or null for no walkways.
+	 * @param flip If true, the roads are returned first to last instead of reversed.
 	 */
-	private boolean relax(Vertex vertex, Road edge, Vertex current, Vertex target, boolean fastest) {
-		//Make sure to add them so we can 'clean' them after.
-		visited.add(vertex);
-		
-		//Relax it.
-		if(fastest) {
-			if(vertex.minDist() > current.minDist() + edge.travelTime()) {
-				vertex.minDist(current.minDist() + edge.travelTime());
-				Point2D v = edge.vertexPosition(vertex);
-				// (distance * 111323m) / (130km/t * (1000m/km) / (60min/time)) ca. = distance * 51.4
-				vertex.heuristic(v.distance(target.getPosition()) * 51.4);
-				return true;
-			}
-			return false;
+	private Road[] path(Vertex fromVertex, Vertex toVertex, boolean car, boolean fastest, boolean bidirectional,
+			Point2D start, Point2D end, boolean flip) throws NoPathFoundException {
+		if(fromVertex == null || toVertex == null) {throw new NoPathFoundException();}
+		if(!car) {fastest=false;}
+		RouteProfile profile = RouteProfile.of(car, fastest);
+		Search search = searches.get();
+
+		List<Road> route;
+		ContractionHierarchy hierarchy = hierarchy(profile);
+		if(hierarchy != null) {
+			route = hierarchy.route(fromVertex.index(), toVertex.index());
+			search.settled = hierarchy.settled();
+			search.heapOperations = hierarchy.heapOperations();
+			if(route != null) {Collections.reverse(route);}
 		} else {
-			if(vertex.minDist() > current.minDist() + edge.length()) {
-				vertex.minDist(current.minDist() + edge.length());
-				Point2D v = edge.vertexPosition(vertex);
-				vertex.heuristic(v.distance(target.getPosition()) * Model.METER_CONVERSION);
-				return true;
-			}
-			return false;
+			route = search.route(fromVertex.index(), toVertex.index(), profile, landmarks(profile), bidirectional);
 		}
+		if(route == null) {throw new NoPathFoundException("Car: "+car+" ... Fastest: "+fastest);}
+		Road[] path = finalPath(toVertex, fromVertex, route, start, end, flip);
+		if(path.length < 1) {throw new NoPathFoundException();}
+		return path;
 	}
 
 	/**
-	 * Used to read the correct path.
+	 * Returns a lower bound on the cost of going between two points, from the straight line between them.
+	 * @param fastest True for minutes at 130 km/h, false for meters.
+	 * @return The bound, 0 if a coordinate is NaN.
+	 */
+	private static double straight(double ax, double ay, double bx, double by, boolean fastest) {
+		double d = Math.sqrt((ax - bx) * (ax - bx) + (ay - by) * (ay - by));
+		if(Double.isNaN(d)) {return 0;}
+		// (distance * 111323m) / (130km/t * (1000m/km) / (60min/time)) ca. = distance * 51.4
+		return d * (fastest ? 51.4 : Model.METER_CONVERSION);
+	}
+
+	/**
+	 * Adds the walkways to a route, if needed.
 	 * @param current The last vertex (goal).
+	 * @param first The first vertex.
+	 * @param route The roads from the last vertex to the first.
+	 * @param start The point the route starts at, or null for no walkways.
+	 * @param end The point the route ends at, or null for no walkways.
+	 * @param flip If true, the roads are returned first to last instead.
 	 * @return An array of all roads to visit in order to get from the last vertex to the first (NOTICE! Reversed order!)
 	 */
-	private Road[] finalPath(Vertex current) {
+	private Road[] finalPath(Vertex current, Vertex first, List<Road> route, Point2D start, Point2D end, boolean flip) {
 		List<Road> path = new ArrayList<>();
-		
+
 		// Manipulate the path (end walkpath), if needed.
 		Vertex shared = null;
 		Road[] r = null;
 		Road endRoad = null, startRoad = null;
-		if(end != null && start != null) { 
+		if(end != null && start != null) {
 			if(end instanceof Address) {
 				endRoad = ((Address) end).road();
 			} else {
 				endRoad = Main.model().closestRoad(end);
 			}
-			
-			if(endRoad == current.edgeTo()) {
-				shared = current.edgeTo().otherVertex(current);
+
+			if(!route.isEmpty() && endRoad == route.get(0)) {
+				shared = endRoad.otherVertex(current);
 			} else {
 				shared = current;
 			}
@@ -230,13 +269,11 @@ public class PathFinder implements Serializable {
 			path.add(r[0]);
 			path.add(r[1]);
 		}
-		
+
 		// Save the path
-		while(current.edgeTo() != null) {
-			path.add(current.edgeTo());
-			current = current.edgeTo().otherVertex(current);
-		}
-		
+		path.addAll(route);
+		current = first;
+
 		// Manipulate the path (start-walkpath), if needed.
 		if(end != null && start != null) {
 			if(start instanceof Address) {
@@ -244,7 +281,7 @@ public class PathFinder implements Serializable {
 			} else {
 				startRoad = Main.model().closestRoad(start);
 			}
-			
+
 			if(startRoad == path.get(path.size()-1)) {
 				shared = path.get(path.size()-1).otherVertex(current);
 			} else {
@@ -253,28 +290,16 @@ public class PathFinder implements Serializable {
 			r = startRoad.walkWay(start, shared.getPosition());
 			path.add(r[1]);
 			path.add(r[0]);
-			
-			
+
+
 			path.remove(endRoad);
 			path.remove(startRoad);
 		}
-		end = null; start = null;
-		
-		if(flipPath) {Collections.reverse(path);}
+
+		if(flip) {Collections.reverse(path);}
 		return path.toArray(new Road[path.size()]);
 	}
-	
-	/**
-	 * "Clean" the graph after use, so it is ready for a new search.
-	 */
-	private void cleanGraph() {
-		queue = new PriorityQueue<Vertex>();
-		marked = new HashSet<Vertex>();
-		for(Vertex v : visited) {
-			v.reset();
-		}
-	}
-	
+
 	/**
 	 * Returns the vertex at index (i) from the PathFinder.
 	 * @param i Index
@@ -286,7 +311,71 @@ public class PathFinder implements Serializable {
 		}
 		return vertices[i];
 	}
-	
+
+	/**
+	 * Returns the number of vertices, the dummy vertex at index 0 included.
+	 * @return
+	 */
+	protected int vertices() {return vertices.length;}
+
+	/**
+	 * Returns the contraction hierarchy used for a kind of route, or null if routes are found with A*.
+	 * @param profile The kind of route.
+	 * @return
+	 */
+	public ContractionHierarchy hierarchy(RouteProfile profile) {
+		return hierarchies == null ? null : hierarchies[profile.ordinal()];
+	}
+
+	/**
+	 * Sets the contraction hierarchy used for a kind of route. It is saved with the model.
+	 * @param profile The kind of route.
+	 * @param hierarchy A hierarchy built from this PathFinder for the same profile, or null to use A* again.
+	 */
+	public void hierarchy(RouteProfile profile, ContractionHierarchy hierarchy) {
+		if(hierarchies == null) {hierarchies = new ContractionHierarchy[RouteProfile.values().length];}
+		hierarchies[profile.ordinal()] = hierarchy;
+	}
+
+	/**
+	 * Returns the landmarks used by A* for a kind of route, or null if A* only uses the straight line.
+	 * @param profile The kind of route.
+	 * @return
+	 */
+	public Landmarks landmarks(RouteProfile profile) {
+		return landmarks == null ? null : landmarks[profile.ordinal()];
+	}
+
+	/**
+	 * Sets the landmarks used by A* for a kind of route. They are saved with the model.
+	 * @param profile The kind of route.
+	 * @param alt Landmarks picked from this PathFinder for the same profile, or null to only use the straight line.
+	 */
+	public void landmarks(RouteProfile profile, Landmarks alt) {
+		if(landmarks == null) {landmarks = new Landmarks[RouteProfile.values().length];}
+		landmarks[profile.ordinal()] = alt;
+	}
+
+	/**
+	 * Returns the number of vertices settled by the last search on this thread, by A* or by the contraction hierarchy.
+	 * @return
+	 */
+	public int settled() {return searches.get().settled;}
+
+	/**
+	 * Returns the number of heap operations of the last search on this thread: vertices added, keys lowered and vertices polled.
+	 * @return
+	 */
+	public int heapOperations() {return searches.get().heapOperations;}
+
+	/**
+	 * Contracts the navigation graph for every kind of route, so routes are found with contraction hierarchies instead of A*.
+	 * Takes a while, meant to be done once before saving the model.
+	 */
+	public void contract() {
+		for(RouteProfile profile : RouteProfile.values()) {hierarchy(profile, new ContractionHierarchy(this, profile));}
+	}
+
 	/**
 	 * Makes it easier to translate vertex "id" into actual vertex.
 	 * @param i id the ID or vertex index
@@ -295,4 +384,219 @@ public class PathFinder implements Serializable {
 	public static Vertex vertex(int i) {
 		return Main.model().pathFinder().getVertex(i);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the navigation graph as adjacency arrays, built the first time it is used.
+	 * @return
+	 */
+	RoadGraph graph() {
+		RoadGraph g = graph;
+		if(g == null) {
+			synchronized(this) {
+				if(graph == null) {graph = new RoadGraph(vertices);}
+				g = graph;
+			}
+		}
+		return g;
+	}
+
+	private ThreadLocal<Search> searches() {
+		return new ThreadLocal<Search>() {
+			protected Search initialValue() {return new Search();}
+		};
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		searches = searches();
+	}
+
+	/**
+	 * The search state of one thread, in arrays indexed by Vertex.index and stamped with an epoch, so a new search costs nothing
+	 * and the vertices are never touched. Searches run over the RoadGraph, the inner loops allocate nothing.
+	 * A* searches forward from the start until the end is settled, keyed by the cost so far plus a lower bound on the cost to
+	 * the end: the straight line, or the landmarks if they give more.
+	 * Bidirectional A* also searches backward from the end over the edges into each vertex, so one-way roads and
+	 * roundabouts are only followed the way they may be driven. Both searches use the same potential, half the estimate
+	 * to the end minus half the estimate from the start, which keeps the two directions consistent with each other.
+	 * Then the best route met so far is final as soon as the smallest keys of the two searches add up to its cost.
+	 * While an end of a route is dragged, Dijkstra grows a tree from the other end instead. It is kept until another search
+	 * runs on the thread, and only grown until the dragged end is settled, since it settles vertices in order of their cost.
+	 */
+	private class Search {
+		private final float[] forward = new float[vertices.length], backward = new float[vertices.length], potential = new float[vertices.length];
+		private final int[] forwardStamp = new int[vertices.length], backwardStamp = new int[vertices.length], potentialStamp = new int[vertices.length];
+		private final int[] forwardDone = new int[vertices.length], backwardDone = new int[vertices.length];
+		private final int[] forwardParent = new int[vertices.length], backwardParent = new int[vertices.length];
+		private final Road[] forwardRoad = new Road[vertices.length], backwardRoad = new Road[vertices.length];
+		private final VertexHeap forwardHeap = new VertexHeap(vertices.length), backwardHeap = new VertexHeap(vertices.length);
+		private int epoch, settled, heapOperations, from, to;
+		private boolean fastest, bidirectional;
+		private Landmarks alt;
+		private RoadGraph graph;
+		private int treeRoot = -1; // The fixed end of the tree of the drag, -1 if there is none.
+		private boolean treeBackward;
+		private RouteProfile treeProfile;
+
+		/**
+		 * Finds the best route, or null if there is none.
+		 * @return The roads from the last vertex to the first (reversed order, like finalPath).
+		 */
+		List<Road> route(int from, int to, RouteProfile profile, Landmarks alt, boolean bidirectional) {
+			RoadGraph g = graph = graph();
+			byte mask = RoadGraph.mask(profile.car());
+			int cost = RoadGraph.cost(profile.fastest());
+			this.from = from;
+			this.to = to;
+			this.fastest = profile.fastest();
+			this.alt = alt;
+			this.bidirectional = bidirectional;
+			treeRoot = -1;
+			epoch++;
+			settled = 0;
+			forwardHeap.clear();
+			backwardHeap.clear();
+
+			// A* only meets the backward search at the end itself.
+			float best = Float.POSITIVE_INFINITY;
+			int meet = -1;
+			backwardStamp[to] = epoch;
+			backward[to] = 0;
+			backwardParent[to] = -1;
+			if(bidirectional) {backwardHeap.offer(to, -potential(to));}
+			forwardStamp[from] = epoch;
+			forward[from] = 0;
+			forwardParent[from] = -1;
+			forwardHeap.offer(from, potential(from));
+			if(from == to) {best = 0; meet = from;}
+
+			while(forwardHeap.size() > 0 && (!bidirectional || backwardHeap.size() > 0)) {
+				if(bidirectional && forwardHeap.peek() + backwardHeap.peek() >= best) {break;}
+				if(!bidirectional || forwardHeap.peek() <= backwardHeap.peek()) {
+					int v = forwardHeap.poll();
+					if(forwardDone[v] == epoch) {continue;}
+					forwardDone[v] = epoch;
+					settled++;
+					if(!bidirectional && v == to) {break;}
+					for(int e = g.outFirst[v]; e < g.outFirst[v + 1]; e++) {
+						if((g.outAccess[e] & mask) == 0) {continue;}
+						int w = g.outTarget[e];
+						float d = forward[v] + g.outCost[2 * e + cost];
+						if(forwardStamp[w] == epoch && forward[w] <= d) {continue;}
+						forwardStamp[w] = epoch;
+						forward[w] = d;
+						forwardParent[w] = v;
+						forwardRoad[w] = g.outRoad[e];
+						if(backwardStamp[w] == epoch && d + backward[w] < best) {best = d + backward[w]; meet = w;}
+						forwardHeap.offer(w, d + potential(w));
+					}
+				} else {
+					int v = backwardHeap.poll();
+					if(backwardDone[v] == epoch) {continue;}
+					backwardDone[v] = epoch;
+					settled++;
+					for(int e = g.inFirst[v]; e < g.inFirst[v + 1]; e++) {
+						if((g.inAccess[e] & mask) == 0) {continue;}
+						int u = g.inTarget[e];
+						float d = backward[v] + g.inCost[2 * e + cost];
+						if(backwardStamp[u] == epoch && backward[u] <= d) {continue;}
+						backwardStamp[u] = epoch;
+						backward[u] = d;
+						backwardParent[u] = v;
+						backwardRoad[u] = g.inRoad[e];
+						if(forwardStamp[u] == epoch && d + forward[u] < best) {best = d + forward[u]; meet = u;}
+						backwardHeap.offer(u, d - potential(u));
+					}
+				}
+			}
+			heapOperations = forwardHeap.operations() + backwardHeap.operations();
+			if(meet < 0) {return null;}
+
+			List<Road> route = new ArrayList<>();
+			for(int v = meet; backwardParent[v] >= 0; v = backwardParent[v]) {route.add(backwardRoad[v]);}
+			Collections.reverse(route);
+			for(int v = meet; forwardParent[v] >= 0; v = forwardParent[v]) {route.add(forwardRoad[v]);}
+			return route;
+		}
+
+		/**
+		 * Finds the best route with the tree of the drag, grown from the fixed end until the other end is settled.
+		 * @param backward True if the tree is grown backward from the end, over the edges into each vertex.
+		 * @return The roads from the last vertex to the first (reversed order, like route), or null if there is no route.
+		 */
+		List<Road> grow(int from, int to, RouteProfile profile, boolean backward) {
+			RoadGraph g = graph();
+			byte mask = RoadGraph.mask(profile.car());
+			int cost = RoadGraph.cost(profile.fastest());
+			int root = backward ? to : from, goal = backward ? from : to;
+			float[] dist = backward ? this.backward : forward;
+			int[] stamp = backward ? backwardStamp : forwardStamp, done = backward ? backwardDone : forwardDone;
+			int[] parent = backward ? backwardParent : forwardParent;
+			Road[] road = backward ? backwardRoad : forwardRoad;
+			VertexHeap heap = backward ? backwardHeap : forwardHeap;
+			int[] first = backward ? g.inFirst : g.outFirst, target = backward ? g.inTarget : g.outTarget;
+			float[] costs = backward ? g.inCost : g.outCost;
+			byte[] access = backward ? g.inAccess : g.outAccess;
+			Road[] roads = backward ? g.inRoad : g.outRoad;
+
+			if(treeRoot != root || treeBackward != backward || treeProfile != profile) {
+				treeRoot = root;
+				treeBackward = backward;
+				treeProfile = profile;
+				epoch++;
+				heap.clear();
+				stamp[root] = epoch;
+				dist[root] = 0;
+				parent[root] = -1;
+				heap.offer(root, 0);
+			}
+			settled = 0;
+			int operations = heap.operations();
+			while(done[goal] != epoch && heap.size() > 0) {
+				int v = heap.poll();
+				if(done[v] == epoch) {continue;}
+				done[v] = epoch;
+				settled++;
+				for(int e = first[v]; e < first[v + 1]; e++) {
+					if((access[e] & mask) == 0) {continue;}
+					int w = target[e];
+					float d = dist[v] + costs[2 * e + cost];
+					if(stamp[w] == epoch && dist[w] <= d) {continue;}
+					stamp[w] = epoch;
+					dist[w] = d;
+					parent[w] = v;
+					road[w] = roads[e];
+					heap.offer(w, d);
+				}
+			}
+			heapOperations = heap.operations() - operations;
+			if(done[goal] != epoch) {return null;}
+
+			List<Road> route = new ArrayList<>();
+			for(int v = goal; parent[v] >= 0; v = parent[v]) {route.add(road[v]);}
+			if(backward) {Collections.reverse(route);}
+			return route;
+		}
+
+		/**
+		 * Returns the potential of a vertex, calculated the first time it is reached in a search.
+		 */
+		private float potential(int v) {
+			if(potentialStamp[v] != epoch) {
+				potentialStamp[v] = epoch;
+				double toEnd = estimate(v, to);
+				potential[v] = (float) (bidirectional ? (toEnd - estimate(from, v)) / 2 : toEnd);
+			}
+			return potential[v];
+		}
+
+		/**
+		 * Returns a lower bound on the cost from a to b. Landmarks proving there is no route are ignored, an infinite potential would
+		 * push the other search the wrong way.
+		 */
+		private double estimate(int a, int b) {
+			double bound = alt == null ? 0 : alt.bound(a, b);
+			return Math.max(straight(graph.x[a], graph.y[a], graph.x[b], graph.y[b], fastest), Double.isInfinite(bound) ? 0 : bound);
+		}
+	}
+}
@@ -9,6 +9,8 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -17,6 +19,11 @@ import java.util.NoSuchElementException;
  */
 public class PolygonApprox implements Shape, Serializable {
     private static final long serialVersionUID = 16052016L;
+    public static final Comparator<PolygonApprox> LARGEST_FIRST = new Comparator<PolygonApprox>() { // Descending getSize.
+        public int compare(PolygonApprox a, PolygonApprox b) {
+            return Float.compare(b.getSize(), a.getSize());
+        }
+    };
     protected float[] coords;
     protected float bx, by, bw, bh;
     protected int nPoints;
@@ -111,6 +118,200 @@ public class PolygonApprox implements Shape, Serializable {
     	else { return new Point2D.Float(coords[coords.length-4], coords[coords.length-3]); }
     }
 
+    /**
+     * Returns the number of points in the PolygonApprox.
+     * @return
+     */
+    public int points() { return coords.length >> 1; }
+
+    /**
+     * Returns a simplified copy of this shape, used for drawing at low detail levels.
+     * Endpoints are always kept, so connected ways still meet, and closed rings stay closed rings.
+     * The simplified line never crosses itself where the original did not.
+     * @param tolerance The maximum distance (world space) a removed point may lie from the simplified line.
+     * @return A new PolygonApprox with fewer points, or this object if nothing could be removed.
+     */
+    public PolygonApprox simplify(float tolerance) {
+        float[] simple = simplify(coords, new int[] {0}, new int[] {coords.length >> 1}, tolerance)[0];
+        if(simple.length == coords.length) {return this;}
+        PolygonApprox pa = new PolygonApprox();
+        pa.coords = simple;
+        pa.nPoints = simple.length >> 1;
+        pa.init();
+        return pa;
+    }
+
+    /**
+     * Simplifies the rings or lines of one shape together: Douglas-Peucker on each of them, then points are put back
+     * until no two of the simplified segments cross, unless the original segments did. So a ring does not cross itself
+     * or the other rings of the shape, and even-odd filling punches no holes that were not there.
+     * Closed rings are split at the point furthest from the start, so they never collapse into a line.
+     * @param c The coordinate array.
+     * @param from Index of the first point (not coordinate) of each ring or line.
+     * @param n Number of points in each ring or line.
+     * @param tolerance The maximum allowed distance in world space.
+     * @return The kept coordinates of each ring or line.
+     */
+    protected static float[][] simplify(float[] c, int[] from, int[] n, float tolerance) {
+        boolean[][] keep = new boolean[from.length][];
+        for(int p = 0; p < from.length; p++) {keep[p] = keep(c, from[p], n[p], tolerance);}
+        while(uncross(c, from, n, keep)) {}
+
+        float[][] result = new float[from.length][];
+        for(int p = 0; p < from.length; p++) {
+            int kept = 0;
+            for(boolean b : keep[p]) {if(b) {kept++;}}
+            result[p] = new float[kept << 1];
+            int j = 0;
+            for(int i = 0; i < n[p]; i++) {
+                if(keep[p][i]) {
+                    result[p][j++] = c[(from[p] + i) << 1];
+                    result[p][j++] = c[((from[p] + i) << 1) + 1];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Douglas-Peucker simplification of a single ring or line.
+     * @return Whether each point is kept.
+     */
+    private static boolean[] keep(float[] c, int from, int n, float tolerance) {
+        boolean[] keep = new boolean[n];
+        if(n < 3) {Arrays.fill(keep, true); return keep;}
+        int last = n - 1;
+        keep[0] = true;
+        keep[last] = true;
+        int f = from << 1, l = (from + last) << 1;
+        if(c[f] == c[l] && c[f+1] == c[l+1]) {
+            // Closed ring, anchor at the point furthest from the start.
+            int split = 1;
+            double max = -1;
+            for(int i = 1; i < last; i++) {
+                double d = Point2D.distanceSq(c[f], c[f+1], c[(from + i) << 1], c[((from + i) << 1) + 1]);
+                if(d > max) {max = d; split = i;}
+            }
+            keep[split] = true;
+            // A third corner, so the ring keeps an area.
+            int third = split;
+            max = -1;
+            for(int i = 1; i < last; i++) {
+                double d = Line2D.ptLineDistSq(c[f], c[f+1], c[(from + split) << 1], c[((from + split) << 1) + 1], c[(from + i) << 1], c[((from + i) << 1) + 1]);
+                if(d > max) {max = d; third = i;}
+            }
+            keep[third] = true;
+            douglasPeucker(c, from, 0, Math.min(split, third), tolerance * tolerance, keep);
+            douglasPeucker(c, from, Math.min(split, third), Math.max(split, third), tolerance * tolerance, keep);
+            douglasPeucker(c, from, Math.max(split, third), last, tolerance * tolerance, keep);
+        } else {
+            douglasPeucker(c, from, 0, last, tolerance * tolerance, keep);
+        }
+        return keep;
+    }
+
+    /**
+     * Finds the simplified segments crossing another one, and keeps the removed point furthest from each of them.
+     * Segments sharing an end point touch but do not cross. The segments are swept from left to right,
+     * so only segments overlapping on the x axis are compared.
+     * @return True if a point was put back, and the segments must be checked again.
+     */
+    private static boolean uncross(float[] c, int[] from, int[] n, boolean[][] keep) {
+        int segments = 0;
+        for(int p = 0; p < from.length; p++) {
+            for(boolean b : keep[p]) {if(b) {segments++;}}
+            segments--;
+        }
+        if(segments < 2) {return false;}
+        int[] part = new int[segments], start = new int[segments], end = new int[segments];
+        long[] order = new long[segments];
+        int k = 0;
+        for(int p = 0; p < from.length; p++) {
+            int previous = 0;
+            for(int i = 1; i < n[p]; i++) {
+                if(!keep[p][i]) {continue;}
+                part[k] = p;
+                start[k] = from[p] + previous;
+                end[k] = from[p] + i;
+                float minX = Math.min(c[start[k] << 1], c[end[k] << 1]);
+                // Sorts like the float, negative ones included.
+                int bits = Float.floatToIntBits(minX);
+                bits ^= (bits >> 31) & 0x7fffffff;
+                order[k] = ((long) bits << 32) | k;
+                k++;
+                previous = i;
+            }
+        }
+        Arrays.sort(order);
+
+        boolean[] crossing = new boolean[segments];
+        for(int i = 0; i < segments; i++) {
+            int a = (int) order[i];
+            float ax1 = c[start[a] << 1], ay1 = c[(start[a] << 1) + 1], ax2 = c[end[a] << 1], ay2 = c[(end[a] << 1) + 1];
+            float maxX = Math.max(ax1, ax2), minY = Math.min(ay1, ay2), maxY = Math.max(ay1, ay2);
+            for(int j = i + 1; j < segments; j++) {
+                int b = (int) order[j];
+                float bx1 = c[start[b] << 1], by1 = c[(start[b] << 1) + 1], bx2 = c[end[b] << 1], by2 = c[(end[b] << 1) + 1];
+                if(Math.min(bx1, bx2) > maxX) {break;}
+                if(Math.max(by1, by2) < minY || Math.min(by1, by2) > maxY) {continue;}
+                if(same(ax1, ay1, bx1, by1) || same(ax1, ay1, bx2, by2) || same(ax2, ay2, bx1, by1) || same(ax2, ay2, bx2, by2)) {continue;}
+                if(Line2D.linesIntersect(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2)) {
+                    crossing[a] = true;
+                    crossing[b] = true;
+                }
+            }
+        }
+
+        boolean added = false;
+        for(int s = 0; s < segments; s++) {
+            if(!crossing[s] || end[s] - start[s] < 2) {continue;}
+            float x1 = c[start[s] << 1], y1 = c[(start[s] << 1) + 1], x2 = c[end[s] << 1], y2 = c[(end[s] << 1) + 1];
+            double max = -1;
+            int index = start[s] + 1;
+            for(int i = start[s] + 1; i < end[s]; i++) {
+                double d = Line2D.ptSegDistSq(x1, y1, x2, y2, c[i << 1], c[(i << 1) + 1]);
+                if(d > max) {max = d; index = i;}
+            }
+            keep[part[s]][index - from[part[s]]] = true;
+            added = true;
+        }
+        return added;
+    }
+
+    private static boolean same(float x1, float y1, float x2, float y2) {return x1 == x2 && y1 == y2;}
+
+    /**
+     * Marks the points to keep between start and end (both already kept). Uses a stack instead of recursion,
+     * coastlines easily have more points than the call stack allows.
+     */
+    private static void douglasPeucker(float[] c, int from, int start, int end, float toleranceSq, boolean[] keep) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = start;
+        stack[top++] = end;
+        while(top > 0) {
+            int e = stack[--top];
+            int s = stack[--top];
+            if(e - s < 2) {continue;}
+            float x1 = c[(from + s) << 1], y1 = c[((from + s) << 1) + 1];
+            float x2 = c[(from + e) << 1], y2 = c[((from + e) << 1) + 1];
+            double max = -1;
+            int index = s;
+            for(int i = s + 1; i < e; i++) {
+                double d = Line2D.ptSegDistSq(x1, y1, x2, y2, c[(from + i) << 1], c[((from + i) << 1) + 1]);
+                if(d > max) {max = d; index = i;}
+            }
+            if(max > toleranceSq) {
+                keep[index] = true;
+                if(top + 4 > stack.length) {stack = Arrays.copyOf(stack, stack.length << 1);}
+                stack[top++] = s;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = e;
+            }
+        }
+    }
+
     // Everything below this is from Troels' class
 
     public double distTo(Point2D p) {
@@ -123,16 +324,45 @@ public class PolygonApprox implements Shape, Serializable {
         return dist;
     }
 
-    public boolean contains(double _x, double _y) {
-        throw new UnsupportedOperationException("Unexpected call to PolygonApprox.contains(double,double)");
+    /**
+     * Even-odd test of whether the point lies inside the shape. Every ring is treated as closed,
+     * so holes in a MultiPolygonApprox are handled as well.
+     * @param x The x-coordinate (world space).
+     * @param y The y-coordinate (world space).
+     * @return True if the point is inside.
+     */
+    public boolean contains(double x, double y) {
+        if(x < bx || y < by || x > bx + bw || y > by + bh) {return false;}
+        boolean inside = false;
+        int n = points();
+        for(int start = 0, end; start < n; start = end) {
+            end = ringEnd(start);
+            for(int i = start, j = end - 1; i < end; j = i++) {
+                float xi = coords[i << 1], yi = coords[(i << 1) + 1], xj = coords[j << 1], yj = coords[(j << 1) + 1];
+                if((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {inside = !inside;}
+            }
+        }
+        return inside;
     }
 
     public boolean contains(Point2D p) {
-        throw new UnsupportedOperationException("Unexpected call to PolygonApprox.contains(Point2D)");
+        return contains(p.getX(), p.getY());
     }
 
+    /**
+     * Tests whether the area of the shape and the rectangle overlap.
+     * @param x The x-coordinate of the rectangle (world space).
+     * @param y The y-coordinate of the rectangle (world space).
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @return True if they overlap.
+     */
     public boolean intersects(double x, double y, double w, double h) {
-        throw new UnsupportedOperationException("Unexpected call to PolygonApprox.intersects(double,double,double,double)");
+        if(bx > x + w || by > y + h || bx + bw < x || by + bh < y) {return false;}
+        if(bx >= x && by >= y && bx + bw <= x + w && by + bh <= y + h) {return true;}
+        if(crossesEdge(x, y, w, h)) {return true;}
+        // No edge reaches into the rectangle, so either it lies inside the shape or they are apart.
+        return contains(x + w / 2, y + h / 2);
     }
 
     public boolean intersects(Rectangle2D r) {
@@ -143,12 +373,50 @@ public class PolygonApprox implements Shape, Serializable {
         return true;
     }
 
+    /**
+     * Tests whether the rectangle lies entirely inside the area of the shape.
+     * @param x The x-coordinate of the rectangle (world space).
+     * @param y The y-coordinate of the rectangle (world space).
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @return True if the whole rectangle is inside.
+     */
     public boolean contains(double x, double y, double w, double h) {
-        throw new UnsupportedOperationException("Unexpected call to PolygonApprox.contains(double,double,double,double)");
+        if(x < bx || y < by || x + w > bx + bw || y + h > by + bh) {return false;}
+        return !crossesEdge(x, y, w, h) && contains(x + w / 2, y + h / 2);
     }
 
     public boolean contains(Rectangle2D r) {
-        throw new UnsupportedOperationException("Unexpected call to PolygonApprox.contains(Rectangle2D)");
+        return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    /**
+     * Returns the index of the point after the last point in the ring starting at start.
+     * A PolygonApprox is a single ring, MultiPolygonApprox splits at every SEG_MOVETO.
+     * @param start Index of the first point in the ring.
+     * @return
+     */
+    protected int ringEnd(int start) {
+        return points();
+    }
+
+    /**
+     * Checks whether any edge of the shape, including the closing edge of each ring, touches the rectangle.
+     */
+    private boolean crossesEdge(double x, double y, double w, double h) {
+        double maxX = x + w, maxY = y + h;
+        int n = points();
+        for(int start = 0, end; start < n; start = end) {
+            end = ringEnd(start);
+            for(int i = start, j = end - 1; i < end; j = i++) {
+                float x1 = coords[j << 1], y1 = coords[(j << 1) + 1], x2 = coords[i << 1], y2 = coords[(i << 1) + 1];
+                if(Math.max(x1, x2) < x || Math.min(x1, x2) > maxX || Math.max(y1, y2) < y || Math.min(y1, y2) > maxY) {continue;}
+                if(Line2D.linesIntersect(x1, y1, x2, y2, x, y, maxX, y) || Line2D.linesIntersect(x1, y1, x2, y2, maxX, y, maxX, maxY)
+                        || Line2D.linesIntersect(x1, y1, x2, y2, maxX, maxY, x, maxY) || Line2D.linesIntersect(x1, y1, x2, y2, x, maxY, x, y)
+                        || (x2 >= x && x2 <= maxX && y2 >= y && y2 <= maxY)) {return true;}
+            }
+        }
+        return false;
     }
 
     public PathIterator getPathIterator(AffineTransform at) {
@@ -158,25 +426,84 @@ public class PolygonApprox implements Shape, Serializable {
     }
 
     private PathIterator standardPathIterator(){
-        return new PolygonApproxIterator(new AffineTransform(), 0f);
+        return new PolygonApproxIterator(this, new AffineTransform(), 0f);
     }
 
     public PathIterator getPathIterator(AffineTransform at, float pixelsq) {
-        return new PolygonApproxIterator(at, pixelsq);
+        return new PolygonApproxIterator(this, at, pixelsq);
     }
 
     public PathIterator getPathIterator(AffineTransform at, double flatness) {
-        return new PolygonApproxIterator(at, (float) (flatness * flatness));
+        return new PolygonApproxIterator(this, at, (float) (flatness * flatness));
     }
 
-    protected class PolygonApproxIterator implements PathIterator {
+    /**
+     * Returns the index of the next point to draw, skipping points closer to the point at index than the square root of approx.
+     * @param c The coordinates to measure on, coords or a projection of it.
+     * @param index The index of the current point in c.
+     * @param approx The squared distance below which points are skipped.
+     * @return
+     */
+    protected int next(float[] c, int index, float approx) {
+        float fx = c[index];
+        float fy = c[index+1];
+        index += 2;
+        while (index < c.length - 2 &&
+                distSq(fx, fy, c[index], c[index+1]) < approx) index += 2;
+        return index;
+    }
+
+    /**
+     * Returns the type of the segment ending at the point at index.
+     * @param index The index of the point in coords.
+     * @return
+     */
+    protected int segment(int index) {
+        return index == 0 ? PathIterator.SEG_MOVETO : PathIterator.SEG_LINETO;
+    }
+
+    protected static float distSq(float x1, float y1, float x2, float y2) {
+        float dx = x1 - x2;
+        float dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Walks the points of a PolygonApprox, skipping those closer to the previous point than a pixel.
+     * Can be moved to another shape, so a single iterator may be reused for shape after shape.
+     * May walk a projection of the points instead, see ScreenCache.
+     */
+    protected static class PolygonApproxIterator implements PathIterator {
+        protected PolygonApprox shape;
+        protected float[] points;
         protected AffineTransform at;
         protected int index;
         protected float approx;
 
-        public PolygonApproxIterator(AffineTransform _at, float _pixelsq) {
+        public PolygonApproxIterator(PolygonApprox _shape, AffineTransform _at, float _pixelsq) {
+            reset(_shape, _at, _pixelsq);
+        }
+
+        /**
+         * Starts over on the given shape.
+         * @return This iterator.
+         */
+        protected PolygonApproxIterator reset(PolygonApprox _shape, AffineTransform _at, float _pixelsq) {
+            return reset(_shape, _shape == null ? null : _shape.coords, _at, _pixelsq);
+        }
+
+        /**
+         * Starts over on the given shape, walking other coordinates than its own.
+         * @param _points The points of the shape in another space, as many as in coords.
+         * @return This iterator.
+         */
+        protected PolygonApproxIterator reset(PolygonApprox _shape, float[] _points, AffineTransform _at, float _pixelsq) {
+            shape = _shape;
+            points = _points;
             at = _at;
             approx = _pixelsq;
+            index = 0;
+            return this;
         }
 
         public int getWindingRule() {
@@ -184,45 +511,40 @@ public class PolygonApprox implements Shape, Serializable {
         }
 
         public boolean isDone() {
-            return index >= coords.length;
-        }
-
-        protected float distSq(float x1, float y1, float x2, float y2) {
-            float dx = x1 - x2;
-            float dy = y1 - y2;
-            return dx * dx + dy * dy;
+            return index >= points.length;
         }
 
         public void next() {
-            float fx = coords[index];
-            float fy = coords[index+1];
-            index += 2;
-            while (index < coords.length - 2 &&
-                    distSq(fx, fy, coords[index], coords[index+1]) < approx) index += 2;
+            index = shape.next(points, index, approx);
         }
 
-        public int currentSegment(float[] c) {
+        private int segment() {
             if (isDone()) {
                 throw new NoSuchElementException("poly approx iterator out of bounds");
             }
-            int type;
-            if (index == 0) {
-                c[0] = coords[0];
-                c[1] = coords[1];
-                type = SEG_MOVETO;
-            } else {
-                c[0] = coords[index];
-                c[1] = coords[index+1];
-                type = SEG_LINETO;
-            }
+            return shape.segment(index);
+        }
+
+        public int currentSegment(float[] c) {
+            int type = segment();
+            c[0] = points[index];
+            c[1] = points[index+1];
             if (at != null) {
                 at.transform(c, 0, c, 0, 1);
             }
             return type;
         }
 
-        public int currentSegment(double[] coords) {
-            throw new UnsupportedOperationException("Unexpected call to PolygonApprox.currentSegment(double[])");
+        public int currentSegment(double[] c) {
+            int type = segment();
+            c[0] = points[index];
+            c[1] = points[index+1];
+            if (at != null) {
+                at.transform(c, 0, c, 0, 1);
+            }
+            c[0] = (float) c[0]; // Same points as the float version.
+            c[1] = (float) c[1];
+            return type;
         }
     }
 
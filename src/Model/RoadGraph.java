@@ -0,0 +1,111 @@
+package Model;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import enums.RoadAccess;
+
+/**
+ * The navigation graph as adjacency arrays, for the searches over it. The edges out of vertex v are the indices from
+ * outFirst[v] up to outFirst[v+1], the edges into it those from inFirst[v] up to inFirst[v+1], so a one-way road is only an edge
+ * out of the vertex it may be driven from. Every edge has the vertex at its other end, its road, its travel time and length
+ * after each other in the cost array, and the kinds of traffic allowed on it as bits.
+ * Searching it needs no allocation and no look-ups through the model. Immutable once built.
+ */
+class RoadGraph {
+	static final byte CAR = 1, BIKE = 2;
+	final int[] outFirst, outTarget, inFirst, inTarget;
+	final float[] outCost, inCost; // Minutes at index 2*e, meters at 2*e+1.
+	final byte[] outAccess, inAccess;
+	final Road[] outRoad, inRoad;
+	final float[] x, y; // The position of every vertex, NaN if it has no roads.
+
+	/**
+	 * Builds the graph in two passes: count the edges of each vertex, then fill them in.
+	 * @param vertices The vertices of the PathFinder, by index.
+	 */
+	RoadGraph(Vertex[] vertices) {
+		int n = vertices.length;
+		outFirst = new int[n + 1];
+		inFirst = new int[n + 1];
+		x = new float[n];
+		y = new float[n];
+		Arrays.fill(x, Float.NaN);
+		Arrays.fill(y, Float.NaN);
+		for(int v = 0; v < n; v++) {
+			if(vertices[v] == null) {continue;}
+			for(Road r : vertices[v].edges()) {
+				int w = r.startIndex() == v ? r.endIndex() : r.startIndex();
+				if(w == v || w < 0 || w >= n || access(r) == 0) {continue;}
+				outFirst[v + 1]++;
+				inFirst[w + 1]++;
+			}
+		}
+		for(int i = 1; i <= n; i++) {
+			outFirst[i] += outFirst[i-1];
+			inFirst[i] += inFirst[i-1];
+		}
+		outTarget = new int[outFirst[n]];
+		outCost = new float[2 * outTarget.length];
+		outAccess = new byte[outTarget.length];
+		outRoad = new Road[outTarget.length];
+		inTarget = new int[inFirst[n]];
+		inCost = new float[2 * inTarget.length];
+		inAccess = new byte[inTarget.length];
+		inRoad = new Road[inTarget.length];
+		int[] outFill = new int[n], inFill = new int[n];
+		for(int v = 0; v < n; v++) {
+			if(vertices[v] == null) {continue;}
+			for(Road r : vertices[v].edges()) {
+				int w = r.startIndex() == v ? r.endIndex() : r.startIndex();
+				byte access = access(r);
+				if(w == v || w < 0 || w >= n || access == 0) {continue;}
+				int e = outFirst[v] + outFill[v]++;
+				outTarget[e] = w;
+				outCost[2 * e] = r.travelTime();
+				outCost[2 * e + 1] = r.length();
+				outAccess[e] = access;
+				outRoad[e] = r;
+				e = inFirst[w] + inFill[w]++;
+				inTarget[e] = v;
+				inCost[2 * e] = r.travelTime();
+				inCost[2 * e + 1] = r.length();
+				inAccess[e] = access;
+				inRoad[e] = r;
+				position(v, r.startIndex() == v ? r.startPoint() : r.endPoint());
+				position(w, r.startIndex() == w ? r.startPoint() : r.endPoint());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of vertices, the dummy vertex at index 0 included.
+	 * @return
+	 */
+	int vertices() {return x.length;}
+
+	/**
+	 * Returns the access bit of a kind of traffic.
+	 * @param car True for cars, false for bikes.
+	 * @return
+	 */
+	static byte mask(boolean car) {return car ? CAR : BIKE;}
+
+	/**
+	 * Returns the offset into the cost arrays of a kind of route: 0 for the travel time, 1 for the length.
+	 * @param fastest True for the fastest route, false for the shortest.
+	 * @return
+	 */
+	static int cost(boolean fastest) {return fastest ? 0 : 1;}
+
+	private void position(int v, Point2D p) {
+		if(!Float.isNaN(x[v])) {return;}
+		x[v] = (float) p.getX();
+		y[v] = (float) p.getY();
+	}
+
+	private static byte access(Road r) {
+		if(r.access() == RoadAccess.ALLALLOWED) {return CAR | BIKE;}
+		if(r.access() == RoadAccess.ONLYCARS) {return CAR;}
+		if(r.access() == RoadAccess.ONLYBIKE) {return BIKE;}
+		return 0;
+	}
+}
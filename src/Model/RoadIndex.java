@@ -0,0 +1,268 @@
+package Model;
+import java.util.List;
+
+/**
+ * A uniform grid over every segment of the navigation roads, used to snap points onto the road network.
+ * Segments are stored as (road, offset) pairs in flat arrays, and queries do not allocate anything.
+ */
+public class RoadIndex {
+	private static final float CELL_SIZE = 0.004f; // ~450m, roughly twice the closestRoad tolerance.
+	private Road[] roads;
+	private float[] roadLength;
+	private int[] segRoad, segOffset, roadFirstSeg;
+	private float[] segStart;
+	private int[] cellStart, cellSegs;
+	private float minX, minY;
+	private int cols, rows;
+
+	/**
+	 * Builds the index from the given roads.
+	 * @param list Road objects expected, anything else is ignored.
+	 */
+	public RoadIndex(List<? extends PolygonApprox> list) {
+		int roadCount = 0, segCount = 0;
+		minX = Float.POSITIVE_INFINITY; minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for(PolygonApprox pa : list) {
+			if(!(pa instanceof Road) || pa.points() < 2) {continue;}
+			roadCount++;
+			segCount += pa.points() - 1;
+			minX = Math.min(minX, pa.getMinX()); maxX = Math.max(maxX, pa.getMaxX());
+			minY = Math.min(minY, pa.getMinY()); maxY = Math.max(maxY, pa.getMaxY());
+		}
+		roads = new Road[roadCount];
+		roadLength = new float[roadCount];
+		segRoad = new int[segCount];
+		segOffset = new int[segCount];
+		segStart = new float[segCount];
+		roadFirstSeg = new int[roadCount + 1];
+		if(roadCount == 0) {minX = 0; minY = 0; maxX = 0; maxY = 0;}
+		cols = (int) ((maxX - minX) / CELL_SIZE) + 1;
+		rows = (int) ((maxY - minY) / CELL_SIZE) + 1;
+
+		int r = 0, s = 0;
+		for(PolygonApprox pa : list) {
+			if(!(pa instanceof Road) || pa.points() < 2) {continue;}
+			roads[r] = (Road) pa;
+			roadFirstSeg[r] = s;
+			float[] c = pa.coords;
+			float length = 0;
+			for(int i = 0; i < pa.points() - 1; i++) {
+				segRoad[s] = r;
+				segOffset[s] = i;
+				segStart[s] = length;
+				length += (float) Math.hypot(c[(i+1) << 1] - c[i << 1], c[((i+1) << 1) + 1] - c[(i << 1) + 1]);
+				s++;
+			}
+			roadLength[r++] = length;
+		}
+		roadFirstSeg[roadCount] = segCount;
+
+		// Two passes, first counting the segments in each cell, then filling them in.
+		cellStart = new int[cols * rows + 1];
+		for(int i = 0; i < segCount; i++) {
+			int x0 = cellX(segMin(i, 0)), x1 = cellX(segMax(i, 0)), y0 = cellY(segMin(i, 1)), y1 = cellY(segMax(i, 1));
+			for(int y = y0; y <= y1; y++) {
+				for(int x = x0; x <= x1; x++) {cellStart[y * cols + x + 1]++;}
+			}
+		}
+		for(int i = 1; i < cellStart.length; i++) {cellStart[i] += cellStart[i-1];}
+		cellSegs = new int[cellStart[cellStart.length-1]];
+		int[] fill = new int[cols * rows];
+		for(int i = 0; i < segCount; i++) {
+			int x0 = cellX(segMin(i, 0)), x1 = cellX(segMax(i, 0)), y0 = cellY(segMin(i, 1)), y1 = cellY(segMax(i, 1));
+			for(int y = y0; y <= y1; y++) {
+				for(int x = x0; x <= x1; x++) {
+					int cell = y * cols + x;
+					cellSegs[cellStart[cell] + fill[cell]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the point on the road network closest to (x, y).
+	 * @param x The x-coordinate in world space.
+	 * @param y The y-coordinate in world space.
+	 * @param maxDist Roads further away than this (world space) are ignored.
+	 * @param snap Receives the result, left untouched if nothing was found.
+	 * @return True if a road was found within maxDist.
+	 */
+	public boolean nearest(double x, double y, double maxDist, RoadSnap snap) {
+		if(segRoad.length == 0) {return false;}
+		if(x < minX - maxDist || y < minY - maxDist || x > minX + cols * CELL_SIZE + maxDist || y > minY + rows * CELL_SIZE + maxDist) {return false;}
+		int cx = cellX(x), cy = cellY(y);
+		double best = maxDist * maxDist;
+		int bestSeg = -1;
+		double bestT = 0;
+		int maxRing = Math.max(cols, rows);
+		for(int ring = 0; ring <= maxRing; ring++) {
+			double bound = (ring - 1) * CELL_SIZE;
+			if(ring > 1 && bound * bound > best) {break;}
+			for(int gy = cy - ring; gy <= cy + ring; gy++) {
+				if(gy < 0 || gy >= rows) {continue;}
+				boolean edgeRow = gy == cy - ring || gy == cy + ring;
+				for(int gx = cx - ring; gx <= cx + ring; gx += edgeRow ? 1 : 2 * ring) {
+					if(gx >= 0 && gx < cols) {
+						int cell = gy * cols + gx;
+						for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+							int seg = cellSegs[k];
+							double t = project(seg, x, y);
+							double d2 = distSq(seg, t, x, y);
+							if(d2 < best) {best = d2; bestSeg = seg; bestT = t;}
+						}
+					}
+					if(ring == 0) {break;}
+				}
+			}
+		}
+		if(bestSeg < 0) {return false;}
+		fill(bestSeg, bestT, Math.sqrt(best), snap);
+		return true;
+	}
+
+	/**
+	 * Finds the closest point on each road near (x, y), keeping the roads closest to the point.
+	 * @param x The x-coordinate in world space.
+	 * @param y The y-coordinate in world space.
+	 * @param radius Roads further away than this (world space) are ignored.
+	 * @param out Receives one snap per road, sorted by distance. At most out.length roads are returned.
+	 * @return The number of snaps written to out.
+	 */
+	public int near(double x, double y, double radius, RoadSnap[] out) {
+		if(segRoad.length == 0 || out.length == 0) {return 0;}
+		int x0 = cellX(x - radius), x1 = cellX(x + radius), y0 = cellY(y - radius), y1 = cellY(y + radius);
+		double r2 = radius * radius;
+		int n = 0, worst = -1;
+		for(int gy = y0; gy <= y1; gy++) {
+			for(int gx = x0; gx <= x1; gx++) {
+				int cell = gy * cols + gx;
+				for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int seg = cellSegs[k];
+					double t = project(seg, x, y);
+					double d2 = distSq(seg, t, x, y);
+					if(d2 > r2) {continue;}
+					double d = Math.sqrt(d2);
+					int r = segRoad[seg], found = -1;
+					for(int i = 0; i < n; i++) {
+						if(out[i].roadId == r) {found = i; break;}
+					}
+					if(found >= 0) {
+						if(d < out[found].distance) {fill(seg, t, d, out[found]); if(found == worst) {worst = worst(out, n);}}
+					} else if(n < out.length) {
+						fill(seg, t, d, out[n++]);
+						if(worst < 0 || d > out[worst].distance) {worst = n - 1;}
+					} else if(d < out[worst].distance) {
+						fill(seg, t, d, out[worst]);
+						worst = worst(out, n);
+					}
+				}
+			}
+		}
+		// Insertion sort, n is small.
+		for(int i = 1; i < n; i++) {
+			RoadSnap tmp = out[i];
+			int j = i - 1;
+			while(j >= 0 && out[j].distance > tmp.distance) {out[j+1] = out[j]; j--;}
+			out[j+1] = tmp;
+		}
+		return n;
+	}
+
+	/**
+	 * Finds the point on a single road closest to (x, y).
+	 * @param roadId The id of the road in this index, see RoadSnap.roadId().
+	 * @param x The x-coordinate in world space.
+	 * @param y The y-coordinate in world space.
+	 * @param snap Receives the result.
+	 */
+	public void project(int roadId, double x, double y, RoadSnap snap) {
+		double best = Double.POSITIVE_INFINITY, bestT = 0;
+		int bestSeg = roadFirstSeg[roadId];
+		for(int seg = roadFirstSeg[roadId]; seg < roadFirstSeg[roadId + 1]; seg++) {
+			double t = project(seg, x, y);
+			double d2 = distSq(seg, t, x, y);
+			if(d2 < best) {best = d2; bestSeg = seg; bestT = t;}
+		}
+		fill(bestSeg, bestT, Math.sqrt(best), snap);
+	}
+
+	/**
+	 * Returns the number of roads in the index.
+	 * @return
+	 */
+	public int roads() {return roads.length;}
+
+	/**
+	 * Returns the road with the given id.
+	 * @param roadId The id of the road in this index.
+	 * @return
+	 */
+	public Road road(int roadId) {return roads[roadId];}
+
+	/**
+	 * Returns the number of segments in the index.
+	 * @return
+	 */
+	public int segments() {return segRoad.length;}
+
+	/**
+	 * Writes the projected point of segment seg at t into the snap.
+	 */
+	private void fill(int seg, double t, double distance, RoadSnap snap) {
+		int r = segRoad[seg];
+		float[] c = roads[r].coords;
+		int o = segOffset[seg] << 1;
+		float dx = c[o+2] - c[o], dy = c[o+3] - c[o+1];
+		snap.road = roads[r];
+		snap.roadId = r;
+		snap.segment = segOffset[seg];
+		snap.x = (float) (c[o] + t * dx);
+		snap.y = (float) (c[o+1] + t * dy);
+		snap.fraction = roadLength[r] > 0 ? (float) ((segStart[seg] + t * Math.hypot(dx, dy)) / roadLength[r]) : 0;
+		snap.distance = distance;
+	}
+
+	/**
+	 * Returns how far along the segment (0 to 1) the point closest to (x, y) is.
+	 */
+	private double project(int seg, double x, double y) {
+		float[] c = roads[segRoad[seg]].coords;
+		int o = segOffset[seg] << 1;
+		double dx = c[o+2] - c[o], dy = c[o+3] - c[o+1];
+		double len2 = dx * dx + dy * dy;
+		double t = len2 > 0 ? ((x - c[o]) * dx + (y - c[o+1]) * dy) / len2 : 0;
+		return t < 0 ? 0 : t > 1 ? 1 : t;
+	}
+
+	private double distSq(int seg, double t, double x, double y) {
+		float[] c = roads[segRoad[seg]].coords;
+		int o = segOffset[seg] << 1;
+		double px = c[o] + t * (c[o+2] - c[o]) - x, py = c[o+1] + t * (c[o+3] - c[o+1]) - y;
+		return px * px + py * py;
+	}
+
+	private static int worst(RoadSnap[] out, int n) {
+		int worst = 0;
+		for(int i = 1; i < n; i++) {
+			if(out[i].distance > out[worst].distance) {worst = i;}
+		}
+		return worst;
+	}
+
+	private float segMin(int seg, int axis) {
+		float[] c = roads[segRoad[seg]].coords;
+		int o = segOffset[seg] << 1;
+		return Math.min(c[o + axis], c[o + 2 + axis]);
+	}
+
+	private float segMax(int seg, int axis) {
+		float[] c = roads[segRoad[seg]].coords;
+		int o = segOffset[seg] << 1;
+		return Math.max(c[o + axis], c[o + 2 + axis]);
+	}
+
+	private int cellX(double x) {return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / CELL_SIZE)));}
+
+	private int cellY(double y) {return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / CELL_SIZE)));}
+}
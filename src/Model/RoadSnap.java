@@ -0,0 +1,64 @@
+package Model;
+
+/**
+ * The result of snapping a point onto the road network with a RoadIndex.
+ * Objects are meant to be reused between queries.
+ */
+public class RoadSnap {
+	Road road;
+	int roadId, segment;
+	float x, y, fraction;
+	double distance;
+
+	/**
+	 * Returns a copy of this snap.
+	 */
+	RoadSnap copy() {
+		RoadSnap snap = new RoadSnap();
+		snap.road = road; snap.roadId = roadId; snap.segment = segment;
+		snap.x = x; snap.y = y; snap.fraction = fraction; snap.distance = distance;
+		return snap;
+	}
+
+	/**
+	 * Returns the road the point was snapped to.
+	 * @return
+	 */
+	public Road road() {return road;}
+
+	/**
+	 * Returns the id of the road in the RoadIndex that produced this snap.
+	 * @return
+	 */
+	public int roadId() {return roadId;}
+
+	/**
+	 * Returns the index of the first point of the closest segment on the road.
+	 * @return
+	 */
+	public int segment() {return segment;}
+
+	/**
+	 * Returns the x-coordinate of the projected point (world space).
+	 * @return
+	 */
+	public float x() {return x;}
+
+	/**
+	 * Returns the y-coordinate of the projected point (world space).
+	 * @return
+	 */
+	public float y() {return y;}
+
+	/**
+	 * Returns how far along the road the projected point is, from 0 at the start to 1 at the end (drawing order).
+	 * @return
+	 */
+	public float fraction() {return fraction;}
+
+	/**
+	 * Returns the distance from the query point to the road (world space).
+	 * @return
+	 */
+	public double distance() {return distance;}
+}
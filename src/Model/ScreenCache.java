@@ -0,0 +1,149 @@
+package Model;
+
+import java.awt.BasicStroke;
+import java.awt.geom.AffineTransform;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * Keeps shapes projected to the screen, so panning draws them without transforming a single point.
+ * Points are projected in bulk, a whole shape at a time, with the transform of the frame that first drew them.
+ * As a pan only changes the translation, later frames at the same zoom and rotation draw the same points
+ * with the origin of the Graphics moved. Zooming or rotating projects again.
+ * Kept per leaf node, leaf nodes not drawn in a frame are dropped. Not thread safe, meant for one paint at a time.
+ */
+public class ScreenCache {
+	private static final double MAX_OFFSET = 1 << 20; // Pixels panned before projecting again, floats lose sub-pixel precision further out.
+	private final AffineTransform origin = new AffineTransform(), offset = new AffineTransform();
+	private final IdentityHashMap<PolygonApprox[], Leaf> leafs = new IdentityHashMap<>();
+	private final IdentityHashMap<BasicStroke, BasicStroke> strokes = new IdentityHashMap<>();
+	private boolean valid;
+	private int frame, used;
+	private long projections, reused, projectedPoints;
+
+	/**
+	 * The projected points of the shapes in one leaf node, filled in as they are drawn.
+	 */
+	private static class Leaf {
+		final float[][] points;
+		int frame;
+
+		Leaf(int size) {points = new float[size][];}
+	}
+
+	/**
+	 * Starts a frame drawn with the given transform. Projects again if the zoom or rotation changed.
+	 * @param at The transform from world space to device space.
+	 * @return The transform to draw the projected points with, a translation. Reused by the next frame.
+	 */
+	public AffineTransform begin(AffineTransform at) {
+		double dx = at.getTranslateX() - origin.getTranslateX(), dy = at.getTranslateY() - origin.getTranslateY();
+		if(!valid || at.getScaleX() != origin.getScaleX() || at.getScaleY() != origin.getScaleY()
+				|| at.getShearX() != origin.getShearX() || at.getShearY() != origin.getShearY()
+				|| Math.abs(dx) > MAX_OFFSET || Math.abs(dy) > MAX_OFFSET) {
+			leafs.clear();
+			strokes.clear();
+			origin.setTransform(at);
+			dx = 0;
+			dy = 0;
+			valid = true;
+			projections++;
+		} else {
+			reused++;
+		}
+		frame++;
+		used = 0;
+		offset.setToTranslation(dx, dy);
+		return offset;
+	}
+
+	/**
+	 * Returns the projected points of a leaf node, an entry per shape that is null until points(...) fills it in.
+	 * @param shapes The leaf node.
+	 * @return
+	 */
+	public float[][] leaf(PolygonApprox[] shapes) {
+		Leaf leaf = leafs.get(shapes);
+		if(leaf == null || leaf.points.length != shapes.length) {leaf = new Leaf(shapes.length); leafs.put(shapes, leaf);}
+		if(leaf.frame != frame) {leaf.frame = frame; used++;}
+		return leaf.points;
+	}
+
+	/**
+	 * Returns the projected points of a shape in a leaf node, projecting them the first time.
+	 * @param leaf The result of leaf(shapes).
+	 * @param shapes The leaf node.
+	 * @param i The index of the shape in the leaf node.
+	 * @return The points in device space, before the translation returned by begin.
+	 */
+	public float[] points(float[][] leaf, PolygonApprox[] shapes, int i) {
+		float[] points = leaf[i];
+		if(points == null) {
+			float[] coords = shapes[i].coords;
+			points = leaf[i] = new float[coords.length];
+			origin.transform(coords, 0, points, 0, coords.length >> 1);
+			projectedPoints += coords.length >> 1;
+		}
+		return points;
+	}
+
+	/**
+	 * Returns a stroke drawing the same lines as the given one does in world space, for drawing projected points.
+	 * @param stroke A stroke in world space.
+	 * @return
+	 */
+	public BasicStroke stroke(BasicStroke stroke) {
+		BasicStroke scaled = strokes.get(stroke);
+		if(scaled == null) {
+			float scale = (float) Math.sqrt(Math.abs(origin.getDeterminant()));
+			float[] dash = stroke.getDashArray();
+			if(dash != null) {
+				dash = dash.clone();
+				for(int i = 0; i < dash.length; i++) {dash[i] *= scale;}
+			}
+			scaled = new BasicStroke(stroke.getLineWidth() * scale, stroke.getEndCap(), stroke.getLineJoin(),
+					stroke.getMiterLimit(), dash, stroke.getDashPhase() * scale);
+			strokes.put(stroke, scaled);
+		}
+		return scaled;
+	}
+
+	/**
+	 * Ends a frame, dropping the leaf nodes it did not draw.
+	 */
+	public void end() {
+		if(leafs.size() == used) {return;} // Nothing to drop, and no iterator allocated.
+		for(Iterator<Leaf> it = leafs.values().iterator(); it.hasNext(); ) {
+			if(it.next().frame != frame) {it.remove();}
+		}
+	}
+
+	/**
+	 * Forgets every projection, the next frame projects again.
+	 */
+	public void invalidate() {valid = false;}
+
+	/**
+	 * Returns how many frames projected from scratch, because of a zoom, a rotation or an invalidate.
+	 * @return
+	 */
+	public long projections() {return projections;}
+
+	/**
+	 * Returns how many frames reused the projection of the previous frame.
+	 * @return
+	 */
+	public long reused() {return reused;}
+
+	/**
+	 * Returns the total number of points projected.
+	 * @return
+	 */
+	public long projectedPoints() {return projectedPoints;}
+
+	/**
+	 * Returns the number of leaf nodes holding projected points.
+	 * @return
+	 */
+	public int leafs() {return leafs.size();}
+}
@@ -0,0 +1,82 @@
+package Model;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Shows one PolygonApprox at a time, and hands out the same path iterator for every call.
+ * Lets a thread draw shape after shape without allocating, as Graphics2D.fill and draw are done with the iterator before they return.
+ * The points shown may be a projection of the shape's own, in which case the bounds and tests still use the shape's.
+ * Must not be shared between threads, and must not be used where two iterators are needed at once.
+ */
+public final class ShapeView implements Shape {
+	private final PolygonApprox.PolygonApproxIterator iterator = new PolygonApprox.PolygonApproxIterator(null, null, 0f);
+	private final Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+	private final float[] segment = new float[6];
+	private PolygonApprox shape;
+	private float[] points;
+
+	/**
+	 * Makes the view show the given shape.
+	 * @param shape The shape to show.
+	 * @return This view.
+	 */
+	public ShapeView show(PolygonApprox shape) {return show(shape, shape == null ? null : shape.coords);}
+
+	/**
+	 * Makes the view show the given shape at already projected points, see ScreenCache.
+	 * @param shape The shape to show.
+	 * @param points The points of the shape in the space drawn in, as many as the shape has.
+	 * @return This view.
+	 */
+	public ShapeView show(PolygonApprox shape, float[] points) {this.shape = shape; this.points = points; return this;}
+
+	/**
+	 * Returns the shape shown as a path transformed to device space, the same path for every call.
+	 * Without antialiasing, Java2D fills a Path2D.Float as it is when the Graphics has no transform beyond a whole pixel
+	 * translation, but copies any other shape into a new path first.
+	 * @param at The transform to device space, the points shown are simplified at its pixel size like getPathIterator(at).
+	 * @return
+	 */
+	public Path2D.Float path(AffineTransform at) {
+		path.reset();
+		for(PathIterator it = getPathIterator(at); !it.isDone(); it.next()) {
+			switch(it.currentSegment(segment)) {
+				case PathIterator.SEG_MOVETO: path.moveTo(segment[0], segment[1]); break;
+				case PathIterator.SEG_CLOSE: path.closePath(); break;
+				default: path.lineTo(segment[0], segment[1]);
+			}
+		}
+		return path;
+	}
+
+	public PathIterator getPathIterator(AffineTransform at) {
+		if(at == null && points == shape.coords) {return shape.getPathIterator(null);}
+		return iterator.reset(shape, points, at, at == null ? 1f : (float) (1/Math.abs(at.getDeterminant())));
+	}
+
+	public PathIterator getPathIterator(AffineTransform at, double flatness) {
+		return iterator.reset(shape, points, at, (float) (flatness * flatness));
+	}
+
+	public Rectangle getBounds() {return shape.getBounds();}
+
+	public Rectangle2D getBounds2D() {return shape.getBounds2D();}
+
+	public boolean contains(double x, double y) {return shape.contains(x, y);}
+
+	public boolean contains(Point2D p) {return shape.contains(p);}
+
+	public boolean intersects(double x, double y, double w, double h) {return shape.intersects(x, y, w, h);}
+
+	public boolean intersects(Rectangle2D r) {return shape.intersects(r);}
+
+	public boolean contains(double x, double y, double w, double h) {return shape.contains(x, y, w, h);}
+
+	public boolean contains(Rectangle2D r) {return shape.contains(r);}
+}
@@ -7,12 +7,9 @@ import java.util.ArrayList;
 /**
  * Vertex objects represents every intersection between roads and functions as vertices in our navigation graph.
  */
-public class Vertex implements Serializable, Comparable<Vertex> {
+public class Vertex implements Serializable {
 	private static final long serialVersionUID = 16052016L;
-	private float minDist;
-	protected float heuristic;
     private ArrayList<Road> edges;
-    private Road edgeTo;
     private int index;
     
     /**
@@ -22,9 +19,6 @@ public class Vertex implements Serializable, Comparable<Vertex> {
     public Vertex(int index) {
     	this.index = index;
         edges = new ArrayList<>();
-        minDist = Float.POSITIVE_INFINITY;
-        heuristic = Float.POSITIVE_INFINITY;
-        edgeTo = null;
     }
     
     /**
@@ -47,35 +41,10 @@ public class Vertex implements Serializable, Comparable<Vertex> {
     public void addRoad(Road road) { edges.add(road); }
     
     /**
-     * Used to set current minimum distance from the navigation start point. Used for Dijkstra.
-     * @param f
-     */
-    public void minDist(float f) { minDist = f; }
-    
-    /**
-     * Used to return the current minimum distance from the navigation start point. Used for Dijkstra.
+     * Returns all roads that may be taken from this vertex, whatever their access.
      * @return
      */
-    public float minDist() { return minDist; }
-
-    /**
-     * Sets the heuristic.
-     */
-    public void heuristic(double d) {
-    	heuristic = (float) d;
-    }
-
-    /**
-     * Used for Dijkstra.
-     * @param road
-     */
-    public void edgeTo(Road road) { edgeTo = road; }
-    
-    /**
-     * Used for Dijkstra.
-     * @return Road
-     */
-    public Road edgeTo() { return edgeTo; }    
+    protected Road[] edges() { return edges.toArray(new Road[edges.size()]); }
     
     /**
      * Returns only the accessible roads.
@@ -100,23 +69,9 @@ public class Vertex implements Serializable, Comparable<Vertex> {
         return allowed.toArray(new Road[allowed.size()]);
     }
     
-    /**
-     * Clears all fields, makes vertex ready for next navigation search.
-     */
-    public void reset() {
-    	minDist = Float.POSITIVE_INFINITY;
-    	edgeTo = null;
-    	heuristic = Float.POSITIVE_INFINITY;
-    }
-    
     /**
      * Returns the index corresponding to the one in PathFinder.
      * @return
      */
     public int index() { return index; }
-
-	@Override
-	public int compareTo(Vertex that) {
-		return Float.compare(this.minDist + this.heuristic, that.minDist() + that.heuristic);
-	}
 }
@@ -0,0 +1,121 @@
+package Model;
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap of vertex indices by key, for the searches over the navigation graph. A vertex is in the heap
+ * at most once: offering it again moves it to its new key, so the heap holds no stale entries and never grows past the vertices.
+ * The position of every vertex in the heap is stamped with an epoch, so clearing the heap costs nothing.
+ * Counts its operations since it was last cleared.
+ */
+class VertexHeap {
+	private int[] heap = new int[64];
+	private float[] keys = new float[64]; // By position in the heap.
+	private final int[] position, stamp; // By vertex, -1 once polled.
+	private int size, epoch, operations;
+
+	/**
+	 * @param vertices The number of vertices, every index offered must be smaller.
+	 */
+	VertexHeap(int vertices) {
+		position = new int[vertices];
+		stamp = new int[vertices];
+		epoch = 1; // No vertex is stamped yet.
+	}
+
+	/**
+	 * Removes every vertex and resets the count of operations, keeping the arrays.
+	 */
+	void clear() {
+		size = 0;
+		operations = 0;
+		epoch++;
+	}
+
+	/**
+	 * Returns the number of vertices in the heap.
+	 * @return
+	 */
+	int size() {return size;}
+
+	/**
+	 * Returns the smallest key. The heap must not be empty.
+	 * @return
+	 */
+	float peek() {return keys[0];}
+
+	/**
+	 * Returns the number of vertices added, keys changed and vertices polled since the heap was last cleared.
+	 * @return
+	 */
+	int operations() {return operations;}
+
+	/**
+	 * Adds a vertex, or changes its key if it is in the heap already. A vertex polled since the last clear is added again.
+	 * @param v The index of the vertex.
+	 * @param d The key.
+	 */
+	void offer(int v, float d) {
+		operations++;
+		if(stamp[v] == epoch && position[v] >= 0) {
+			int i = position[v];
+			if(d < keys[i]) {up(i, v, d);} else {down(i, v, d);}
+			return;
+		}
+		if(size == heap.length) {
+			heap = Arrays.copyOf(heap, size << 1);
+			keys = Arrays.copyOf(keys, size << 1);
+		}
+		stamp[v] = epoch;
+		up(size++, v, d);
+	}
+
+	/**
+	 * Removes the vertex with the smallest key. The heap must not be empty.
+	 * @return The index of the vertex.
+	 */
+	int poll() {
+		operations++;
+		int top = heap[0];
+		position[top] = -1;
+		if(--size > 0) {down(0, heap[size], keys[size]);}
+		return top;
+	}
+
+	/**
+	 * Places v with key d at position i or above it.
+	 */
+	private void up(int i, int v, float d) {
+		while(i > 0 && keys[(i - 1) >> 1] > d) {
+			move((i - 1) >> 1, i);
+			i = (i - 1) >> 1;
+		}
+		place(i, v, d);
+	}
+
+	/**
+	 * Places v with key d at position i or below it.
+	 */
+	private void down(int i, int v, float d) {
+		while(true) {
+			int c = 2 * i + 1;
+			if(c >= size) {break;}
+			if(c + 1 < size && keys[c + 1] < keys[c]) {c++;}
+			if(keys[c] >= d) {break;}
+			move(c, i);
+			i = c;
+		}
+		place(i, v, d);
+	}
+
+	private void move(int from, int to) {
+		heap[to] = heap[from];
+		keys[to] = keys[from];
+		position[heap[to]] = to;
+	}
+
+	private void place(int i, int v, float d) {
+		heap[i] = v;
+		keys[i] = d;
+		position[v] = i;
+	}
+}
@@ -0,0 +1,107 @@
+package Model;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * The area of the world shown on screen. As a rectangle it is the bounding box of the screen in world space,
+ * which for a rotated map holds up to twice the area shown. The rotated rectangle actually shown is kept as well,
+ * and is used by overlaps, so queries and culling with a Viewport skip what lies in the corners of the bounding box.
+ * Changing the rectangle with setRect and the like does not change the rotated rectangle.
+ */
+public class Viewport extends Rectangle2D.Double {
+	private static final long serialVersionUID = 16052016L;
+	private final double ox, oy; // The top left corner of the screen in world space.
+	private final double ux, uy, vx, vy; // Unit vectors along the top and left edge of the screen in world space.
+	private final double lengthU, lengthV; // Lengths of the top and left edge in world space.
+	private final boolean rotated;
+
+	/**
+	 * Creates the viewport of a screen.
+	 * @param at The transform from world space to device space.
+	 * @param width The width of the screen (device space).
+	 * @param height The height of the screen (device space).
+	 */
+	public Viewport(AffineTransform at, double width, double height) {
+		this(at, 0, 0, width, height);
+	}
+
+	/**
+	 * Creates the viewport of a rectangle in device space.
+	 * @param at The transform from world space to device space.
+	 * @param x The left edge of the rectangle (device space).
+	 * @param y The top edge of the rectangle (device space).
+	 * @param width The width of the rectangle (device space).
+	 * @param height The height of the rectangle (device space).
+	 */
+	public Viewport(AffineTransform at, double x, double y, double width, double height) {
+		double[] pts = {x, y, x + width, y, x, y + height, x + width, y + height};
+		try {
+			at.inverseTransform(pts, 0, pts, 0, 4);
+		} catch (NoninvertibleTransformException e) {
+			throw new RuntimeException("Inverse fail");
+		}
+		double minX = Math.min(Math.min(pts[0], pts[2]), Math.min(pts[4], pts[6]));
+		double maxX = Math.max(Math.max(pts[0], pts[2]), Math.max(pts[4], pts[6]));
+		double minY = Math.min(Math.min(pts[1], pts[3]), Math.min(pts[5], pts[7]));
+		double maxY = Math.max(Math.max(pts[1], pts[3]), Math.max(pts[5], pts[7]));
+		setRect(minX, minY, maxX - minX, maxY - minY);
+		ox = pts[0];
+		oy = pts[1];
+		lengthU = Math.hypot(pts[2] - ox, pts[3] - oy);
+		lengthV = Math.hypot(pts[4] - ox, pts[5] - oy);
+		ux = lengthU == 0 ? 1 : (pts[2] - ox) / lengthU;
+		uy = lengthU == 0 ? 0 : (pts[3] - oy) / lengthU;
+		vx = lengthV == 0 ? 0 : (pts[4] - ox) / lengthV;
+		vy = lengthV == 0 ? 1 : (pts[5] - oy) / lengthV;
+		rotated = at.getShearX() != 0 || at.getShearY() != 0;
+	}
+
+	/**
+	 * Returns whether the screen is rotated, so the rectangle shown is smaller than the bounding box.
+	 * @return
+	 */
+	public boolean rotated() {return rotated;}
+
+	/**
+	 * Checks whether a box in world space overlaps the rectangle shown on screen. Touching counts as overlapping.
+	 * @param minX The smallest x-coordinate of the box.
+	 * @param minY The smallest y-coordinate of the box.
+	 * @param maxX The largest x-coordinate of the box.
+	 * @param maxY The largest y-coordinate of the box.
+	 * @return
+	 */
+	public boolean overlaps(double minX, double minY, double maxX, double maxY) {
+		if(minX > getMaxX() || maxX < getMinX() || minY > getMaxY() || maxY < getMinY()) {return false;}
+		if(!rotated) {return true;}
+		// The axes of the bounding box are tested above, what is left are the two edges of the screen.
+		double cx = (minX + maxX) / 2 - ox, cy = (minY + maxY) / 2 - oy, hw = (maxX - minX) / 2, hh = (maxY - minY) / 2;
+		double c = cx * ux + cy * uy, r = hw * Math.abs(ux) + hh * Math.abs(uy);
+		if(c + r < 0 || c - r > lengthU) {return false;}
+		c = cx * vx + cy * vy;
+		r = hw * Math.abs(vx) + hh * Math.abs(vy);
+		return c + r >= 0 && c - r <= lengthV;
+	}
+
+	/**
+	 * Checks whether a box in world space overlaps an area, using the rotated rectangle if the area is a Viewport.
+	 * @param area The area, a Viewport or any other rectangle.
+	 * @param minX The smallest x-coordinate of the box.
+	 * @param minY The smallest y-coordinate of the box.
+	 * @param maxX The largest x-coordinate of the box.
+	 * @param maxY The largest y-coordinate of the box.
+	 * @return
+	 */
+	public static boolean overlaps(Rectangle2D area, double minX, double minY, double maxX, double maxY) {
+		if(area instanceof Viewport) {return ((Viewport) area).overlaps(minX, minY, maxX, maxY);}
+		return !(minX > area.getMaxX() || maxX < area.getMinX() || minY > area.getMaxY() || maxY < area.getMinY());
+	}
+
+	/**
+	 * Checks whether an area is a rotated Viewport.
+	 * @param area The area.
+	 * @return
+	 */
+	public static boolean rotated(Rectangle2D area) {return area instanceof Viewport && ((Viewport) area).rotated;}
+}
@@ -0,0 +1,192 @@
+package Model;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Remembers which leaf nodes of a DataTree were used for the previous viewport.
+ * Leaf nodes are fetched for an area a bit larger than the viewport, so most pans need no lookup in the tree at all.
+ * When the viewport leaves that area, only the strips entering it are looked up, and leaf nodes that left it are dropped.
+ * Zooming, rotating or a changed tree starts over.
+ */
+public class ViewportCache {
+	private static final double MARGIN = 0.25; // Fetched area grows by a quarter of the viewport on each side.
+	private final DataTree tree;
+	private final BitSet fetched, visible, previous;
+	private final List<PolygonApprox[]> result;
+	private final Rectangle2D area, next, strip;
+	private double width, height;
+	private int revision, band;
+	private final boolean batched;
+	private boolean valid;
+	private long fullQueries, panQueries, stripQueries, leafsChanged;
+
+	/**
+	 * Creates an empty cache for the given tree.
+	 * @param tree The DataTree to query. May be null, which always gives an empty result.
+	 */
+	public ViewportCache(DataTree tree) {
+		this(tree, false);
+	}
+
+	/**
+	 * Creates an empty cache for the given tree.
+	 * @param tree The DataTree to query. May be null, which always gives an empty result.
+	 * @param batched Whether to return the leaf nodes merged into batches, like DataTree.batches.
+	 */
+	public ViewportCache(DataTree tree, boolean batched) {
+		this.tree = tree;
+		this.batched = batched;
+		fetched = new BitSet();
+		visible = new BitSet();
+		previous = new BitSet();
+		result = new ArrayList<>();
+		area = new Rectangle2D.Double();
+		next = new Rectangle2D.Double();
+		strip = new Rectangle2D.Double();
+	}
+
+	/**
+	 * Returns, at least, everything from the tree within the given rectangle.
+	 * The returned list is reused by the next call.
+	 * @param viewport The desired map section expressed as a rectangle.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox[]> tree(Rectangle2D viewport) {
+		return tree(viewport, 0);
+	}
+
+	/**
+	 * Returns, at least, everything from the tree within the given rectangle, simplified to match the scale.
+	 * The returned list is reused by the next call.
+	 * @param viewport The desired map section expressed as a rectangle.
+	 * @param pixelSize The width of a single pixel in world space.
+	 * @return Might return an empty list, but never null.
+	 */
+	public List<PolygonApprox[]> tree(Rectangle2D viewport, double pixelSize) {
+		if(tree == null || tree.leafs() == 0) {result.clear(); return result;}
+		int b = tree.band(pixelSize);
+		boolean reset = !valid || revision != tree.revision() || band != b || !samePan(viewport);
+		grow(viewport, next);
+		if(reset) {
+			fetched.clear();
+			tree.leafs(next, fetched);
+			area.setRect(next);
+			fullQueries++;
+		} else {
+			if(!area.contains(viewport)) {move(next);}
+			panQueries++;
+		}
+
+		previous.clear();
+		previous.or(visible);
+		visible.clear();
+		for(int i = fetched.nextSetBit(0); i >= 0; i = fetched.nextSetBit(i+1)) {
+			if(tree.intersects(i, viewport)) {visible.set(i);}
+		}
+		if(reset || !visible.equals(previous)) {
+			if(!reset) {previous.xor(visible); leafsChanged += previous.cardinality();}
+			result.clear();
+			for(int i = visible.nextSetBit(0); i >= 0; i = visible.nextSetBit(i+1)) {
+				result.add(batched ? tree.batches(i, b) : tree.leaf(i, b));
+			}
+			if(result.size() == 0) {result.add(new PolygonApprox[0]);}
+		}
+		width = viewport.getWidth();
+		height = viewport.getHeight();
+		revision = tree.revision();
+		band = b;
+		valid = true;
+		return result;
+	}
+
+	/**
+	 * Forgets the previous viewport, the next query goes through the whole tree.
+	 */
+	public void invalidate() {valid = false;}
+
+	/**
+	 * Returns whether the leaf nodes are returned merged into batches.
+	 * @return
+	 */
+	public boolean batched() {return batched;}
+
+	/**
+	 * Returns the DataTree this cache queries.
+	 * @return
+	 */
+	public DataTree dataTree() {return tree;}
+
+	/**
+	 * Checks whether the viewport has the same size as the previous one and overlaps the fetched area, so it can be reached by panning.
+	 */
+	private boolean samePan(Rectangle2D viewport) {
+		double eps = 1e-9 * Math.max(width, height);
+		return Math.abs(viewport.getWidth() - width) <= eps && Math.abs(viewport.getHeight() - height) <= eps
+				&& viewport.intersects(area);
+	}
+
+	/**
+	 * Sets r to the viewport grown by the margin.
+	 */
+	private void grow(Rectangle2D viewport, Rectangle2D r) {
+		double dx = viewport.getWidth() * MARGIN, dy = viewport.getHeight() * MARGIN;
+		r.setRect(viewport.getX() - dx, viewport.getY() - dy, viewport.getWidth() + 2*dx, viewport.getHeight() + 2*dy);
+	}
+
+	/**
+	 * Moves the fetched area to the given rectangle of the same size: drops the leafs that left it and looks up the strips that entered it.
+	 */
+	private void move(Rectangle2D target) {
+		for(int i = fetched.nextSetBit(0); i >= 0; i = fetched.nextSetBit(i+1)) {
+			if(!tree.intersects(i, target)) {fetched.clear(i);}
+		}
+
+		double top = Math.max(target.getMinY(), area.getMinY()), bottom = Math.min(target.getMaxY(), area.getMaxY());
+		if(target.getMinX() < area.getMinX()) {
+			strip.setRect(target.getMinX(), target.getMinY(), area.getMinX() - target.getMinX(), target.getHeight());
+			tree.leafs(strip, fetched);
+			stripQueries++;
+		} else if(target.getMaxX() > area.getMaxX()) {
+			strip.setRect(area.getMaxX(), target.getMinY(), target.getMaxX() - area.getMaxX(), target.getHeight());
+			tree.leafs(strip, fetched);
+			stripQueries++;
+		}
+		double left = Math.max(target.getMinX(), area.getMinX()), right = Math.min(target.getMaxX(), area.getMaxX());
+		if(target.getMinY() < area.getMinY()) {
+			strip.setRect(left, target.getMinY(), right - left, top - target.getMinY());
+			tree.leafs(strip, fetched);
+			stripQueries++;
+		} else if(target.getMaxY() > area.getMaxY()) {
+			strip.setRect(left, bottom, right - left, target.getMaxY() - bottom);
+			tree.leafs(strip, fetched);
+			stripQueries++;
+		}
+		area.setRect(target);
+	}
+
+	/**
+	 * Returns how many queries had to go through the whole tree.
+	 * @return
+	 */
+	public long fullQueries() {return fullQueries;}
+
+	/**
+	 * Returns how many queries were answered from the previous frame, with at most a few strips looked up.
+	 * @return
+	 */
+	public long panQueries() {return panQueries;}
+
+	/**
+	 * Returns how many strips were looked up in the tree while panning.
+	 * @return
+	 */
+	public long stripQueries() {return stripQueries;}
+
+	/**
+	 * Returns the total number of leaf nodes that entered or left the viewport while panning.
+	 * @return
+	 */
+	public long leafsChanged() {return leafsChanged;}
+}
@@ -0,0 +1,201 @@
+package View;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Measures every frame of a MapCanvas: the time to paint the canvas, the time to draw the static layers
+ * split into looking up and drawing every layer, the shapes drawn, and the garbage collections in between.
+ * Frame times go into histograms of fixed buckets, so recording is a few additions and never allocates,
+ * and the profiler can stay on all the time. Only showing it or saving a log costs anything.
+ */
+public class FrameProfiler {
+	private static final long BUCKET = 50000; // Nanoseconds per histogram bucket, 0.05 ms.
+	private static final int BUCKETS = 4000; // Up to 200 ms, the last bucket holds everything slower.
+	private static final Color BACKGROUND = new Color(255, 255, 255, 200);
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12); // Lines the columns up.
+	private final long[] paintTimes = new long[BUCKETS], staticTimes = new long[BUCKETS];
+	private final long[] queryNanos = new long[MapRenderer.layers()], drawNanos = new long[MapRenderer.layers()];
+	private final long[] considered = new long[MapRenderer.layers()], drawn = new long[MapRenderer.layers()];
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private long paints, statics, tiled, coarse, paintMax, staticMax;
+	private long gcCount, gcMillis, gcInteractingCount, gcInteractingMillis, lastGcCount, lastGcMillis;
+	private long started = System.currentTimeMillis();
+
+	/**
+	 * Creates an empty profiler.
+	 */
+	public FrameProfiler() {
+		lastGcCount = gcCount();
+		lastGcMillis = gcMillis();
+	}
+
+	/**
+	 * Records a paint of the canvas, and the garbage collections since the previous one.
+	 * @param nanos The time of the paint.
+	 * @param interacting Whether the user was interacting with the map.
+	 */
+	public synchronized void paint(long nanos, boolean interacting) {
+		paints++;
+		paintTimes[bucket(nanos)]++;
+		paintMax = Math.max(paintMax, nanos);
+		long count = gcCount(), millis = gcMillis();
+		if(count != lastGcCount) {
+			gcCount += count - lastGcCount;
+			gcMillis += millis - lastGcMillis;
+			if(interacting) {
+				gcInteractingCount += count - lastGcCount;
+				gcInteractingMillis += millis - lastGcMillis;
+			}
+			lastGcCount = count;
+			lastGcMillis = millis;
+		}
+	}
+
+	/**
+	 * Records a finished frame of the static layers, with the statistics of the renderer used only by that frame.
+	 * @param nanos The time of the frame.
+	 * @param renderer The renderer of the frame.
+	 * @param fromTiles Whether the frame was copied from tiles.
+	 * @param coarsePass Whether the frame was a coarse pass.
+	 */
+	public synchronized void frame(long nanos, MapRenderer renderer, boolean fromTiles, boolean coarsePass) {
+		statics++;
+		staticTimes[bucket(nanos)]++;
+		staticMax = Math.max(staticMax, nanos);
+		if(fromTiles) {tiled++;}
+		if(coarsePass) {coarse++;}
+		for(int i = 0; i < queryNanos.length; i++) {
+			long query = renderer.queryNanos(i);
+			queryNanos[i] += query;
+			drawNanos[i] += renderer.nanos(i) - query;
+			considered[i] += renderer.considered(i);
+			drawn[i] += renderer.drawn(i);
+		}
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public synchronized void reset() {
+		Arrays.fill(paintTimes, 0);
+		Arrays.fill(staticTimes, 0);
+		Arrays.fill(queryNanos, 0);
+		Arrays.fill(drawNanos, 0);
+		Arrays.fill(considered, 0);
+		Arrays.fill(drawn, 0);
+		paints = statics = tiled = coarse = paintMax = staticMax = 0;
+		gcCount = gcMillis = gcInteractingCount = gcInteractingMillis = 0;
+		lastGcCount = gcCount();
+		lastGcMillis = gcMillis();
+		started = System.currentTimeMillis();
+	}
+
+	/**
+	 * Draws the numbers in the top left corner, in device space.
+	 * @param g The Graphics to draw on.
+	 */
+	public void draw(Graphics2D g) {
+		List<String> lines = lines(5);
+		g.setFont(FONT);
+		FontMetrics metrics = g.getFontMetrics();
+		int width = 0;
+		for(String line : lines) {width = Math.max(width, metrics.stringWidth(line));}
+		g.setColor(BACKGROUND);
+		g.fillRect(15, 15, width + 10, lines.size() * metrics.getHeight() + 5);
+		g.setColor(Color.BLACK);
+		for(int i = 0; i < lines.size(); i++) {
+			g.drawString(lines.get(i), 20, 15 + metrics.getAscent() + i * metrics.getHeight());
+		}
+	}
+
+	/**
+	 * Writes everything recorded so far to a text file: the summary, every layer and the histograms.
+	 * @param file The file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void save(File file) throws IOException {
+		try(PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			for(String line : lines(queryNanos.length)) {out.println(line);}
+			synchronized(this) {
+				out.println();
+				out.println("bucket ms\tpaints\tstatic frames");
+				for(int i = 0; i < BUCKETS; i++) {
+					if(paintTimes[i] == 0 && staticTimes[i] == 0) {continue;}
+					out.printf("%.2f\t%d\t%d%n", i * BUCKET / 1e6, paintTimes[i], staticTimes[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the summary as lines of text, with the given number of layers, those taking the most time.
+	 */
+	private synchronized List<String> lines(int layers) {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("%d s profiled", (System.currentTimeMillis() - started) / 1000));
+		lines.add(String.format("Paint   %6d frames  p50 %6.2f  p95 %6.2f  p99 %6.2f  max %6.2f ms", paints,
+				percentile(paintTimes, paintMax, 0.5), percentile(paintTimes, paintMax, 0.95), percentile(paintTimes, paintMax, 0.99), paintMax / 1e6));
+		lines.add(String.format("Static  %6d frames  p50 %6.2f  p95 %6.2f  p99 %6.2f  max %6.2f ms", statics,
+				percentile(staticTimes, staticMax, 0.5), percentile(staticTimes, staticMax, 0.95), percentile(staticTimes, staticMax, 0.99), staticMax / 1e6));
+		lines.add(String.format("        %d from tiles, %d coarse passes", tiled, coarse));
+		lines.add(String.format("GC      %d collections, %d ms; while interacting %d, %d ms", gcCount, gcMillis, gcInteractingCount, gcInteractingMillis));
+		lines.add(String.format("%-12s %10s %10s %11s %8s", "layer", "query ms/f", "draw ms/f", "considered", "drawn"));
+
+		Integer[] order = new Integer[queryNanos.length];
+		for(int i = 0; i < order.length; i++) {order[i] = i;}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(queryNanos[b] + drawNanos[b], queryNanos[a] + drawNanos[a]);
+			}
+		});
+		long frames = Math.max(1, statics);
+		for(int j = 0; j < Math.min(layers, order.length); j++) {
+			int i = order[j];
+			lines.add(String.format("%-12s %10.3f %10.3f %11d %8d", MapRenderer.layer(i), queryNanos[i] / 1e6 / frames,
+					drawNanos[i] / 1e6 / frames, considered[i] / frames, drawn[i] / frames));
+		}
+		return lines;
+	}
+
+	/**
+	 * Returns the upper edge of the bucket holding the given share of the frames, at most the slowest frame.
+	 * @return Milliseconds.
+	 */
+	private static double percentile(long[] histogram, long max, double share) {
+		long total = 0;
+		for(long n : histogram) {total += n;}
+		if(total == 0) {return 0;}
+		long rank = (long) Math.ceil(share * total), seen = 0;
+		for(int i = 0; i < histogram.length; i++) {
+			seen += histogram[i];
+			if(seen >= rank) {return (i == histogram.length - 1 ? max : Math.min((i + 1) * BUCKET, max)) / 1e6;}
+		}
+		return max / 1e6;
+	}
+
+	private static int bucket(long nanos) {return (int) Math.max(0, Math.min(BUCKETS - 1, nanos / BUCKET));}
+
+	private long gcCount() {
+		long n = 0;
+		for(int i = 0; i < collectors.size(); i++) {n += Math.max(0, collectors.get(i).getCollectionCount());}
+		return n;
+	}
+
+	private long gcMillis() {
+		long n = 0;
+		for(int i = 0; i < collectors.size(); i++) {n += Math.max(0, collectors.get(i).getCollectionTime());}
+		return n;
+	}
+}
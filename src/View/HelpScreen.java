@@ -59,11 +59,11 @@ public class HelpScreen extends JFrame {
 	private JPanel keyTab() {
 		//All keys and descriptions are stored in to parallel string-arrays.
 		//Makes it easy to add a lot of labels quickly.
-		String[] keyList = {"w","s","a","d","q","e","g","h","t","y","u","i","o","p"};
+		String[] keyList = {"w","s","a","d","q","e","g","h","t","y","j","u","i","o","p","k"};
 		String[] descriptions = {"Move map up", "Move map down", "Move map left", "Move map right",
 				"Rotate map left", "Rotate map right", "Zoom to center of map", "Show the helpscreen", "[Debug tool] Toggle test viewport",
-				"[Debug tool] Show/Hide fps-counter", "[Debug tool] Toggle alpha-fading", "[Debug tool] Toggle compression-view on buildings", 
-				"[Debug tool] Toggle anti-aliasing", "[Debug tool] Toggle OpenGL"};
+				"[Debug tool] Show/Hide frame profiler", "[Debug tool] Save frame profile", "[Debug tool] Toggle alpha-fading", "[Debug tool] Toggle compression-view on buildings", 
+				"[Debug tool] Toggle anti-aliasing", "[Debug tool] Toggle OpenGL", "[Debug tool] Toggle tile cache"};
 		Font keyFont = new Font("Segoe UI Semibold", Font.BOLD, 18);
 		Font descFont = new Font("Segoe UI Semilight", Font.PLAIN, 16);
 			
@@ -0,0 +1,75 @@
+package View;
+
+import enums.ConfigType;
+import enums.LayerType;
+import java.awt.BasicStroke;
+import java.awt.Color;
+
+/**
+ * One entry in the table of static layers drawn by MapRenderer: where the shapes come from,
+ * from which detail level they are drawn, and how they look.
+ */
+final class Layer {
+	final LayerType source;
+	final ConfigType visible, color;
+	final int minDetail;
+	final BasicStroke stroke;
+	Color fixedColor;
+	ConfigType colorBelow;
+	int belowDetail, solidDetail;
+	float minSize;
+	boolean fadeGrass, simplified, random;
+
+	/**
+	 * Creates a layer drawn in a single color.
+	 * @param source The layer in the Model holding the shapes.
+	 * @param visible Decides whether the layer is drawn at all, null to always draw it.
+	 * @param minDetail The lowest detail level the layer is drawn at.
+	 * @param color The color of the shapes.
+	 * @param stroke The stroke used to draw the outlines of the shapes, null to fill them.
+	 */
+	Layer(LayerType source, ConfigType visible, int minDetail, ConfigType color, BasicStroke stroke) {
+		this.source = source;
+		this.visible = visible;
+		this.minDetail = minDetail;
+		this.color = color;
+		this.stroke = stroke;
+	}
+
+	/**
+	 * Uses a color that is not part of the Config.
+	 * @return This layer.
+	 */
+	Layer color(Color c) {fixedColor = c; return this;}
+
+	/**
+	 * Uses another color below the given detail level.
+	 * @return This layer.
+	 */
+	Layer below(int detail, ConfigType c) {belowDetail = detail; colorBelow = c; return this;}
+
+	/**
+	 * Fades the layer in below the given detail level, with the alpha value for farmland and plains or for grass.
+	 * @return This layer.
+	 */
+	Layer fade(int detail, boolean grass) {solidDetail = detail; fadeGrass = grass; return this;}
+
+	/**
+	 * Uses the zoom band matching the scale, instead of the full geometry.
+	 * @return This layer.
+	 */
+	Layer simplified() {simplified = true; return this;}
+
+	/**
+	 * Skips shapes too small to be seen, for lines this is a minimum length. Relies on the shapes of each leaf being sorted by size.
+	 * @param size The smallest size drawn, as the squared diagonal of the bounds in pixels, like PolygonApprox.getSize.
+	 * @return This layer.
+	 */
+	Layer culled(float size) {minSize = size; return this;}
+
+	/**
+	 * Draws every shape in a random color while the compression test is on.
+	 * @return This layer.
+	 */
+	Layer random() {random = true; return this;}
+}
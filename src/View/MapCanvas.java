@@ -6,7 +6,11 @@ import Model.Config;
 import Model.PolygonApprox;
 import Model.POI;
 import Model.Road;
+import Model.ScreenCache;
+import Model.Viewport;
+import Model.ViewportCache;
 import enums.ConfigType;
+import enums.LayerType;
 import enums.POIType;
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -16,17 +20,20 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.Random;
 import javax.swing.JComponent;
 
 /**
@@ -34,17 +41,44 @@ import javax.swing.JComponent;
  */
 public class MapCanvas extends JComponent implements Observer{
 	private static final long serialVersionUID = 16052016L;
+	private static final long FRAME_BUDGET = 16000000; // Nanoseconds a coarse pass may take, 60 frames per second.
+	private static final int MAX_COARSE = 16;
+	private static final long TILE_MEMORY = Math.min(64L << 20, Runtime.getRuntime().maxMemory() / 8);
+	private static final BasicStroke[] PATH_STROKES = { // Width of the route by detail level, the first one is used above level 11.
+		pathStroke(0.00004f), pathStroke(0.00060f), pathStroke(0.00045f), pathStroke(0.00030f), pathStroke(0.00025f), pathStroke(0.00020f),
+		pathStroke(0.00016f), pathStroke(0.00013f), pathStroke(0.00010f), pathStroke(0.00008f), pathStroke(0.00006f), pathStroke(0.00004f)};
+	private static final BasicStroke WALK_STROKE = MapRenderer.cycleAndWalkwayStroke(), SCALE_STROKE = new BasicStroke(4f),
+			SCALE_DASH = new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 1.0f, new float[] {5.0f}, 0.0f);
+	private static final Color OVERLAY_BACKGROUND = new Color(255, 255, 255, 140);
+	private static final AffineTransform IDENTITY = new AffineTransform();
 	private AffineTransform trans = new AffineTransform();
 	private Model model;
 	private Config config;
-	private boolean AA, compressionTest, treeTest, searchBox, openGL, showFPS;
+	private boolean AA, compressionTest, treeTest, searchBox, openGL, showProfiler;
 	private int detailLevel, scale;
 	private int buildingA, farmPlainA, grassA;
 	private Font overlayFont = new Font("Segoe UI Semilight", Font.PLAIN, 14);
 	private Point2D addingPoint, searchPointFirst, searchPointSecond;
 	private String searchTxtFirst, searchTxtSecond;
-	private long time = 0; // for Fps counter
 	private Rectangle2D viewport;
+	private transient EnumMap<LayerType, ViewportCache> caches;
+	private transient ScreenCache screenCache;
+	private transient List<POI> visiblePOI = new ArrayList<>();
+	private int configRevision, cacheRevision; // cacheRevision is bumped on the EDT, and carried to the render thread by the frames.
+	private transient int drawnCacheRevision; // The cacheRevision of the caches, only used by the thread drawing the frames.
+	private transient RenderThread renderThread;
+	private transient MapRenderer renderer; // Draws every frame, see renderer(Frame).
+	private transient volatile RenderThread.Frame current; // The frame being drawn by the renderer.
+	private transient TileCache tiles = new TileCache(TILE_MEMORY);
+	private transient FrameProfiler profiler = new FrameProfiler();
+	private transient BufferedImage[] frameTiles = new BufferedImage[0];
+	private boolean useTiles = true, interacting;
+	private int coarse = 2;
+	private transient AffineTransform linear = new AffineTransform(0, 0, 0, 0, 0, 0); // The last frame without its translation, none at first.
+	private String scaleText = "~ 0m";
+	private final Point2D.Float screenPoint = new Point2D.Float(); // Reused by every frame, so steady frames allocate nothing.
+	private final Rectangle2D.Double poiArea = new Rectangle2D.Double();
+	private final Ellipse2D.Float dot = new Ellipse2D.Float();
 
 	/**
 	 * Initializes the MapCanvas with a given size and using the given Config object
@@ -56,7 +90,7 @@ public class MapCanvas extends JComponent implements Observer{
 		setSize(x, y);
 		AA = true;
 		openGL = false;
-		showFPS = false;
+		showProfiler = false;
 		model = Main.model();
 		model.addObserver(this);
 		this.config = config;
@@ -93,6 +127,28 @@ public class MapCanvas extends JComponent implements Observer{
 	 */
 	public void toggleCompressionTest(){compressionTest = !compressionTest;}
 
+	/**
+	 * Toggles whether the static layers are drawn from cached tiles or straight to the screen.
+	 * @return Whether or not tiles are used now
+	 */
+	public boolean toggleTileCache() {
+		useTiles = !useTiles;
+		return useTiles;
+	}
+
+	/**
+	 * Returns the cache of tiles.
+	 * @return
+	 */
+	public TileCache tileCache() {return tiles;}
+
+	/**
+	 * Tells the canvas whether the user is panning, zooming or rotating the map. Meanwhile a coarse pass is drawn,
+	 * and the next repaint after the interaction ends refines it to full detail.
+	 * @param b
+	 */
+	public void interacting(boolean b) {interacting = b;}
+
 	/**
 	 * Enables antialiasing for a cleaner view.
 	 */
@@ -119,13 +175,16 @@ public class MapCanvas extends JComponent implements Observer{
 	 * Sets the number to be shown at the scale in the corner of the screen.
 	 * @param zoomLevel The current amount of meters to be shown at the scale.
      */
-	public void scale(int zoomLevel) {scale = zoomLevel;}
+	public void scale(int zoomLevel) {
+		if(zoomLevel != scale) {scaleText = "~ " + zoomLevel + "m";}
+		scale = zoomLevel;
+	}
 
 	/**
 	 * Replaces the Config used by the MapCanvas.
 	 * @param newConfig The new Config to be used.
      */
-	public void config(Config newConfig) { config = newConfig; }
+	public void config(Config newConfig) { config = newConfig; invalidateCaches(); }
 	/**
 	 * Returns the current Config used by the MapCanvas.
 	 * @return Config The current Config-object.
@@ -188,6 +247,12 @@ public class MapCanvas extends JComponent implements Observer{
 		trans = new AffineTransform();
 	}
 
+	/**
+	 * Returns a copy of the transform from model coordinates to view coordinates.
+	 * @return
+	 */
+	public AffineTransform transform() {return new AffineTransform(trans);}
+
 	/**
 	 * Translates a Point2D in model coordinates into a Point2D in view coordinates.
 	 * @param p The Point2D in model coordinates.
@@ -226,6 +291,7 @@ public class MapCanvas extends JComponent implements Observer{
 
 	/**
 	 * Returns the bounds of the canvas in Model coordinates using a custom AffineTransform and an offset in x and y.
+	 * The bounds are a Viewport, which also knows the rotated rectangle shown when the map is rotated.
 	 * @param at The AffineTransform used to find the bounds.
 	 * @param offsetX An optional offset in the x-coordinates.
 	 * @param offsetY An optional offset in the y-coordinates.
@@ -233,20 +299,12 @@ public class MapCanvas extends JComponent implements Observer{
      */
 	private Rectangle2D getViewPort(AffineTransform at, double offsetX, double offsetY)
 	{
-		Point2D p1 = inverse(at, 0 - offsetX, 0 - offsetY);
-		Point2D p2 = inverse(at, getWidth() - offsetX, 0 - offsetY);
-		Point2D p3 = inverse(at, 0 - offsetX, getHeight() - offsetY);
-		Point2D p4 = inverse(at, getWidth() - offsetX, getHeight() - offsetY);
-		double minX = Math.min(Math.min(p1.getX(),p2.getX()), Math.min(p3.getX(),p4.getX()));
-		double maxX = Math.max(Math.max(p1.getX(),p2.getX()), Math.max(p3.getX(),p4.getX()));
-		double minY = Math.min(Math.min(p1.getY(),p2.getY()), Math.min(p3.getY(),p4.getY()));
-		double maxY = Math.max(Math.max(p1.getY(),p2.getY()), Math.max(p3.getY(),p4.getY()));
-
-		Rectangle2D viewPort;
+		AffineTransform shifted = AffineTransform.getTranslateInstance(offsetX, offsetY);
+		shifted.concatenate(at);
+		Rectangle2D viewPort = new Viewport(shifted, getWidth(), getHeight());
 		if(treeTest) {
-			viewPort = new Rectangle2D.Double(minX + (maxX - minX)/4, minY + (maxY - minY)/4 , (maxX - minX)/2, (maxY - minY)/2);
-		} else {
-			viewPort = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+			double w = viewPort.getWidth(), h = viewPort.getHeight();
+			viewPort = new Rectangle2D.Double(viewPort.getX() + w/4, viewPort.getY() + h/4, w/2, h/2);
 		}
 		return viewPort;
 	}
@@ -331,76 +389,27 @@ public class MapCanvas extends JComponent implements Observer{
 	}
 
 	/**
-	 * Toggles whether or not an FPSCounter is shown in the top left corner.
+	 * Toggles whether or not the frame profiler is shown in the top left corner. Showing it starts a new profile.
      */
-	public void toggleFPSCounter(){
-		showFPS = !showFPS;
+	public void toggleProfiler(){
+		showProfiler = !showProfiler;
+		if(showProfiler) {profiler.reset();}
 	}
 
 	/**
-	 * Used to make special stroke for cycle- and walkways.
-	 * @return
-     */
-	private BasicStroke cycleAndWalkwayStroke() {
-		float[] dasharray = {0.000025f,0.00001f,0.00001f,0.00001f};
-		return new BasicStroke(0.00001f,
-						BasicStroke.CAP_BUTT,
-						BasicStroke.JOIN_ROUND,
-						1.0f, dasharray, 0.0f);
-	}
-
-	/**
-	 * Used to make special stroke for railways (not used).
-	 * @return
-     */
-	private BasicStroke railwayStroke() {
-		float[] dasharray = {0.000045f,0.000045f,0.000045f,0.000045f};
-		return new BasicStroke(0.00002f,
-						BasicStroke.CAP_BUTT,
-						BasicStroke.JOIN_ROUND,
-						1.0f, dasharray, 0.0f);
-	}
+	 * Writes the frame profile recorded so far to a text file.
+	 * @param file The file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void saveProfile(File file) throws IOException {profiler.save(file);}
 
 	/**
 	 * Used to determine the stroke of different paths.
 	 * @param detail The given detail level.
 	 * @return
      */
-	private BasicStroke pathStroke(int detail) {
-		switch (detail) {
-			case 1:
-				return new BasicStroke(0.00060f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 2:
-				return new BasicStroke(0.00045f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 3:
-				return new BasicStroke(0.00030f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 4:
-				return new BasicStroke(0.00025f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 5:
-				return new BasicStroke(0.00020f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 6:
-				return new BasicStroke(0.00016f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 7:
-				return new BasicStroke(0.00013f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 8:
-				return new BasicStroke(0.00010f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 9:
-				return new BasicStroke(0.00008f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 10:
-				return new BasicStroke(0.00006f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-			case 11:
-				return new BasicStroke(0.00004f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-
-		}
-		return new BasicStroke(0.00004f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-	}
-
-	/**
-	 * Used to determine stroke of road.
-	 * @return
-     */
-	private BasicStroke roadStroke() {
-		return new BasicStroke((float) 1.8e-5, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+	private static BasicStroke pathStroke(int detail) {
+		return detail >= 1 && detail < PATH_STROKES.length ? PATH_STROKES[detail] : PATH_STROKES[0];
 	}
 
 	/**
@@ -449,323 +458,166 @@ public class MapCanvas extends JComponent implements Observer{
 	}
 
 	/**
-	 * Paints all the objects in the current viewport.
-	 * @param gg The Graphics needed to draw this.
-     */
-	public void paint(Graphics gg){
-		requestFocus();
-		float requiredSize = (float) (35/Math.abs(trans.getDeterminant()));
-		time = 9*time - System.nanoTime();
-		Graphics2D g = (Graphics2D) gg;
-		if(AA) {g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);}
-		g.setStroke(roadStroke());
-		if(model.dataCoast(viewport).size() > 0){
-			g.setColor(config.color(ConfigType.WATER));
-			g.fill(new Rectangle2D.Double(-2, -2, getWidth() + 4, getHeight() + 4));
-			g.setTransform(trans);
-			g.setColor(config.color(ConfigType.BACKGROUND));
-			for (Shape[] sa: model.dataCoast(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		} else {
-			g.setColor(config.color(ConfigType.BACKGROUND));
-			g.fill(new Rectangle2D.Double(-2, -2, getWidth() + 4, getHeight() + 4));
-			g.setTransform(trans);
-		}
-
-		//Drawing sand areas.
-		if(config.visible(ConfigType.SAND) && detailLevel >= 6){
-			g.setColor(config.color(ConfigType.SAND));
-			for (Shape[] sa: model.dataSand(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		}
-
-		//Drawing farmland areas.
-		if(config.visible(ConfigType.FARMLAND) && detailLevel >= 4) {
-			if(detailLevel >= 5) {
-				g.setColor(config.color(ConfigType.FARMLAND));
-			} else {
-				Color co = config.color(ConfigType.FARMLAND);
-				g.setColor(new Color(co.getRed(), co.getGreen(), co.getBlue(), farmPlainA));
-			}
-			for(Shape[] sa : model.dataFarm(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		}
-
-		//Drawing plain areas.
-		if(config.visible(ConfigType.PLAIN)  && detailLevel >= 4) {
-			if(detailLevel >= 5) {
-				g.setColor(config.color(ConfigType.PLAIN));
-			} else {
-				Color co = config.color(ConfigType.PLAIN);
-				g.setColor(new Color(co.getRed(), co.getGreen(), co.getBlue(), farmPlainA));
-			}
-			for(Shape[] sa : model.dataPlain(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		}
-
-		//Drawing residential areas.
-		if(config.visible(ConfigType.RESIDENTIAL) && detailLevel >= 2) {
-			g.setColor(config.color(ConfigType.RESIDENTIAL));
-			for(Shape[] sa: model.dataResidential(viewport)) {
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		}
-
-		//Drawing industrial areas.
-		if(config.visible(ConfigType.INDUSTRIAL) && detailLevel >= 2) {
-			if(detailLevel > 3) {
-				g.setColor(config.color(ConfigType.INDUSTRIAL));
-			} else {
-				g.setColor(config.color(ConfigType.RESIDENTIAL));
-			}
-			for(Shape[] sa : model.dataIndustrial(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		}
-
-		//Drawing grass areas.
-		if(config.visible(ConfigType.GRASS) && detailLevel >= 7) {
-			if(detailLevel >= 8){
-				g.setColor(config.color(ConfigType.GRASS));
-			} else {
-				Color co = config.color(ConfigType.GRASS);
-				g.setColor(new Color(co.getRed(), co.getGreen(), co.getBlue(), grassA));
-			}
-			for(Shape[] sa : model.dataGrass(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
-		}
-
-		//Drawing forests.
-		if(config.visible(ConfigType.FOREST)  && detailLevel >= 2){
-			g.setColor(config.color(ConfigType.FOREST));
-			for(PolygonApprox[] paa : model.dataForest(viewport)){
-				for(PolygonApprox pa: paa){
-					if(pa.getSize() >= requiredSize){
-						if(insideViewport(pa.getBounds2D())){
-							g.fill(pa);
-						}
-					} else {
-						break;
-					}
-				}
-			}
-		}
-
-		//Drawing parking areas.
-		if(config.visible(ConfigType.PARKING) && detailLevel >= 12) {
-			g.setColor(config.color(ConfigType.PARKING));
-			for(Shape[] sa : model.dataParking(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.fill(s);
-					}
-				}
-			}
+	 * Returns the content of a layer within the viewport of a frame. Consecutive calls share
+	 * the leaf nodes found for the previous frame, so panning only looks up what enters the view.
+	 * @param layer The desired layer.
+	 * @param area The viewport of the frame.
+	 * @param pixelSize The width of a single pixel in world space, 0 for full geometry.
+	 * @return Might return an empty list, but never null.
+	 */
+	private List<PolygonApprox[]> data(LayerType layer, Rectangle2D area, double pixelSize) {
+		if(caches == null) {caches = new EnumMap<>(LayerType.class);}
+		ViewportCache cache = caches.get(layer);
+		if(cache == null || cache.dataTree() != model.data(layer)) {
+			cache = new ViewportCache(model.data(layer));
+			caches.put(layer, cache);
 		}
+		return cache.tree(area, pixelSize);
+	}
 
-		//Drawing buildings.
-		if(config.visible(ConfigType.BUILDING) && detailLevel >= 11){
-			g.setColor(config.color(ConfigType.BUILDING));
-			if(compressionTest) {
-				Random r = new Random();
-				for (Shape[] sa : model.dataBuilding(viewport)) {
-					for (Shape s : sa) {
-						if (insideViewport(s.getBounds2D())) {
-							g.setColor(new Color(r.nextInt(255),r.nextInt(255),r.nextInt(255)));
-							g.fill(s);
-						}
-					}
-				}
-			} else {
-				for (Shape[] sa : model.dataBuilding(viewport)) {
-					for (Shape s : sa) {
-						if (insideViewport(s.getBounds2D())) {
-							g.fill(s);
-						}
-					}
-				}
-			}
-		}
+	/**
+	 * Makes the next frame look up every layer from scratch. The caches may be in use by the RenderThread,
+	 * so they are only invalidated by it, before drawing the next frame.
+	 */
+	public void invalidateCaches() {cacheRevision++;}
 
-		// Draw water (lakes and other water areas, not oceans).
-		if(config.visible(ConfigType.WATER)) {
-			g.setColor(config.color(ConfigType.WATER));
-			for(PolygonApprox[] paa : model.dataWater(viewport)){
-				for(PolygonApprox pa: paa) {
-					if (/*pa.getBounds2D().intersects(viewport) && */pa.getSize() >= requiredSize) {
-						if(insideViewport(pa.getBounds2D())){
-							g.fill(pa);
-						}
-					} else {
-						break;
-					}
-				}
-			}
-			//Drawing waterways.
-			if(detailLevel >= 4) {
-				for(Shape[] sa : model.dataWaterway(viewport)){
-					for(Shape s: sa){
-						if(insideViewport(s.getBounds2D())){
-							g.draw(s);
-						}
-					}
-				}
-			}
-		}
+	/**
+	 * Invalidates the caches if the frame was requested after invalidateCaches. Only used by the thread drawing the frames.
+	 * @param frame The frame about to be drawn.
+	 */
+	private void validateCaches(RenderThread.Frame frame) {
+		if(frame.caches == drawnCacheRevision) {return;}
+		drawnCacheRevision = frame.caches;
+		if(screenCache != null) {screenCache.invalidate();}
+		if(caches == null) {return;}
+		for(ViewportCache cache : caches.values()) {cache.invalidate();}
+	}
 
-		//Drawing park walls (mostly to encapsulate Copenhagen zoo.
-		if(detailLevel >= 12){
-			g.setColor(new Color(157, 43, 5));
-			for (Shape s : model.parkWall()) {
-				if(insideViewport(s.getBounds2D())){
-					g.draw(s);
-				}
-			}
-		}
+	/**
+	 * Returns a round stroke of the given width, used for the route.
+	 */
+	private static BasicStroke pathStroke(float width) {
+		return new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+	}
 
-		//Draw railways.
-		if(config.visible(ConfigType.RAILWAY) && detailLevel >= 3) {
-			g.setColor(config.color(ConfigType.RAILWAY));
-			g.setStroke(new BasicStroke(0.000025f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-			for(Shape[] sa : model.dataRailway(viewport)){
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.draw(s);
-					}
+	/**
+	 * Returns the renderer of the static layers, set up to draw the given frame. The same renderer draws frame after frame,
+	 * so what it keeps between paints stays, and is only replaced along with the Model or the Config.
+	 * The frame's own viewport goes through the ViewportCaches and the ScreenCache, tiles skip them, and so do the layers
+	 * not stored in trees for the ViewportCaches. Only used by the thread drawing the frames.
+	 * @param frame The frame about to be drawn.
+	 */
+	private MapRenderer renderer(RenderThread.Frame frame) {
+		if(renderer == null || renderer.model() != frame.model || renderer.config() != frame.config) {
+			renderer = new MapRenderer(frame.model, frame.config) {
+				protected List<PolygonApprox[]> data(LayerType layer, Rectangle2D area, double pixelSize) {
+					if(area != current.viewport || model().data(layer) == null) {return super.data(layer, area, pixelSize);}
+					check();
+					return MapCanvas.this.data(layer, area, pixelSize);
 				}
-			}
-		}
 
-		//Draw walkways.
-		if(config.visible(ConfigType.WALKWAY) && detailLevel >= 13) {
-			g.setColor(config.color(ConfigType.WALKWAY));
-			g.setStroke(cycleAndWalkwayStroke());
-			for(Shape[] sa : model.dataWalk(viewport)) {
-				for(Shape s : sa){
-					if(insideViewport(s.getBounds2D())){
-						g.draw(s);
-					}
+				protected ScreenCache screenCache(Rectangle2D area) {
+					if(area != current.viewport) {return null;}
+					if(screenCache == null) {screenCache = new ScreenCache();}
+					return screenCache;
 				}
-			}
-		}
 
-		//Draw roads and set stroke depending on type.
-		if(config.visible(ConfigType.SMALLROADS)) {
-			if (detailLevel >= 10) {
-				g.setStroke(new BasicStroke(0.000025f));
-				g.setColor(config.color(ConfigType.SMALLROADS));
-				for (Shape[] sa : model.dataRoad_lvl5(viewport)) {
-					for (Shape s : sa) {
-						if(insideViewport(s.getBounds2D())){
-							g.draw(s);
-						}
-					}
-				}
-			}
-			if (detailLevel >= 9) {
-				g.setStroke(new BasicStroke(0.000025f));
-				g.setColor(config.color(ConfigType.SMALLROADS));
-				for (Shape[] sa : model.dataRoad_lvl4(viewport)) {
-					for (Shape s: sa) {
-						if(insideViewport(s.getBounds2D())){
-							g.draw(s);
-						}
-					}
+				protected void check() {
+					super.check();
+					current.check();
 				}
-			}
+			};
 		}
+		current = frame;
+		frame.configure(renderer);
+		renderer.resetStats();
+		return renderer;
+	}
 
-		if(config.visible(ConfigType.MOTORWAY)) {
-			g.setStroke(new BasicStroke(0.00004f));
-			g.setColor(config.color(ConfigType.MOTORWAY));
-			for (Shape[] sa : model.dataRoad_lvl1(viewport)) {
-				for (Shape s: sa) {
-					if(insideViewport(s.getBounds2D())){
-						g.draw(s);
-					}
-				}
-			}
-		}
-
-		if(config.visible(ConfigType.BIGROADS)) {
-			if (detailLevel >= 4) {
-				g.setStroke(new BasicStroke(0.00003f));
-				g.setColor(config.color(ConfigType.BIGROADS));
-				for (Shape[] sa : model.dataRoad_lvl3(viewport)) {
-					for (Shape s: sa) {
-						if(insideViewport(s.getBounds2D())){
-							g.draw(s);
-						}
-					}
-				}
-			}
-
-			g.setStroke(new BasicStroke(0.000035f));
-			g.setColor(config.color(ConfigType.BIGROADS));
-			for (Shape[] sa : model.dataRoad_lvl2(viewport)) {
-				for (Shape s: sa) {
-					if(insideViewport(s.getBounds2D())){
-						g.draw(s);
-					}
-				}
-			}
+	/**
+	 * Draws the static layers of a frame. Called by the RenderThread, or straight from paint when the canvas is not on screen.
+	 * While the user interacts with the map, frames that cannot be copied from cached tiles get a coarse pass,
+	 * which gets coarser or finer to stay within the frame budget.
+	 * @param g The Graphics to draw on.
+	 * @param frame The frame to draw.
+	 */
+	void paintStatic(Graphics2D g, RenderThread.Frame frame) {
+		long start = System.nanoTime();
+		validateCaches(frame);
+		MapRenderer renderer = renderer(frame);
+		AffineTransform at = frame.trans;
+		boolean sameScale = at.getScaleX() == linear.getScaleX() && at.getShearY() == linear.getShearY()
+				&& at.getShearX() == linear.getShearX() && at.getScaleY() == linear.getScaleY();
+		linear.setTransform(at.getScaleX(), at.getShearY(), at.getShearX(), at.getScaleY(), 0, 0);
+		if(frame.tiles && (sameScale || tiles.threads() > 1) && paintTiles(g, frame, renderer, linear, frame.interacting)) {
+			profiler.frame(System.nanoTime() - start, renderer, true, false);
+			return;
+		}
+		if(frame.interacting) {
+			renderer.coarse(coarse);
+			renderer.AA(false);
+			long t = System.nanoTime();
+			renderer.paint(g, frame.trans, frame.width, frame.height, frame.viewport);
+			t = System.nanoTime() - t;
+			if(t > FRAME_BUDGET && coarse < MAX_COARSE) {coarse *= 2;}
+			else if(t < FRAME_BUDGET / 4 && coarse > 2) {coarse /= 2;}
+		} else {
+			renderer.paint(g, frame.trans, frame.width, frame.height, frame.viewport);
 		}
+		profiler.frame(System.nanoTime() - start, renderer, false, frame.interacting);
+	}
 
-		//Drawing shapes for airports.
-		if(config.visible(ConfigType.AIRWAY) && detailLevel >= 9) {
-			g.setColor(config.color(ConfigType.AIRWAY));
-			for(Shape s: model.airport()){
-				if(insideViewport(s.getBounds2D())){
-					g.draw(s);
-				}
+	/**
+	 * Draws the static layers by copying tiles, missing tiles are drawn in parallel first.
+	 * The translation is rounded to whole pixels, so tiles line up.
+	 * @param g The Graphics to draw on.
+	 * @param frame The frame to draw.
+	 * @param renderer The renderer set up for the frame.
+	 * @param linear The transform of the frame without the translation.
+	 * @param onlyCached If true, nothing is drawn unless every tile is in the cache already.
+	 * @return Whether the tiles were drawn.
+	 */
+	private boolean paintTiles(Graphics2D g, RenderThread.Frame frame, MapRenderer renderer, AffineTransform linear, boolean onlyCached) {
+		tiles.validate(renderer);
+		long tx = Math.round(frame.trans.getTranslateX()), ty = Math.round(frame.trans.getTranslateY());
+		int col0 = (int) Math.floorDiv(-tx, TileCache.SIZE), col1 = (int) Math.floorDiv(frame.width - 1 - tx, TileCache.SIZE);
+		int row0 = (int) Math.floorDiv(-ty, TileCache.SIZE), row1 = (int) Math.floorDiv(frame.height - 1 - ty, TileCache.SIZE);
+		int cols = col1 - col0 + 1, rows = row1 - row0 + 1;
+		if(onlyCached && !tiles.cached(renderer, linear, col0, row0, cols, rows)) {return false;}
+		if(frameTiles.length < cols * rows) {frameTiles = new BufferedImage[cols * rows];}
+		tiles.tiles(renderer, linear, col0, row0, cols, rows, frameTiles);
+		for(int row = 0; row < rows; row++) {
+			for(int col = 0; col < cols; col++) {
+				g.drawImage(frameTiles[row * cols + col], (int) (tx + (long) (col0 + col) * TileCache.SIZE), (int) (ty + (long) (row0 + row) * TileCache.SIZE), null);
 			}
 		}
+		return true;
+	}
 
-		// Draw cycleways.
-		if(config.visible(ConfigType.CYCLE) && detailLevel >= 13) {
-			g.setColor(config.color(ConfigType.CYCLE));
-			g.setStroke(cycleAndWalkwayStroke());
-			for(Shape[] sa : model.dataCycle(viewport)) {
-				for(Shape s: sa){
-					if(insideViewport(s.getBounds2D())){
-						g.draw(s);
-					}
-				}
+	/**
+	 * Paints all the objects in the current viewport. While the canvas is on screen, the static layers are drawn
+	 * by the RenderThread, and the latest finished frame is shown until the current one is done.
+	 * @param gg The Graphics needed to draw this.
+     */
+	public void paint(Graphics gg){
+		requestFocus();
+		long start = System.nanoTime();
+		if(config.revision() != configRevision) {configRevision = config.revision(); invalidateCaches();}
+		Graphics2D g = (Graphics2D) gg;
+		if(AA) {g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);}
+		RenderThread.Frame frame = new RenderThread.Frame(trans, getWidth(), getHeight(), model, config, detailLevel, farmPlainA, grassA,
+				AA, compressionTest, viewport, useTiles && !compressionTest && !treeTest, interacting, cacheRevision);
+		if(isShowing()) {
+			if(renderThread == null) {
+				renderThread = new RenderThread(this);
+				renderThread.start();
 			}
+			renderThread.request(frame);
+			renderThread.draw(g, trans, config.color(ConfigType.BACKGROUND));
+		} else {
+			paintStatic(g, frame);
 		}
+		g.setTransform(trans);
 
 		// Draw navigation route.
 		Road[] path = model.path();
@@ -773,7 +625,7 @@ public class MapCanvas extends JComponent implements Observer{
 		if(path != null) {
 			for (int i = 0; i < path.length; i++) {
 				if ((i == 0 || i == path.length - 1) && path[i].name().contains("[WALKWAY]")) {
-					g.setStroke(cycleAndWalkwayStroke());
+					g.setStroke(WALK_STROKE);
 					g.draw(path[i]);
 				} else {
 					//Drawing the current path found by PathFinder
@@ -784,24 +636,32 @@ public class MapCanvas extends JComponent implements Observer{
 		}
 
 		//The last things should be drawn without using the transform
-		g.setTransform(new AffineTransform());
+		g.setTransform(IDENTITY);
 
 		//Drawing highlight
 		if(model.highlight() != null) {
-			float[] dia = {25f,20f,15f};
+			float x = (float) model.highlight().getX(), y = (float) model.highlight().getY();
 
 			g.setColor(Color.RED);
-			g.fill(new Ellipse2D.Float((float) model.highlight().getX() - (dia[0]/2), (float) model.highlight().getY() - (dia[0]/2), dia[0], dia[0]));
+			dot.setFrame(x - 25f/2, y - 25f/2, 25f, 25f);
+			g.fill(dot);
 			g.setColor(Color.WHITE);
-			g.fill(new Ellipse2D.Float((float) model.highlight().getX() - (dia[1]/2), (float) model.highlight().getY() - (dia[1]/2), dia[1], dia[1]));
+			dot.setFrame(x - 20f/2, y - 20f/2, 20f, 20f);
+			g.fill(dot);
 			g.setColor(Color.RED);
-			g.fill(new Ellipse2D.Float((float) model.highlight().getX() - (dia[2]/2), (float) model.highlight().getY() - (dia[2]/2), dia[2], dia[2]));
+			dot.setFrame(x - 15f/2, y - 15f/2, 15f, 15f);
+			g.fill(dot);
 		}
 
 		//Draw POI's
 		if(detailLevel >= 14){
-			for (POI p : model.POI()) {
-				Point2D pp = trans.transform(p, new Point2D.Float());
+			visiblePOI.clear();
+			double dx = viewport.getWidth() * 0.03, dy = viewport.getHeight() * 0.03;
+			poiArea.setRect(viewport.getX() - dx, viewport.getY() - dy, viewport.getWidth() + 2*dx, viewport.getHeight() + 2*dy);
+			model.POIIndex().viewport(poiArea, null, visiblePOI);
+			for (int i = 0; i < visiblePOI.size(); i++) {
+				POI p = visiblePOI.get(i);
+				Point2D pp = trans.transform(p, screenPoint);
 				int x = (int) pp.getX();
 				int y = (int) pp.getY();
 				//3 % of total = security margin. Be sure to draw every POI inside canvasview.
@@ -812,8 +672,9 @@ public class MapCanvas extends JComponent implements Observer{
 				}
 			}
 		}
-		for(POI p : model.userPOI()) {
-			Point2D pp = trans.transform(p, new Point2D.Float());
+		for(int i = 0; i < model.userPOI().size(); i++) {
+			POI p = model.userPOI().get(i);
+			Point2D pp = trans.transform(p, screenPoint);
 			g.drawImage(IconPack.userPOIIcon(p.type()), (int) pp.getX() - 16, (int) pp.getY() - 16, 32, 32, null);
 		}
 		if(addingPoint != null){
@@ -822,34 +683,19 @@ public class MapCanvas extends JComponent implements Observer{
 
 		//Draw zoom-scale line for 100px with text. 
 		g.setFont(overlayFont);
-		Point2D start = new Point2D.Float(getWidth() - 120, getHeight()-30);
-		Point2D end = new Point2D.Float(getWidth() - 20, getHeight()-30);
-		Line2D line = new Line2D.Float(start,end);
-		Rectangle2D bg = new Rectangle2D.Float(getWidth()-130, getHeight()-40, 120, g.getFontMetrics().getHeight()+ 20);
-		g.setColor(new Color(255,255,255,140));
-		g.fill(bg);
+		g.setColor(OVERLAY_BACKGROUND);
+		g.fillRect(getWidth()-130, getHeight()-40, 120, g.getFontMetrics().getHeight()+ 20);
 		g.setColor(Color.BLACK);
-		g.setStroke(new BasicStroke(4f));
-		g.draw(line);
+		g.setStroke(SCALE_STROKE);
+		g.drawLine(getWidth() - 120, getHeight()-30, getWidth() - 20, getHeight()-30);
 		g.setColor(Color.WHITE);
-		float[] dash = {5.0f};
-		g.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND,	BasicStroke.JOIN_ROUND,	1.0f, dash, 0.0f));
-		g.draw(line);
+		g.setStroke(SCALE_DASH);
+		g.drawLine(getWidth() - 120, getHeight()-30, getWidth() - 20, getHeight()-30);
 		g.setColor(Color.BLACK);
-		String overlayTxt = "~ " + scale + "m";
-		g.drawString(overlayTxt, getWidth() - 50 - g.getFontMetrics().stringWidth(overlayTxt), getHeight() - 10);
-
-		time += System.nanoTime();
-		time /= 10;
-		if(showFPS) {
-			//Draw fps counter box
-			String fps = String.format("FPS: %.1f", 1e9 / time);
-			Rectangle2D fpsBG = new Rectangle2D.Float(15, 15, g.getFontMetrics().stringWidth(fps) + 10, g.getFontMetrics().getAscent() + 5);
-			g.setColor(new Color(255, 255, 255, 140));
-			g.fill(fpsBG);
-			g.setColor(Color.BLACK);
-			g.drawString(fps, 20, g.getFontMetrics().getAscent() + 15);
-		}
+		g.drawString(scaleText, getWidth() - 50 - g.getFontMetrics().stringWidth(scaleText), getHeight() - 10);
+
+		profiler.paint(System.nanoTime() - start, interacting);
+		if(showProfiler) {profiler.draw(g);}
 
 		//Drawing the testviewport for debugging the datatrees.
 		if(treeTest){
@@ -911,19 +757,6 @@ public class MapCanvas extends JComponent implements Observer{
 		}
 	}
 
-	/**
-	 * Calculates whether a Rectangle2D is inside the viewport or not.
-	 * @param drawable The bounds of a drawable object to be tested.
-	 * @return boolean Whether or not the object should be drawn.
-     */
-	private boolean insideViewport(Rectangle2D drawable){
-		if(drawable.getMinX() > viewport.getMaxX() || drawable.getMaxX() < viewport.getMinX() || drawable.getMinY() > viewport.getMaxY() || drawable.getMaxY() < viewport.getMinY()){
-			return false;
-		} else {
-			return true;
-		}
-	}
-
 	/**
 	 * Sets the boolean searchBox.
 	 * @param b
@@ -0,0 +1,487 @@
+package View;
+
+import Model.Batch;
+import Model.Config;
+import Model.DataTree;
+import Model.Model;
+import Model.PolygonApprox;
+import Model.ScreenCache;
+import Model.ShapeView;
+import Model.Viewport;
+import Model.ViewportCache;
+import enums.ConfigType;
+import enums.LayerType;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Paints the static layers of the map, everything from the coast up to the cycleways.
+ * Used by the MapCanvas both for drawing straight to the screen and for drawing tiles.
+ * The layers are described by a table, gone through by a single loop that also measures the time,
+ * the shapes looked at and the shapes drawn for every layer.
+ */
+public class MapRenderer {
+	private static final BasicStroke ROAD = roadStroke(), DASHED = cycleAndWalkwayStroke();
+	private static final BasicStroke THIN = new BasicStroke(); // Keeps Java2D on its thin path for fills without antialiasing.
+	private static final AffineTransform IDENTITY = new AffineTransform();
+
+	/**
+	 * The static layers, in the order they are drawn.
+	 */
+	private static final float AREA = 4, LINE = 4, LARGE_AREA = 35; // Smallest shapes drawn, squared pixels: 2 pixels across, 2 pixels long.
+	private static final Layer[] LAYERS = {
+		new Layer(LayerType.COAST, null, 0, ConfigType.BACKGROUND, null).simplified().culled(AREA),
+		new Layer(LayerType.SAND, ConfigType.SAND, 6, ConfigType.SAND, null).culled(AREA),
+		new Layer(LayerType.FARMLAND, ConfigType.FARMLAND, 4, ConfigType.FARMLAND, null).fade(5, false).culled(AREA),
+		new Layer(LayerType.PLAIN, ConfigType.PLAIN, 4, ConfigType.PLAIN, null).fade(5, false).culled(AREA),
+		new Layer(LayerType.RESIDENTIAL, ConfigType.RESIDENTIAL, 2, ConfigType.RESIDENTIAL, null).culled(AREA),
+		new Layer(LayerType.INDUSTRIAL, ConfigType.INDUSTRIAL, 2, ConfigType.INDUSTRIAL, null).below(4, ConfigType.RESIDENTIAL).culled(AREA),
+		new Layer(LayerType.GRASS, ConfigType.GRASS, 7, ConfigType.GRASS, null).fade(8, true).culled(AREA),
+		new Layer(LayerType.FOREST, ConfigType.FOREST, 2, ConfigType.FOREST, null).simplified().culled(LARGE_AREA),
+		new Layer(LayerType.PARKING, ConfigType.PARKING, 12, ConfigType.PARKING, null).culled(AREA),
+		new Layer(LayerType.BUILDING, ConfigType.BUILDING, 11, ConfigType.BUILDING, null).random().culled(AREA),
+		new Layer(LayerType.WATER, ConfigType.WATER, 0, ConfigType.WATER, null).simplified().culled(LARGE_AREA), // Lakes and other water areas, not oceans.
+		new Layer(LayerType.WATERWAY, ConfigType.WATER, 4, ConfigType.WATER, ROAD).culled(LINE),
+		new Layer(LayerType.PARK_WALL, null, 12, null, ROAD).color(new Color(157, 43, 5)).culled(LINE), // Mostly to encapsulate Copenhagen zoo.
+		new Layer(LayerType.RAILWAY, ConfigType.RAILWAY, 3, ConfigType.RAILWAY, new BasicStroke(0.000025f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)).culled(LINE),
+		new Layer(LayerType.WALKWAY, ConfigType.WALKWAY, 13, ConfigType.WALKWAY, DASHED).culled(LINE),
+		new Layer(LayerType.ROAD_LVL5, ConfigType.SMALLROADS, 10, ConfigType.SMALLROADS, new BasicStroke(0.000025f)).culled(LINE),
+		new Layer(LayerType.ROAD_LVL4, ConfigType.SMALLROADS, 9, ConfigType.SMALLROADS, new BasicStroke(0.000025f)).culled(LINE),
+		new Layer(LayerType.ROAD_LVL1, ConfigType.MOTORWAY, 0, ConfigType.MOTORWAY, new BasicStroke(0.00004f)).simplified().culled(LINE),
+		new Layer(LayerType.ROAD_LVL3, ConfigType.BIGROADS, 4, ConfigType.BIGROADS, new BasicStroke(0.00003f)).culled(LINE),
+		new Layer(LayerType.ROAD_LVL2, ConfigType.BIGROADS, 0, ConfigType.BIGROADS, new BasicStroke(0.000035f)).simplified().culled(LINE),
+		new Layer(LayerType.AIRWAY, ConfigType.AIRWAY, 9, ConfigType.AIRWAY, new BasicStroke(0.000035f)).culled(LINE),
+		new Layer(LayerType.CYCLE, ConfigType.CYCLE, 13, ConfigType.CYCLE, DASHED).culled(LINE),
+	};
+
+	private static final LayerType[] TYPES = LayerType.values(); // values() returns a new array every call.
+	private static final double REACH = reach(); // The furthest any stroke reaches beyond the shape it draws (world space).
+
+	private static final ThreadLocal<ShapeView> VIEW = new ThreadLocal<ShapeView>() { // Tiles are drawn on several threads at once.
+		protected ShapeView initialValue() {return new ShapeView();}
+	};
+	private final Model model;
+	private final Config config;
+	private boolean AA, compressionTest, batched;
+	private static final int COARSE_DETAIL = 10; // Buildings, parking, walkways and cycleways are left out of a coarse pass.
+	private int detailLevel, farmPlainA, grassA, coarse = 1;
+	private volatile boolean cancelled;
+	private final long[] nanos = new long[LAYERS.length], queryNanos = new long[LAYERS.length], considered = new long[LAYERS.length], drawn = new long[LAYERS.length];
+	private final Color[] faded = new Color[LAYERS.length];
+	private final List<PolygonApprox[]> airport = new ArrayList<>(), parkWall = new ArrayList<>();
+	private ViewportCache[] caches;
+	private ScreenCache screen;
+	private int paints;
+
+	/**
+	 * Creates a renderer for the given model and colors.
+	 * @param model The Model to draw.
+	 * @param config The Config deciding colors and visibility.
+	 */
+	public MapRenderer(Model model, Config config) {
+		this.model = model;
+		this.config = config;
+		AA = true;
+	}
+
+	/**
+	 * Sets the level of details to be drawn.
+	 * @param n An integer describing how detailed the map should be drawn.
+	 */
+	public void detailLevel(int n) {detailLevel = n;}
+
+	/**
+	 * Sets the alpha values used while farmland, plains and grass are fading in.
+	 * @param farmPlain The alpha value for farmland and plains.
+	 * @param grass The alpha value for grass.
+	 */
+	public void alpha(int farmPlain, int grass) {farmPlainA = farmPlain; grassA = grass;}
+
+	/**
+	 * Makes the renderer draw a quick, coarse pass, used while the user is interacting with the map.
+	 * Geometry is simplified as if pixels were the given factor larger, small features are left out,
+	 * and nothing above detail level 10 is drawn.
+	 * @param factor 1 for a full pass, larger for a coarser pass.
+	 */
+	public void coarse(int factor) {coarse = Math.max(1, factor);}
+
+	/**
+	 * Sets whether antialiasing is used.
+	 * @param b
+	 */
+	public void AA(boolean b) {AA = b;}
+
+	/**
+	 * Sets whether buildings are painted in random colors to show compression.
+	 * @param b
+	 */
+	public void compressionTest(boolean b) {compressionTest = b;}
+
+	/**
+	 * Makes the renderer look the layers up through a ViewportCache per layer, so frame after frame of the same
+	 * or a slightly moved area allocate nothing. Only for a renderer painting one area at a time, never for tiles.
+	 * @param b
+	 */
+	public void cacheViewport(boolean b) {caches = b ? new ViewportCache[TYPES.length] : null;}
+
+	/**
+	 * Makes the renderer keep the shapes it draws projected to the screen, so a frame panned from the previous one
+	 * transforms no points, see ScreenCache. Only for a renderer painting one area at a time, never for tiles.
+	 * @param b
+	 */
+	public void cacheProjection(boolean b) {screen = b ? new ScreenCache() : null;}
+
+	/**
+	 * Returns the ScreenCache to draw the given area with, or null to transform every point.
+	 * @param area The area being drawn (world space).
+	 * @return
+	 */
+	protected ScreenCache screenCache(Rectangle2D area) {return screen;}
+
+	/**
+	 * Sets whether the shapes of each leaf node are drawn merged into batches, one fill or draw call per batch, see Batch.
+	 * Off by default: with the Marlin renderer of current JDKs a merged path has more edges per scanline
+	 * and costs more to fill than the shapes drawn one by one.
+	 * Opt-in only: the MapCanvas, its tiles and the RenderThread frames never turn it on, only Benchmark render does,
+	 * to compare the two.
+	 * @param b
+	 */
+	public void batched(boolean b) {
+		batched = b;
+		synchronized(airport) {airport.clear();}
+		synchronized(parkWall) {parkWall.clear();}
+	}
+
+	/**
+	 * Makes every paint using this renderer stop at the next layer, with a CancellationException.
+	 */
+	public void cancel() {cancelled = true;}
+
+	/**
+	 * Returns whether the renderer has been cancelled.
+	 * @return
+	 */
+	public boolean cancelled() {return cancelled;}
+
+	/**
+	 * Returns the Model being drawn.
+	 * @return
+	 */
+	public Model model() {return model;}
+
+	/**
+	 * Returns the Config used for colors and visibility.
+	 * @return
+	 */
+	public Config config() {return config;}
+
+	/**
+	 * Returns a number that is the same for two renderers drawing exactly the same at the same transform,
+	 * except for changes to the Config or the Model.
+	 * @return
+	 */
+	public int style() {return style(detailLevel, farmPlainA, grassA, coarse, batched, compressionTest, AA);}
+
+	/**
+	 * Returns the style() of a renderer with the given settings.
+	 * @return
+	 */
+	public static int style(int detailLevel, int farmPlainA, int grassA, int coarse, boolean batched, boolean compressionTest, boolean AA) {
+		int alpha = 0;
+		if(detailLevel == 4) {alpha = farmPlainA;}
+		else if(detailLevel == 7) {alpha = grassA;}
+		return ((coarse << 8 | detailLevel) << 8 | alpha) << 3 | (batched ? 4 : 0) | (compressionTest ? 2 : 0) | (AA ? 1 : 0);
+	}
+
+	/**
+	 * Returns a number that changes whenever something this renderer draws has changed, in the Config or in the Model.
+	 * @return
+	 */
+	public int revision() {return revision(model, config);}
+
+	/**
+	 * Returns the revision() of a renderer drawing the given Model with the given Config.
+	 * @return
+	 */
+	public static int revision(Model model, Config config) {
+		int revision = config.revision();
+		for(LayerType layer : TYPES) {
+			DataTree tree = model.data(layer);
+			revision = 31*revision + (tree == null ? 0 : tree.revision());
+		}
+		return 31*(31*revision + model.airport().size()) + model.parkWall().size();
+	}
+
+	/**
+	 * Returns the content of a layer within the given area. Called once for every layer drawn,
+	 * overriding methods must call check() first.
+	 * @param layer The desired layer.
+	 * @param area The area being drawn (world space).
+	 * @param pixelSize The width of a single pixel in world space, 0 for full geometry.
+	 * @return Might return an empty list, but never null.
+	 */
+	protected List<PolygonApprox[]> data(LayerType layer, Rectangle2D area, double pixelSize) {
+		check();
+		if(layer == LayerType.AIRWAY) {return list(airport, model.airport());}
+		if(layer == LayerType.PARK_WALL) {return list(parkWall, model.parkWall());}
+		DataTree tree = model.data(layer);
+		if(tree == null) {return Collections.emptyList();}
+		if(caches == null) {return batched ? tree.batches(area, pixelSize) : tree.tree(area, pixelSize);}
+		ViewportCache cache = caches[layer.ordinal()];
+		if(cache == null || cache.dataTree() != tree || cache.batched() != batched) {cache = caches[layer.ordinal()] = new ViewportCache(tree, batched);}
+		return cache.tree(area, pixelSize);
+	}
+
+	/**
+	 * Wraps a layer not stored in a DataTree, the wrapper is only rebuilt when shapes have been added.
+	 * When batched, the shapes are merged just like the leaf nodes of the trees.
+	 * @param list The wrapper kept by this renderer.
+	 * @param shapes The shapes of the layer.
+	 */
+	private List<PolygonApprox[]> list(List<PolygonApprox[]> list, List<PolygonApprox> shapes) {
+		synchronized(list) {
+			if(list.isEmpty() || Batch.shapes(list.get(0)) != shapes.size()) {
+				PolygonApprox[] array = shapes.toArray(new PolygonApprox[shapes.size()]);
+				Arrays.sort(array, PolygonApprox.LARGEST_FIRST);
+				list.clear();
+				list.add(batched ? Batch.of(array) : array);
+			}
+			return list;
+		}
+	}
+
+	/**
+	 * Stops the paint in progress if the renderer has been cancelled.
+	 * @throws CancellationException If the renderer has been cancelled.
+	 */
+	protected void check() {
+		if(cancelled) {throw new CancellationException("Frame cancelled");}
+	}
+
+	/**
+	 * Paints the static layers, by going through the table of layers. The transform of the Graphics is replaced by the given one,
+	 * or by the translation to draw projected points with when a ScreenCache is used.
+	 * @param g The Graphics to draw on.
+	 * @param at The transform from world space to the device space of g.
+	 * @param width The width of the area to fill (device space).
+	 * @param height The height of the area to fill (device space).
+	 * @param area The area to draw (world space), at least everything touching it is drawn.
+	 * @throws CancellationException If the renderer is cancelled before the paint is done.
+	 */
+	public void paint(Graphics2D g, AffineTransform at, int width, int height, Rectangle2D area) {
+		float squarePixel = (float) (coarse*coarse/Math.abs(at.getDeterminant())); // getSize of a shape one coarse pixel across, getSize is squared.
+		double pixelSize = coarse/Math.sqrt(Math.abs(at.getDeterminant()));
+		double simple = coarse > 1 ? pixelSize : 0;
+		int detail = coarse > 1 ? Math.min(detailLevel, COARSE_DETAIL) : detailLevel;
+		if(AA) {g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);}
+
+		//Without coastlines everything is land, otherwise the coast is drawn on top of the sea.
+		DataTree coast = model.data(LayerType.COAST);
+		boolean sea = coast != null && coast.size() > 0;
+		g.setColor(config.color(sea ? ConfigType.WATER : ConfigType.BACKGROUND));
+		g.setTransform(IDENTITY); // A Graphics reused from the previous paint keeps its transform.
+		g.fillRect(-2, -2, width + 4, height + 4);
+		ScreenCache projected = screenCache(area);
+		AffineTransform drawn = projected == null ? at : projected.begin(at);
+		// Without antialiasing, Java2D copies every filled shape unless it is a path in device space, see ShapeView.path.
+		boolean aliased = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING) != RenderingHints.VALUE_ANTIALIAS_ON;
+
+		Random r = compressionTest ? new Random() : null;
+		ShapeView view = VIEW.get();
+		for(int i = 0; i < LAYERS.length; i++) {
+			Layer layer = LAYERS[i];
+			if(detail < layer.minDetail || (layer.visible != null && !config.visible(layer.visible))) {continue;}
+			if(layer.source == LayerType.COAST && !sea) {continue;}
+			long t = System.nanoTime();
+			float requiredSize = layer.minSize * squarePixel;
+			int looked = 0, shown = 0;
+			g.setColor(color(i, detail));
+			boolean device = aliased && layer.stroke == null;
+			g.setTransform(device ? IDENTITY : drawn);
+			if(device) {g.setStroke(THIN);}
+			else if(layer.stroke != null) {g.setStroke(projected == null ? layer.stroke : projected.stroke(layer.stroke));}
+			List<PolygonApprox[]> leafs = data(layer.source, area, layer.simplified ? pixelSize : simple);
+			long query = System.nanoTime() - t;
+			for(int j = 0; j < leafs.size(); j++) {
+				PolygonApprox[] paa = leafs.get(j);
+				float[][] points = projected == null ? null : projected.leaf(paa);
+				for(int k = 0; k < paa.length; k++) {
+					PolygonApprox pa = paa[k];
+					if(pa.getSize() < requiredSize) {break;} // The rest of the leaf is smaller still.
+					looked++;
+					if(!inside(pa, area)) {continue;}
+					if(r != null && layer.random) {g.setColor(new Color(r.nextInt(255),r.nextInt(255),r.nextInt(255)));}
+					if(points != null) {view.show(pa, projected.points(points, paa, k));} else {view.show(pa);}
+					if(layer.stroke != null) {g.draw(view);} else {g.fill(device ? view.path(drawn) : view);}
+					shown++;
+				}
+			}
+			record(i, System.nanoTime() - t, query, looked, shown);
+		}
+		view.show(null);
+		if(projected != null) {projected.end();}
+		synchronized(this) {paints++;}
+	}
+
+	/**
+	 * Returns the color of a layer at the given detail level.
+	 */
+	private Color color(int i, int detail) {
+		Layer layer = LAYERS[i];
+		if(layer.fixedColor != null) {return layer.fixedColor;}
+		if(layer.colorBelow != null && detail < layer.belowDetail) {return config.color(layer.colorBelow);}
+		Color co = config.color(layer.color);
+		if(detail >= layer.solidDetail) {return co;}
+		int alpha = layer.fadeGrass ? grassA : farmPlainA;
+		Color fade = faded[i]; // The faded color is kept until the Config or the alpha changes.
+		if(fade == null || fade.getAlpha() != alpha || (fade.getRGB() & 0xffffff) != (co.getRGB() & 0xffffff)) {
+			fade = faded[i] = new Color(co.getRed(), co.getGreen(), co.getBlue(), alpha);
+		}
+		return fade;
+	}
+
+	/**
+	 * Adds the numbers of one layer to the statistics of the renderer. Tiles may be painted on several threads at once.
+	 */
+	private synchronized void record(int i, long layerNanos, long layerQueryNanos, int layerConsidered, int layerDrawn) {
+		nanos[i] += layerNanos;
+		queryNanos[i] += layerQueryNanos;
+		considered[i] += layerConsidered;
+		drawn[i] += layerDrawn;
+	}
+
+	/**
+	 * Returns how many pixels a shape outside an area may still paint into it: the reach of the widest stroke,
+	 * and a pixel for antialiasing.
+	 * @param at The transform from world space to device space.
+	 * @return
+	 */
+	public static double margin(AffineTransform at) {return REACH * Math.sqrt(Math.abs(at.getDeterminant())) + 1;}
+
+	/**
+	 * Finds the furthest any stroke in the table reaches beyond the shape it draws: half its width,
+	 * up to the miter limit at a sharp miter join, and half the diagonal at a square cap.
+	 */
+	private static double reach() {
+		double reach = 0;
+		for(Layer layer : LAYERS) {
+			BasicStroke s = layer.stroke;
+			if(s == null) {continue;}
+			double factor = 1;
+			if(s.getEndCap() == BasicStroke.CAP_SQUARE) {factor = Math.sqrt(2);}
+			if(s.getLineJoin() == BasicStroke.JOIN_MITER) {factor = Math.max(factor, s.getMiterLimit());}
+			reach = Math.max(reach, s.getLineWidth() / 2 * factor);
+		}
+		return reach;
+	}
+
+	/**
+	 * Returns the number of layers in the table.
+	 * @return
+	 */
+	public static int layers() {return LAYERS.length;}
+
+	/**
+	 * Returns where the shapes of a layer come from.
+	 * @param i The index of the layer, in the order the layers are drawn.
+	 * @return
+	 */
+	public static LayerType layer(int i) {return LAYERS[i].source;}
+
+	/**
+	 * Returns the time spent drawing a layer, summed over every paint with this renderer.
+	 * @param i The index of the layer.
+	 * @return Nanoseconds.
+	 */
+	public synchronized long nanos(int i) {return nanos[i];}
+
+	/**
+	 * Returns the part of nanos(i) spent looking up the shapes of a layer, the rest is spent drawing them.
+	 * @param i The index of the layer.
+	 * @return Nanoseconds.
+	 */
+	public synchronized long queryNanos(int i) {return queryNanos[i];}
+
+	/**
+	 * Returns the number of shapes (or batches) of a layer that were looked at, summed over every paint with this renderer.
+	 * @param i The index of the layer.
+	 * @return
+	 */
+	public synchronized long considered(int i) {return considered[i];}
+
+	/**
+	 * Returns the number of shapes (or batches) of a layer that were drawn, summed over every paint with this renderer.
+	 * @param i The index of the layer.
+	 * @return
+	 */
+	public synchronized long drawn(int i) {return drawn[i];}
+
+	/**
+	 * Returns the number of paints with this renderer, one per frame or one per tile.
+	 * @return
+	 */
+	public synchronized int paints() {return paints;}
+
+	/**
+	 * Clears the statistics.
+	 */
+	public synchronized void resetStats() {
+		Arrays.fill(nanos, 0);
+		Arrays.fill(queryNanos, 0);
+		Arrays.fill(considered, 0);
+		Arrays.fill(drawn, 0);
+		paints = 0;
+	}
+
+	/**
+	 * Used to make special stroke for cycle- and walkways.
+	 * @return
+	 */
+	static BasicStroke cycleAndWalkwayStroke() {
+		float[] dasharray = {0.000025f,0.00001f,0.00001f,0.00001f};
+		return new BasicStroke(0.00001f,
+						BasicStroke.CAP_BUTT,
+						BasicStroke.JOIN_ROUND,
+						1.0f, dasharray, 0.0f);
+	}
+
+	/**
+	 * Used to make special stroke for railways (not used).
+	 * @return
+	 */
+	private static BasicStroke railwayStroke() {
+		float[] dasharray = {0.000045f,0.000045f,0.000045f,0.000045f};
+		return new BasicStroke(0.00002f,
+						BasicStroke.CAP_BUTT,
+						BasicStroke.JOIN_ROUND,
+						1.0f, dasharray, 0.0f);
+	}
+
+	/**
+	 * Used to determine stroke of road.
+	 * @return
+	 */
+	private static BasicStroke roadStroke() {
+		return new BasicStroke((float) 1.8e-5, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+	}
+
+	/**
+	 * Calculates whether a shape is inside the area being drawn or not.
+	 * @param drawable The shape to be tested.
+	 * @param area The area being drawn.
+	 * @return boolean Whether or not the shape should be drawn.
+	 */
+	private static boolean inside(PolygonApprox drawable, Rectangle2D area){
+		return Viewport.overlaps(area, drawable.getMinX(), drawable.getMinY(), drawable.getMaxX(), drawable.getMaxY());
+	}
+}
@@ -0,0 +1,200 @@
+package View;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import Model.Config;
+import Model.Model;
+
+/**
+ * Draws the static layers of a MapCanvas into a back buffer on its own thread, so a heavy frame never blocks the EDT.
+ * Asking for a new frame cancels the one being drawn. Finished frames are swapped to the front and the canvas is repainted,
+ * until then the EDT keeps showing the previous frame, moved to the current transform.
+ */
+class RenderThread extends Thread {
+	private final MapCanvas canvas;
+	private Frame pending, drawing, front;
+	private BufferedImage frontImage, backImage;
+
+	/**
+	 * Everything needed to draw the static layers once: the settings the renderer of the canvas is set up with before drawing.
+	 * The renderer itself is kept by the canvas from frame to frame.
+	 */
+	static final class Frame {
+		final AffineTransform trans;
+		final int width, height, revision, style;
+		final int detailLevel, farmPlainA, grassA, caches;
+		final boolean AA, compressionTest;
+		final Model model;
+		final Config config;
+		final Rectangle2D viewport;
+		final boolean tiles, interacting;
+		private volatile boolean cancelled;
+
+		/**
+		 * @param trans The transform from world space to the screen.
+		 * @param width The width of the screen.
+		 * @param height The height of the screen.
+		 * @param model The Model to draw.
+		 * @param config The Config deciding colors and visibility.
+		 * @param detailLevel The level of details to be drawn.
+		 * @param farmPlainA The alpha value for farmland and plains.
+		 * @param grassA The alpha value for grass.
+		 * @param AA Whether antialiasing is used.
+		 * @param compressionTest Whether buildings are painted in random colors.
+		 * @param viewport The area to draw (world space).
+		 * @param tiles Whether to draw through the TileCache.
+		 * @param interacting Whether the user is interacting with the map, so a coarse pass is enough.
+		 * @param caches A number changed whenever the caches of the canvas must be invalidated before drawing.
+		 */
+		Frame(AffineTransform trans, int width, int height, Model model, Config config, int detailLevel, int farmPlainA, int grassA,
+				boolean AA, boolean compressionTest, Rectangle2D viewport, boolean tiles, boolean interacting, int caches) {
+			this.trans = new AffineTransform(trans);
+			this.width = width;
+			this.height = height;
+			this.model = model;
+			this.config = config;
+			this.detailLevel = detailLevel;
+			this.farmPlainA = farmPlainA;
+			this.grassA = grassA;
+			this.AA = AA;
+			this.compressionTest = compressionTest;
+			this.viewport = viewport;
+			this.tiles = tiles;
+			this.interacting = interacting;
+			this.caches = caches;
+			revision = MapRenderer.revision(model, config);
+			style = MapRenderer.style(detailLevel, farmPlainA, grassA, 1, false, compressionTest, AA);
+		}
+
+		/**
+		 * Sets the renderer up to draw this frame, in full detail.
+		 * @param renderer A renderer of the same Model and Config.
+		 */
+		void configure(MapRenderer renderer) {
+			renderer.detailLevel(detailLevel);
+			renderer.alpha(farmPlainA, grassA);
+			renderer.AA(AA);
+			renderer.compressionTest(compressionTest);
+			renderer.coarse(1);
+		}
+
+		/**
+		 * Makes the paint of this frame stop, see check.
+		 */
+		void cancel() {cancelled = true;}
+
+		/**
+		 * Stops the paint of this frame if it has been cancelled.
+		 * @throws CancellationException If the frame has been cancelled.
+		 */
+		void check() {
+			if(cancelled) {throw new CancellationException("Frame cancelled");}
+		}
+
+		/**
+		 * Checks whether the two frames would look the same.
+		 */
+		boolean same(Frame f) {
+			return trans.equals(f.trans) && width == f.width && height == f.height && revision == f.revision && tiles == f.tiles
+					&& interacting == f.interacting && style == f.style && caches == f.caches && model == f.model && config == f.config
+					&& (viewport == null ? f.viewport == null : viewport.equals(f.viewport));
+		}
+	}
+
+	/**
+	 * Creates the thread, it still has to be started.
+	 * @param canvas The canvas drawing the frames and being repainted when they are done.
+	 */
+	RenderThread(MapCanvas canvas) {
+		super("Map renderer");
+		setDaemon(true);
+		this.canvas = canvas;
+	}
+
+	/**
+	 * Asks for a frame to be drawn, cancelling the frame being drawn. Nothing happens if the latest frame looks the same.
+	 * @param frame The frame to draw.
+	 */
+	synchronized void request(Frame frame) {
+		Frame latest = pending != null ? pending : drawing != null ? drawing : front;
+		if(latest != null && latest.same(frame)) {return;}
+		if(drawing != null) {drawing.cancel();}
+		pending = frame;
+		notifyAll();
+	}
+
+	/**
+	 * Copies the latest finished frame, moved from the transform it was drawn with to the given one.
+	 * Whatever the frame does not cover is filled with the background color.
+	 * @param g The Graphics to draw on.
+	 * @param trans The current transform from world space to the screen.
+	 * @param background The color used where there is nothing to show yet.
+	 */
+	synchronized void draw(Graphics2D g, AffineTransform trans, Color background) {
+		AffineTransform at = null;
+		if(front != null) {
+			at = new AffineTransform(trans);
+			try {
+				at.concatenate(front.trans.createInverse());
+			} catch (NoninvertibleTransformException e) {
+				at = null;
+			}
+		}
+		if(at == null || !at.isIdentity() || front.width < canvas.getWidth() || front.height < canvas.getHeight()) {
+			g.setColor(background);
+			g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		}
+		if(at != null) {g.drawImage(frontImage, at, null);}
+	}
+
+	/**
+	 * Draws the requested frames, one at a time.
+	 */
+	public void run() {
+		while(true) {
+			Frame frame;
+			synchronized(this) {
+				while(pending == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				frame = pending;
+				pending = null;
+				drawing = frame;
+			}
+			if(backImage == null || backImage.getWidth() != Math.max(1, frame.width) || backImage.getHeight() != Math.max(1, frame.height)) {
+				backImage = new BufferedImage(Math.max(1, frame.width), Math.max(1, frame.height), BufferedImage.TYPE_INT_RGB);
+			}
+			boolean done = false;
+			Graphics2D g = backImage.createGraphics();
+			try {
+				canvas.paintStatic(g, frame);
+				done = true;
+			} catch (CancellationException e) {
+				// A newer frame is pending.
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			} finally {
+				g.dispose();
+			}
+			synchronized(this) {
+				drawing = null;
+				if(done) {
+					BufferedImage swap = frontImage;
+					frontImage = backImage;
+					backImage = swap;
+					front = frame;
+				}
+			}
+			if(done) {canvas.repaint();}
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package View;
+
+import Model.Config;
+import Model.Model;
+import Model.Viewport;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the static layers of the map as square images, so a repaint only has to copy them to the screen.
+ * Tiles are laid out in a grid in device space before the translation, so panning reuses every tile,
+ * while each scale and rotation has its own grid. The least recently used tiles are dropped to stay within a memory budget,
+ * and everything is dropped when the Config, the Model or the data in it changes.
+ * Missing tiles are drawn in parallel on a pool of worker threads, each tile with its own Graphics2D.
+ * Apart from the drawing itself, the cache must only be used from a single thread at a time.
+ */
+public class TileCache {
+	public static final int SIZE = 256; // Width and height of a tile in pixels.
+	private static final int TILE_BYTES = SIZE * SIZE * 4;
+	private final long maxBytes;
+	private final LinkedHashMap<Key, BufferedImage> tiles;
+	private final ExecutorService pool;
+	private final int threads;
+	private Model model;
+	private Config config;
+	private int revision;
+	private long hits, misses, evictions;
+	// Reused by every call of tiles, so a frame of cached tiles allocates nothing.
+	private final Key probe = new Key(); // Looks tiles up, never put in the cache itself.
+	private final List<Key> keys = new ArrayList<>();
+	private final List<BufferedImage> images = new ArrayList<>();
+	private final List<Callable<Void>> jobs = new ArrayList<>();
+	private boolean[] done = new boolean[0];
+
+	/**
+	 * Creates an empty cache drawing tiles on every core.
+	 * @param maxBytes The most memory the tiles may use, at least one screen worth of tiles should fit.
+	 */
+	public TileCache(long maxBytes) {
+		this(maxBytes, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an empty cache.
+	 * @param maxBytes The most memory the tiles may use, at least one screen worth of tiles should fit.
+	 * @param threads The number of threads drawing tiles, 1 draws them on the calling thread.
+	 */
+	public TileCache(long maxBytes, int threads) {
+		this.maxBytes = maxBytes;
+		this.threads = Math.max(1, threads);
+		tiles = new LinkedHashMap<>(64, 0.75f, true);
+		pool = this.threads > 1 ? Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Tile renderer");
+				t.setDaemon(true);
+				return t;
+			}
+		}) : null;
+	}
+
+	/**
+	 * Drops every tile if the given renderer draws something else than the tiles were drawn with.
+	 * @param renderer The renderer about to be used.
+	 */
+	public void validate(MapRenderer renderer) {
+		int r = renderer.revision();
+		if(model != renderer.model() || config != renderer.config() || revision != r) {
+			clear();
+			model = renderer.model();
+			config = renderer.config();
+			revision = r;
+		}
+	}
+
+	/**
+	 * Returns a block of tiles, drawing the missing ones in parallel. Only tiles drawn to the end are kept in the cache.
+	 * @param renderer The renderer drawing the tiles, validate(MapRenderer) should have been called with it first.
+	 * @param linear The transform from world space to device space, without the translation.
+	 * @param col0 The first column, covering device space from col0*SIZE (before the translation).
+	 * @param row0 The first row, covering device space from row0*SIZE (before the translation).
+	 * @param cols The number of columns.
+	 * @param rows The number of rows.
+	 * @param out Receives the tiles row by row, must hold at least cols*rows tiles.
+	 * @throws CancellationException If the renderer was cancelled before every tile was drawn.
+	 */
+	public void tiles(MapRenderer renderer, AffineTransform linear, int col0, int row0, int cols, int rows, BufferedImage[] out) {
+		int style = renderer.style();
+		boolean reuse = (long) cols * rows * TILE_BYTES <= maxBytes; // Otherwise a dropped tile could still be in out.
+		try {
+			for(int r = 0; r < rows; r++) {
+				for(int c = 0; c < cols; c++) {
+					BufferedImage image = tiles.get(probe.set(linear, style, col0 + c, row0 + r));
+					if(image != null) {
+						hits++;
+					} else {
+						misses++;
+						image = evict(reuse, keys.size());
+						if(image == null) {image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);}
+						keys.add(new Key(probe));
+						images.add(image);
+						jobs.add(job(renderer, new AffineTransform(linear), col0 + c, row0 + r, image)); // The caller reuses linear.
+					}
+					out[r * cols + c] = image;
+				}
+			}
+			if(done.length < jobs.size()) {done = new boolean[jobs.size()];}
+			Arrays.fill(done, false);
+			RuntimeException failure = run(jobs, done);
+			for(int i = 0; i < jobs.size(); i++) {
+				if(done[i]) {tiles.put(keys.get(i), images.get(i));}
+			}
+			if(failure != null) {throw failure;}
+		} finally {
+			keys.clear();
+			images.clear();
+			jobs.clear();
+		}
+	}
+
+	/**
+	 * Checks whether every tile of a block is in the cache, without drawing any.
+	 * @param renderer The renderer the tiles would be drawn with.
+	 * @param linear The transform from world space to device space, without the translation.
+	 * @param col0 The first column.
+	 * @param row0 The first row.
+	 * @param cols The number of columns.
+	 * @param rows The number of rows.
+	 * @return
+	 */
+	public boolean cached(MapRenderer renderer, AffineTransform linear, int col0, int row0, int cols, int rows) {
+		int style = renderer.style();
+		for(int r = 0; r < rows; r++) {
+			for(int c = 0; c < cols; c++) {
+				if(!tiles.containsKey(probe.set(linear, style, col0 + c, row0 + r))) {return false;}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of threads drawing tiles.
+	 * @return
+	 */
+	public int threads() {return threads;}
+
+	/**
+	 * Runs the given jobs on the pool and waits for all of them.
+	 * @param jobs The jobs to run.
+	 * @param done Receives which jobs finished.
+	 * @return The first failure, or null if every job finished.
+	 */
+	private RuntimeException run(List<Callable<Void>> jobs, boolean[] done) {
+		RuntimeException failure = null;
+		if(pool == null || jobs.size() < 2) {
+			for(int i = 0; i < jobs.size() && failure == null; i++) {
+				try {
+					jobs.get(i).call();
+					done[i] = true;
+				} catch (RuntimeException e) {
+					failure = e;
+				} catch (Exception e) {
+					failure = new RuntimeException("Failed to draw tile", e);
+				}
+			}
+			return failure;
+		}
+		try {
+			List<Future<Void>> futures = pool.invokeAll(jobs);
+			for(int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+					done[i] = true;
+				} catch (ExecutionException e) {
+					if(failure == null) {
+						failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException("Failed to draw tile", e.getCause());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure = new CancellationException("Interrupted while drawing tiles");
+		}
+		return failure;
+	}
+
+	private static Callable<Void> job(final MapRenderer renderer, final AffineTransform linear, final int col, final int row, final BufferedImage image) {
+		return new Callable<Void>() {
+			public Void call() {
+				draw(renderer, linear, col, row, image);
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Draws a single tile into the given image.
+	 */
+	static void draw(MapRenderer renderer, AffineTransform linear, int col, int row, BufferedImage image) {
+		AffineTransform at = AffineTransform.getTranslateInstance(-(double) col * SIZE, -(double) row * SIZE);
+		at.concatenate(linear);
+		Graphics2D g = image.createGraphics();
+		try {
+			renderer.paint(g, at, SIZE, SIZE, padded(at, SIZE, SIZE));
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Returns the given device area in world space, a Viewport so a rotated area only draws what it shows.
+	 * @param at The transform from world space to device space.
+	 * @param width The width of the device area.
+	 * @param height The height of the device area.
+	 * @return
+	 */
+	public static Rectangle2D area(AffineTransform at, int width, int height) {return new Viewport(at, width, height);}
+
+	/**
+	 * Returns the given device area in world space grown by MapRenderer.margin, for drawing a tile. A stroke of a shape
+	 * just outside a tile paints into it, so the tile must query and draw that shape too, or it shows a seam.
+	 * @param at The transform from world space to device space.
+	 * @param width The width of the device area.
+	 * @param height The height of the device area.
+	 * @return
+	 */
+	public static Rectangle2D padded(AffineTransform at, int width, int height) {
+		double margin = MapRenderer.margin(at);
+		return new Viewport(at, -margin, -margin, width + 2 * margin, height + 2 * margin);
+	}
+
+	/**
+	 * Makes room for one more tile.
+	 * @param reuse Whether the image of a dropped tile may be reused.
+	 * @param pending The number of tiles being drawn, not yet in the cache.
+	 * @return The image of a dropped tile, to be reused, or null.
+	 */
+	private BufferedImage evict(boolean reuse, int pending) {
+		BufferedImage free = null;
+		Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+		while(it.hasNext() && (long) (tiles.size() + pending + 1) * TILE_BYTES > maxBytes) {
+			BufferedImage image = it.next().getValue();
+			if(reuse) {free = image;}
+			it.remove();
+			evictions++;
+		}
+		return free;
+	}
+
+	/**
+	 * Drops every tile.
+	 */
+	public void clear() {tiles.clear();}
+
+	/**
+	 * Returns the number of tiles in the cache.
+	 * @return
+	 */
+	public int size() {return tiles.size();}
+
+	/**
+	 * Returns the memory used by the tiles in bytes.
+	 * @return
+	 */
+	public long bytes() {return (long) tiles.size() * TILE_BYTES;}
+
+	/**
+	 * Returns how many tiles were found in the cache.
+	 * @return
+	 */
+	public long hits() {return hits;}
+
+	/**
+	 * Returns how many tiles had to be drawn.
+	 * @return
+	 */
+	public long misses() {return misses;}
+
+	/**
+	 * Returns how many tiles were dropped to stay within the memory budget.
+	 * @return
+	 */
+	public long evictions() {return evictions;}
+
+	/**
+	 * Identifies a tile by the transform it was drawn with, the style of the renderer and its position in the grid.
+	 * Only the probe is ever changed, keys in the cache are copies of it.
+	 */
+	private static final class Key {
+		private double m00, m10, m01, m11;
+		private int style, col, row;
+
+		Key() {}
+
+		Key(Key k) {
+			m00 = k.m00;
+			m10 = k.m10;
+			m01 = k.m01;
+			m11 = k.m11;
+			style = k.style;
+			col = k.col;
+			row = k.row;
+		}
+
+		Key set(AffineTransform linear, int style, int col, int row) {
+			m00 = linear.getScaleX();
+			m10 = linear.getShearY();
+			m01 = linear.getShearX();
+			m11 = linear.getScaleY();
+			this.style = style;
+			this.col = col;
+			this.row = row;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) {return false;}
+			Key k = (Key) o;
+			return col == k.col && row == k.row && style == k.style && m00 == k.m00 && m10 == k.m10 && m01 == k.m01 && m11 == k.m11;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(m00) + 31 * Double.doubleToLongBits(m10) + 961 * Double.doubleToLongBits(m01) + 29791 * Double.doubleToLongBits(m11);
+			return (int) (bits ^ (bits >>> 32)) * 31 * 31 + (31 * col + row) * 31 + style;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package View;
+
+import Controller.MapController;
+import Model.Config;
+import Model.Model;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the static layers of a Model as standard web map tiles: 256 pixel squares in the Web Mercator z/x/y scheme,
+ * styled by a Config just like the MapCanvas, and with the detail level the program would use at the same scale.
+ * Needs no screen, so it runs with java.awt.headless=true. A single renderer may draw tiles on several threads at once.
+ * Within a tile Web Mercator is approximated by a linear transform, the error stays below a pixel from zoom level 8 in Denmark.
+ */
+public class WebTileRenderer {
+	public static final int SIZE = 256; // Width and height of a tile in pixels.
+	private static final int REFERENCE_WIDTH = 1024; // Width of the map in the default window, the detail levels are tuned for it.
+	private static final double EARTH_CIRCUMFERENCE = 40075016.686; // Meters around the equator.
+	private final Model model;
+	private final Config config;
+
+	/**
+	 * Creates a renderer for the given model and colors.
+	 * @param model The Model to draw.
+	 * @param config The Config deciding colors and visibility.
+	 */
+	public WebTileRenderer(Model model, Config config) {
+		this.model = model;
+		this.config = config;
+	}
+
+	/**
+	 * Draws a single tile into a new image.
+	 * @param z The zoom level.
+	 * @param x The column, counted from 180 degrees west.
+	 * @param y The row, counted from the north.
+	 * @return
+	 */
+	public BufferedImage render(int z, int x, int y) {
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		render(z, x, y, image);
+		return image;
+	}
+
+	/**
+	 * Draws a single tile into the given image, which must be at least SIZE by SIZE pixels.
+	 * @param z The zoom level.
+	 * @param x The column, counted from 180 degrees west.
+	 * @param y The row, counted from the north.
+	 * @param image The image to draw on.
+	 */
+	public void render(int z, int x, int y, BufferedImage image) {
+		AffineTransform at = transform(z, x, y);
+		MapRenderer renderer = new MapRenderer(model, config);
+		renderer.detailLevel(detailLevel(z, y));
+		Graphics2D g = image.createGraphics();
+		try {
+			renderer.paint(g, at, SIZE, SIZE, TileCache.padded(at, SIZE, SIZE));
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Returns the transform from model coordinates to the pixels of a tile.
+	 * @param z The zoom level.
+	 * @param x The column.
+	 * @param y The row.
+	 * @return
+	 */
+	public AffineTransform transform(int z, int x, int y) {
+		double west = lon(z, x), east = lon(z, x + 1), north = lat(z, y), south = lat(z, y + 1);
+		double lonFactor = model.lonFactor();
+		// Model coordinates are (lon * lonFactor, -lat).
+		return new AffineTransform(SIZE / ((east - west) * lonFactor), 0, 0, SIZE / (north - south),
+				-west * SIZE / (east - west), north * SIZE / (north - south));
+	}
+
+	/**
+	 * Returns the detail level for a row of tiles, the one the program uses when showing the same number of meters per pixel.
+	 * @param z The zoom level.
+	 * @param y The row.
+	 * @return
+	 */
+	public static int detailLevel(int z, int y) {
+		double metersPerPixel = EARTH_CIRCUMFERENCE * Math.cos(Math.toRadians(lat(z, y + 0.5))) / ((double) SIZE * (1L << z));
+		return MapController.detailLevel(metersPerPixel * REFERENCE_WIDTH * 0.35);
+	}
+
+	/**
+	 * Returns the longitude of the western edge of a column.
+	 * @param z The zoom level.
+	 * @param x The column, may be fractional.
+	 * @return Degrees.
+	 */
+	public static double lon(int z, double x) {return x / (1L << z) * 360 - 180;}
+
+	/**
+	 * Returns the latitude of the northern edge of a row.
+	 * @param z The zoom level.
+	 * @param y The row, may be fractional.
+	 * @return Degrees.
+	 */
+	public static double lat(int z, double y) {return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / (1L << z)))));}
+
+	/**
+	 * Returns the column holding the given longitude.
+	 * @param z The zoom level.
+	 * @param lon Degrees.
+	 * @return
+	 */
+	public static int column(int z, double lon) {
+		return (int) Math.max(0, Math.min((1L << z) - 1, Math.floor((lon + 180) / 360 * (1L << z))));
+	}
+
+	/**
+	 * Returns the row holding the given latitude.
+	 * @param z The zoom level.
+	 * @param lat Degrees.
+	 * @return
+	 */
+	public static int row(int z, double lat) {
+		double rad = Math.toRadians(lat);
+		double y = (1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * (1L << z);
+		return (int) Math.max(0, Math.min((1L << z) - 1, Math.floor(y)));
+	}
+}
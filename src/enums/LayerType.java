@@ -0,0 +1,9 @@
+package enums;
+
+/**
+ * Used to describe the different layers stored in the model. All but AIRWAY and PARK_WALL are stored in DataTrees.
+ */
+public enum LayerType {
+    AIRWAY, BUILDING, COAST, CYCLE, FARMLAND, FOREST, GRASS, INDUSTRIAL, NAVIGATION, PARK_WALL, PARKING, PLAIN, RAILWAY, RESIDENTIAL,
+    ROAD_LVL1, ROAD_LVL2, ROAD_LVL3, ROAD_LVL4, ROAD_LVL5, SAND, WALKWAY, WATER, WATERWAY
+}
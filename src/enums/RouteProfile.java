@@ -0,0 +1,40 @@
+package enums;
+
+/**
+ * Used to describe the kinds of route the PathFinder can find. Bikes always take the shortest route.
+ */
+public enum RouteProfile {
+    CAR_FASTEST (true, true),
+    CAR_SHORTEST (true, false),
+    BIKE (false, false);
+
+    private final boolean car, fastest;
+
+    RouteProfile(boolean car, boolean fastest) {
+        this.car = car;
+        this.fastest = fastest;
+    }
+
+    /**
+     * Returns whether the route is for cars, otherwise for bikes.
+     * @return
+     */
+    public boolean car() {return car;}
+
+    /**
+     * Returns whether the route is the fastest, otherwise the shortest.
+     * @return
+     */
+    public boolean fastest() {return fastest;}
+
+    /**
+     * Returns the profile of a route.
+     * @param car True for cars, false for bikes.
+     * @param fastest True for the fastest route, false for the shortest. Ignored for bikes.
+     * @return
+     */
+    public static RouteProfile of(boolean car, boolean fastest) {
+        if(!car) {return BIKE;}
+        return fastest ? CAR_FASTEST : CAR_SHORTEST;
+    }
+}